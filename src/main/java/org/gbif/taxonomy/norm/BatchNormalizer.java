@@ -0,0 +1,298 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.DwcaNormalizer.FileConverter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.google.common.base.Throwables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Normalizes many archives within a single JVM, so that start up and warm up are paid once rather than per archive.
+ * <p/>
+ * Each archive is a job in two stages. Unpacking, reading and writing are mostly waiting on disk, so run on a pool of
+ * reader threads several times larger than the processors. Normalizing is pure computation, so is handed to a pool
+ * with a thread per processor, and each job interprets its names on that thread. Jobs start largest first, so that the
+ * long jobs do not end up running alone at the end of the batch.
+ * <p/>
+ * An archive is admitted only once the heap it is projected to need, by the size of its file, fits within what is left
+ * of the heap budget. The admission is fair, so a large archive waiting for space is not overtaken by smaller ones.
+ * <p/>
+ * A job that fails is logged and counted, and does not stop the others.
+ */
+public class BatchNormalizer {
+
+  /**
+   * The work done for a single archive.
+   */
+  private class Job implements Callable<Boolean> {
+
+    private final File source;
+    private final int index;
+
+    Job(File source, int index) {
+      this.source = source;
+      this.index = index;
+    }
+
+    @Override
+    public Boolean call() {
+      int weight = weight(source);
+      File unpacked = new File(workDir, "batch-" + index + "-" + source.getName());
+      try {
+        admission.acquire(weight);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+      try {
+        long time = System.currentTimeMillis();
+        final DwcaNormalizer normalizer = new DwcaNormalizer();
+        normalizer.dictionaryFile = dictionaryFile;
+        if (text) {
+          normalizer.textFile = source;
+          normalizer.delimiter = delimiter;
+        } else {
+          normalizer.sourceFile = source;
+          normalizer.workDir = unpacked;
+        }
+        final List<DenormClassification> denorm = normalizer.read(ExecutionMode.IN_MEMORY);
+        List<NormClassification> norm = cpu.submit(new Callable<List<NormClassification>>() {
+
+          @Override
+          public List<NormClassification> call() {
+            return normalizer.normalize(denorm, ExecutionMode.IN_MEMORY);
+          }
+        }).get();
+        DwcaNormalizer.write(norm, output(source));
+        LOG.info("Normalized {} into {} taxa in {} sec(s)",
+          new Object[] {source.getName(), norm.size(), (1 + System.currentTimeMillis() - time) / 1000});
+        return true;
+
+      } catch (Exception e) {
+        Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+        LOG.error("Unable to normalize " + source.getAbsolutePath(), cause);
+        return false;
+      } finally {
+        delete(unpacked);
+        admission.release(weight);
+      }
+    }
+  }
+
+  private static final Logger LOG = LoggerFactory.getLogger(BatchNormalizer.class);
+
+  // the heap needed to normalize an archive as a multiple of its compressed size
+  static final int HEAP_PER_ARCHIVE_BYTE = 40;
+  private static final long MB = 1024 * 1024;
+
+  @Parameter(names = "-dir", description = "Dir holding the input archives", converter = FileConverter.class)
+  public File sourceDir;
+
+  @Parameter(names = "-manifest", description = "File listing the paths of the input archives, one per line",
+    converter = FileConverter.class)
+  public File manifest;
+
+  @Parameter(names = "-text", description = "The inputs are delimited text files with a header row rather than DwC-A")
+  public boolean text;
+
+  @Parameter(names = "-delimiter", description = "Of -text inputs, either tab or comma (default = tab)")
+  public String delimiter = "tab";
+
+  @Parameter(names = "-dictionary",
+    description = "Name dictionary file shared by all jobs and runs, created if it does not exist (default = none)",
+    converter = FileConverter.class)
+  public File dictionaryFile;
+
+  @Parameter(names = "-output",
+    description = "Dir for the outputs which must exist, each named after its archive (default = /tmp)",
+    converter = FileConverter.class)
+  public File outDir = new File("/tmp");
+
+  @Parameter(names = "-workdir", description = "Dir to unpack archives into (default = java.io.tmpdir)",
+    converter = FileConverter.class)
+  public File workDir = new File(System.getProperty("java.io.tmpdir"));
+
+  @Parameter(names = "-threads", description = "The number of archives normalized at once (default = processors)")
+  public int threads = Runtime.getRuntime().availableProcessors();
+
+  @Parameter(names = "-readers", description = "The number of archives read at once (default = 4 per thread)")
+  public int readers;
+
+  @Parameter(names = "-heap", description = "The share of the heap the archives in progress may use (default = 0.6)")
+  public double heapFraction = CostEstimator.HEAP_FRACTION;
+
+  private ExecutorService cpu;
+  private Semaphore admission;
+  private int budget;
+
+  public static void main(String[] args) throws Exception {
+    BatchNormalizer app = new BatchNormalizer();
+    new JCommander(app, args);
+    if (app.sourceDir == null && app.manifest == null) {
+      System.out.println("Either dir or manifest must be supplied");
+    } else {
+      int failed = app.run();
+      if (failed > 0) {
+        System.exit(1);
+      }
+    }
+  }
+
+  /**
+   * @return The archives to normalize, largest first
+   *
+   * @throws IOException If two archives would be written to the same output, as archives of the same name in different
+   *                     dirs or differing only in extension would be
+   */
+  List<File> archives() throws IOException {
+    List<File> archives = new ArrayList<File>();
+    if (sourceDir != null) {
+      File[] files = sourceDir.listFiles();
+      if (files == null) {
+        throw new IOException("Unable to list " + sourceDir.getAbsolutePath());
+      }
+      for (File f : files) {
+        if (!f.isHidden()) {
+          archives.add(f);
+        }
+      }
+    }
+    if (manifest != null) {
+      BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), "UTF-8"));
+      try {
+        for (String line = r.readLine(); line != null; line = r.readLine()) {
+          line = line.trim();
+          if (!line.isEmpty() && !line.startsWith("#")) {
+            archives.add(new File(line));
+          }
+        }
+      } finally {
+        r.close();
+      }
+    }
+    Collections.sort(archives, new Comparator<File>() {
+
+      @Override
+      public int compare(File o1, File o2) {
+        long l1 = o1.length();
+        long l2 = o2.length();
+        return l1 < l2 ? 1 : l1 == l2 ? o1.getName().compareTo(o2.getName()) : -1;
+      }
+    });
+    // checked before any job starts, as jobs writing the same output would overwrite each other yet both succeed
+    Map<File, File> sources = new HashMap<File, File>();
+    for (File archive : archives) {
+      File existing = sources.put(output(archive), archive);
+      if (existing != null) {
+        throw new IOException("Archives " + existing.getAbsolutePath() + " and " + archive.getAbsolutePath()
+          + " would both be written to " + output(archive).getAbsolutePath());
+      }
+    }
+    return archives;
+  }
+
+  /**
+   * Normalizes every archive, writing an output file for each.
+   *
+   * @return The number of archives that failed
+   */
+  public int run() throws IOException {
+    List<File> archives = archives();
+    budget = (int) Math.max(1, Runtime.getRuntime().maxMemory() * heapFraction / MB);
+    admission = new Semaphore(budget, true);
+    int readerThreads = readers > 0 ? readers : 4 * threads;
+    ExecutorService io = Executors.newFixedThreadPool(readerThreads, threadFactory("batch-reader-"));
+    cpu = Executors.newFixedThreadPool(threads, threadFactory("batch-normalizer-"));
+    LOG.info("Normalizing {} archives with {} reader(s), {} normalizer(s) and a heap budget of {}MB",
+      new Object[] {archives.size(), readerThreads, threads, budget});
+
+    long time = System.currentTimeMillis();
+    List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+    for (int i = 0; i < archives.size(); i++) {
+      results.add(io.submit(new Job(archives.get(i), i)));
+    }
+    int failed = 0;
+    try {
+      for (Future<Boolean> result : results) {
+        if (!result.get()) {
+          failed++;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      io.shutdownNow();
+      cpu.shutdownNow();
+    }
+    LOG.info("Normalized {} of {} archives in {} sec(s)",
+      new Object[] {archives.size() - failed, archives.size(), (1 + System.currentTimeMillis() - time) / 1000});
+    return failed;
+  }
+
+  /**
+   * @return The output file for the archive
+   */
+  File output(File source) {
+    String name = source.getName();
+    int dot = name.lastIndexOf('.');
+    return new File(outDir, (dot > 0 ? name.substring(0, dot) : name) + "-normalized.txt");
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    if (file.exists() && !file.delete()) {
+      LOG.warn("Unable to delete {}", file.getAbsolutePath());
+    }
+  }
+
+  private static ThreadFactory threadFactory(final String prefix) {
+    return new ThreadFactory() {
+
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, prefix + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    };
+  }
+
+  /**
+   * @return The heap in MB the archive is projected to need, capped at the whole budget so that it can be admitted
+   */
+  private int weight(File source) {
+    return (int) Math.min(budget, Math.max(1, source.length() * HEAP_PER_ARCHIVE_BYTE / MB));
+  }
+}
@@ -0,0 +1,116 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The candidates from which a rank may be inferred within a group, checked against a classification all at once.
+ * <p/>
+ * The values of the candidates from the kingdom down to the rank are coded as ints, one array per rank, so checking a
+ * classification is a short loop over each array comparing ints rather than comparing the strings of each candidate
+ * in turn with {@link DenormClassificationUtils#haveConflict} and
+ * {@link DenormClassificationUtils#shareHigherTaxonomy}.
+ * Null is coded as 0, other blank values as negative codes and the rest as positive codes, so that the exact
+ * comparison of the higher taxa and the blank aware comparison at the rank are kept.
+ * <p/>
+ * This class is not thread safe.
+ */
+public class CandidateBlock {
+
+  private static final LINNEAN_RANK[] RANKS = LINNEAN_RANK.values();
+  // codes for values no candidate has, which can therefore equal no candidate code
+  private static final int UNKNOWN = Integer.MAX_VALUE;
+  private static final int UNKNOWN_BLANK = Integer.MIN_VALUE;
+
+  private final Map<String, Integer> codes = new HashMap<String, Integer>();
+  // the coded values of the candidates by rank, kingdom first, down to the rank inclusive
+  private final int[][] columns;
+  private final String[] values;
+  private final boolean[] rejected;
+
+  /**
+   * @param rank The rank to be inferred
+   * @param candidates Those with a value at the rank
+   */
+  public CandidateBlock(LINNEAN_RANK rank, List<DenormClassification> candidates) {
+    columns = new int[rank.ordinal() + 1][candidates.size()];
+    values = new String[candidates.size()];
+    rejected = new boolean[candidates.size()];
+    int positive = 0;
+    int negative = 0;
+    for (int j = 0; j < values.length; j++) {
+      DenormClassification candidate = candidates.get(j);
+      for (int i = 0; i < columns.length; i++) {
+        String value = candidate.get(RANKS[i]);
+        Integer code = value == null ? Integer.valueOf(0) : codes.get(value);
+        if (code == null) {
+          code = StringUtils.isBlank(value) ? --negative : ++positive;
+          codes.put(value, code);
+        }
+        columns[i][j] = code;
+      }
+      values[j] = candidate.get(rank);
+    }
+  }
+
+  /**
+   * The values at the rank of the candidates that share the higher taxa of the classification exactly and do not
+   * conflict with it at the rank.
+   *
+   * @param d To infer the rank for
+   *
+   * @return The distinct values it might take
+   */
+  public Set<String> potentials(DenormClassification d) {
+    Arrays.fill(rejected, false);
+    int last = columns.length - 1;
+    for (int i = 0; i <= last; i++) {
+      int q = code(d.get(RANKS[i]));
+      int[] column = columns[i];
+      if (i < last) {
+        // the higher taxa must be identical, which also rules out a conflict
+        for (int j = 0; j < column.length; j++) {
+          rejected[j] |= column[j] != q;
+        }
+      } else if (q > 0) {
+        // at the rank itself only two values that are not blank conflict
+        for (int j = 0; j < column.length; j++) {
+          rejected[j] |= column[j] > 0 && column[j] != q;
+        }
+      }
+    }
+    Set<String> potentials = new HashSet<String>();
+    for (int j = 0; j < values.length; j++) {
+      if (!rejected[j]) {
+        potentials.add(values[j]);
+      }
+    }
+    return potentials;
+  }
+
+  /**
+   * @return The number of candidates
+   */
+  public int size() {
+    return values.length;
+  }
+
+  private int code(String value) {
+    if (value == null) {
+      return 0;
+    }
+    Integer code = codes.get(value);
+    if (code == null) {
+      return StringUtils.isBlank(value) ? UNKNOWN_BLANK : UNKNOWN;
+    }
+    return code;
+  }
+}
@@ -0,0 +1,292 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The state of a normalization after a rank pass of {@link Normalizer#sortAndMerge}, from which the run can be resumed
+ * with {@link Normalizer#resume(Checkpoint)}.
+ * <p/>
+ * On disk a checkpoint is a single binary file. Each distinct string is written once and later referenced by its
+ * index, since classifications repeat the same higher taxa over and over. Payloads are written with Java
+ * serialization, so must be {@link java.io.Serializable}.
+ * <p/>
+ * A checkpoint records the source it was written for, so that it is not resumed against another source, or the same
+ * file since changed, which would silently give the tree of the wrong data.
+ * <p/>
+ * This class is immutable, although the classifications and homonyms it holds are not copied and are modified when
+ * resumed.
+ */
+public class Checkpoint {
+
+  public static final String FILE_NAME = "normalizer.checkpoint";
+
+  private static final int MAGIC = 0x4e434b50; // NCKP
+  private static final int VERSION = 2;
+  private static final int FIELDS = LINNEAN_RANK.values().length + 1; // the ranks and the author
+
+  private final String source;
+  private final LINNEAN_RANK completedRank;
+  private final List<DenormClassification> classifications;
+  private final Map<LINNEAN_RANK, Set<String>> homonyms;
+
+  /**
+   * @param source Identifies the source normalized, or null if it is not known
+   */
+  public Checkpoint(String source, LINNEAN_RANK completedRank, List<DenormClassification> classifications,
+    Map<LINNEAN_RANK, Set<String>> homonyms) {
+    this.source = source;
+    this.completedRank = completedRank;
+    this.classifications = classifications;
+    this.homonyms = homonyms;
+  }
+
+  /**
+   * @param dir The checkpoint directory
+   *
+   * @return The file the latest checkpoint is held in
+   */
+  public static File file(File dir) {
+    return new File(dir, FILE_NAME);
+  }
+
+  /**
+   * @param dir The checkpoint directory
+   *
+   * @return The latest checkpoint written to the directory, or null if there is none
+   */
+  public static Checkpoint latest(File dir) throws IOException {
+    return latest(dir, null);
+  }
+
+  /**
+   * @param dir    The checkpoint directory
+   * @param source Identifies the source being normalized, or null to accept a checkpoint of any source
+   *
+   * @return The latest checkpoint written to the directory, or null if there is none
+   *
+   * @throws IOException If the checkpoint was written for a different source
+   */
+  public static Checkpoint latest(File dir, String source) throws IOException {
+    File file = file(dir);
+    if (!file.exists()) {
+      return null;
+    }
+    Checkpoint checkpoint = read(file);
+    if (source != null && !source.equals(checkpoint.getSource())) {
+      throw new IOException("Checkpoint " + file.getAbsolutePath() + " was written for source[" + checkpoint.getSource()
+        + "] not [" + source + "], so delete it to normalize the source from the start");
+    }
+    return checkpoint;
+  }
+
+  public static Checkpoint read(File file) throws IOException {
+    ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a normalizer checkpoint: " + file.getAbsolutePath());
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported checkpoint version[" + version + "]: " + file.getAbsolutePath());
+      }
+      List<String> strings = new ArrayList<String>();
+      String source = in.readBoolean() ? in.readUTF() : null;
+      LINNEAN_RANK completedRank = LINNEAN_RANK.valueOf(in.readUTF());
+
+      Map<LINNEAN_RANK, Set<String>> homonyms = new EnumMap<LINNEAN_RANK, Set<String>>(LINNEAN_RANK.class);
+      int ranks = readVarInt(in);
+      for (int i = 0; i < ranks; i++) {
+        LINNEAN_RANK rank = LINNEAN_RANK.valueOf(in.readUTF());
+        int size = readVarInt(in);
+        Set<String> values = new HashSet<String>();
+        for (int j = 0; j < size; j++) {
+          values.add(readString(in, strings));
+        }
+        homonyms.put(rank, values);
+      }
+
+      int size = readVarInt(in);
+      List<DenormClassification> classifications = new ArrayList<DenormClassification>(size);
+      for (int i = 0; i < size; i++) {
+        DenormClassification<Object> d = new DenormClassification<Object>();
+        for (LINNEAN_RANK r : LINNEAN_RANK.values()) {
+          d.set(r, readString(in, strings));
+        }
+        d.setAuthor(readString(in, strings));
+        int payloads = readVarInt(in);
+        for (int j = 0; j < payloads; j++) {
+          d.getPayloads().add(in.readObject());
+        }
+        classifications.add(d);
+      }
+      return new Checkpoint(source, completedRank, classifications, homonyms);
+
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Unable to read payload in checkpoint: " + file.getAbsolutePath(), e);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Identifies a source file by its path, length and modification time, so that a checkpoint is neither resumed
+   * against another file nor against the same file once changed.
+   */
+  public static String source(File file) {
+    return file.getAbsolutePath() + " length=" + file.length() + " modified=" + file.lastModified();
+  }
+
+  /**
+   * Writes the flattened state to a temporary file which then replaces the target, so that a crash while writing
+   * leaves the previous checkpoint intact.
+   *
+   * @param source   Identifies the source normalized, or null if it is not known
+   * @param values   The ranks and author of each classification, FIELDS values per classification
+   * @param payloads The payloads of each classification
+   */
+  static void write(File file, String source, LINNEAN_RANK completedRank, String[] values, List<List<?>> payloads,
+    Map<LINNEAN_RANK, Set<String>> homonyms) throws IOException {
+    File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+    ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+    try {
+      Map<String, Integer> strings = new HashMap<String, Integer>();
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeBoolean(source != null);
+      if (source != null) {
+        out.writeUTF(source);
+      }
+      out.writeUTF(completedRank.name());
+
+      writeVarInt(out, homonyms.size());
+      for (Map.Entry<LINNEAN_RANK, Set<String>> e : homonyms.entrySet()) {
+        out.writeUTF(e.getKey().name());
+        writeVarInt(out, e.getValue().size());
+        for (String value : e.getValue()) {
+          writeString(out, value, strings);
+        }
+      }
+
+      writeVarInt(out, payloads.size());
+      for (int i = 0; i < payloads.size(); i++) {
+        for (int f = 0; f < FIELDS; f++) {
+          writeString(out, values[i * FIELDS + f], strings);
+        }
+        writeVarInt(out, payloads.get(i).size());
+        for (Object payload : payloads.get(i)) {
+          out.writeObject(payload);
+        }
+      }
+    } finally {
+      out.close();
+    }
+    if (!tmp.renameTo(file)) {
+      throw new IOException("Unable to replace checkpoint: " + file.getAbsolutePath());
+    }
+  }
+
+  /**
+   * Copies the state of the classifications, which later passes go on to modify.
+   *
+   * @return FIELDS values per classification
+   */
+  static String[] flatten(List<DenormClassification> denorm) {
+    String[] values = new String[denorm.size() * FIELDS];
+    int i = 0;
+    for (DenormClassification d : denorm) {
+      for (LINNEAN_RANK r : LINNEAN_RANK.values()) {
+        values[i++] = d.get(r);
+      }
+      values[i++] = d.getAuthor();
+    }
+    return values;
+  }
+
+  private static String readString(ObjectInputStream in, List<String> strings) throws IOException {
+    int ref = readVarInt(in);
+    if (ref == 0) {
+      return null;
+    } else if (ref == 1) {
+      String s = in.readUTF();
+      strings.add(s);
+      return s;
+    }
+    return strings.get(ref - 2);
+  }
+
+  private static int readVarInt(ObjectInputStream in) throws IOException {
+    int value = 0;
+    int shift = 0;
+    int b;
+    do {
+      b = in.readUnsignedByte();
+      value |= (b & 0x7f) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+
+  /**
+   * Writes 0 for null, 1 followed by the string when first seen, or 2 + the index of a string already written.
+   */
+  private static void writeString(ObjectOutputStream out, String s, Map<String, Integer> strings) throws IOException {
+    if (s == null) {
+      writeVarInt(out, 0);
+    } else {
+      Integer index = strings.get(s);
+      if (index == null) {
+        strings.put(s, strings.size());
+        writeVarInt(out, 1);
+        out.writeUTF(s);
+      } else {
+        writeVarInt(out, index + 2);
+      }
+    }
+  }
+
+  private static void writeVarInt(ObjectOutputStream out, int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      out.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  /**
+   * @return Identifies the source normalized, or null if it is not known
+   */
+  public String getSource() {
+    return source;
+  }
+
+  /**
+   * @return The rank of the last pass completed before the checkpoint was written
+   */
+  public LINNEAN_RANK getCompletedRank() {
+    return completedRank;
+  }
+
+  public List<DenormClassification> getClassifications() {
+    return classifications;
+  }
+
+  public Map<LINNEAN_RANK, Set<String>> getHomonyms() {
+    return homonyms;
+  }
+}
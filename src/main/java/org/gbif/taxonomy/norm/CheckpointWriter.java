@@ -0,0 +1,127 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a {@link Checkpoint} after each rank pass of the {@link Normalizer}. The state is copied on the calling
+ * thread, which is quick, and written to disk on a background thread while the next pass runs. At most one write is
+ * outstanding: a new checkpoint first waits for the previous one to complete.
+ * <p/>
+ * Checkpoints are a safety net, so a failed write is logged rather than failing the normalization, and the previous
+ * checkpoint is left in place.
+ * <p/>
+ * This class is not thread safe.
+ */
+public class CheckpointWriter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CheckpointWriter.class);
+
+  private final File file;
+  private final String source;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "checkpoint-writer");
+      t.setDaemon(true);
+      return t;
+    }
+  });
+  private Future<?> pending;
+
+  /**
+   * @param dir To write the checkpoint into, which must exist
+   */
+  public CheckpointWriter(File dir) {
+    this(dir, null);
+  }
+
+  /**
+   * @param dir    To write the checkpoint into, which must exist
+   * @param source Identifies the source normalized, as by {@link Checkpoint#source(File)}, or null if it is not known
+   */
+  public CheckpointWriter(File dir, String source) {
+    file = Checkpoint.file(dir);
+    this.source = source;
+  }
+
+  /**
+   * Waits for any outstanding write to complete.
+   */
+  public void await() {
+    if (pending != null) {
+      try {
+        pending.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        LOG.error("Unable to write checkpoint " + file.getAbsolutePath(), e.getCause());
+      }
+      pending = null;
+    }
+  }
+
+  /**
+   * Copies the state and schedules it to be written.
+   *
+   * @param completedRank The rank of the pass just completed
+   * @param denorm        The working classifications
+   * @param homonyms      The homonym cache
+   */
+  public void checkpoint(final LINNEAN_RANK completedRank, List<DenormClassification> denorm,
+    Map<LINNEAN_RANK, Set<String>> homonyms) {
+    await();
+
+    // copy everything the next pass may modify
+    final String[] values = Checkpoint.flatten(denorm);
+    final List<List<?>> payloads = new ArrayList<List<?>>(denorm.size());
+    for (DenormClassification<?> d : denorm) {
+      payloads.add(d.getPayloads().isEmpty() ? Collections.emptyList() : new ArrayList<Object>(d.getPayloads()));
+    }
+    final Map<LINNEAN_RANK, Set<String>> homonymsCopy = new EnumMap<LINNEAN_RANK, Set<String>>(LINNEAN_RANK.class);
+    for (Map.Entry<LINNEAN_RANK, Set<String>> e : homonyms.entrySet()) {
+      homonymsCopy.put(e.getKey(), new HashSet<String>(e.getValue()));
+    }
+
+    pending = executor.submit(new Runnable() {
+
+      @Override
+      public void run() {
+        long time = System.currentTimeMillis();
+        try {
+          Checkpoint.write(file, source, completedRank, values, payloads, homonymsCopy);
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+        LOG.info("Checkpointed {} classifications after rank[{}] in {} sec(s)",
+          new Object[] {payloads.size(), completedRank, (1 + System.currentTimeMillis() - time) / 1000});
+      }
+    });
+  }
+
+  /**
+   * Waits for any outstanding write and stops the writer thread.
+   */
+  public void close() {
+    await();
+    executor.shutdown();
+  }
+}
@@ -0,0 +1,119 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The projected cost of normalizing a dataset, as produced by the {@link CostEstimator}.
+ * <p/>
+ * This class is immutable, although the sample it holds is not copied.
+ */
+public class CostEstimate {
+
+  private final long records;
+  private final List<DenormClassification> sample;
+  private final long distinctClassifications;
+  private final Map<LINNEAN_RANK, Double> sparsity;
+  private final int largestGroup;
+  private final double meanGroupSize;
+  private final long projectedBytes;
+  private final long projectedMillis;
+  private final ExecutionMode mode;
+
+  public CostEstimate(long records, List<DenormClassification> sample, long distinctClassifications,
+    Map<LINNEAN_RANK, Double> sparsity, int largestGroup, double meanGroupSize, long projectedBytes,
+    long projectedMillis, ExecutionMode mode) {
+    this.records = records;
+    this.sample = sample;
+    this.distinctClassifications = distinctClassifications;
+    this.sparsity = Collections.unmodifiableMap(sparsity);
+    this.largestGroup = largestGroup;
+    this.meanGroupSize = meanGroupSize;
+    this.projectedBytes = projectedBytes;
+    this.projectedMillis = projectedMillis;
+    this.mode = mode;
+  }
+
+  @Override
+  public String toString() {
+    return "records[" + records + "], sampled[" + sample.size() + "], complete[" + isComplete() +
+      "], distinctClassifications[" + distinctClassifications + "], sparsity" + sparsity + ", largestGroup[" +
+      largestGroup + "], meanGroupSize[" + String.format("%.1f", meanGroupSize) + "], skew[" +
+      String.format("%.1f", getSkew()) + "], projectedMB[" + projectedBytes / (1024 * 1024) + "], projectedSecs[" +
+      projectedMillis / 1000 + "], mode[" + mode + "]";
+  }
+
+  /**
+   * @return true if the sample holds every record, in which case it can be normalized directly
+   */
+  public boolean isComplete() {
+    return sample.size() == records;
+  }
+
+  /**
+   * @return The number of records read
+   */
+  public long getRecords() {
+    return records;
+  }
+
+  /**
+   * @return The sampled records, in reading order if the sample is complete
+   */
+  public List<DenormClassification> getSample() {
+    return sample;
+  }
+
+  /**
+   * @return The estimated number of distinct classifications across all records
+   */
+  public long getDistinctClassifications() {
+    return distinctClassifications;
+  }
+
+  /**
+   * @return The fraction of sampled records with no value at each rank
+   */
+  public Map<LINNEAN_RANK, Double> getSparsity() {
+    return sparsity;
+  }
+
+  /**
+   * @return The largest number of sampled distinct classifications sharing a genus
+   */
+  public int getLargestGroup() {
+    return largestGroup;
+  }
+
+  public double getMeanGroupSize() {
+    return meanGroupSize;
+  }
+
+  /**
+   * @return How many times larger than the mean the largest genus group is
+   */
+  public double getSkew() {
+    return meanGroupSize == 0 ? 0 : largestGroup / meanGroupSize;
+  }
+
+  /**
+   * @return The projected peak heap needed to normalize every record in memory
+   */
+  public long getProjectedBytes() {
+    return projectedBytes;
+  }
+
+  public long getProjectedMillis() {
+    return projectedMillis;
+  }
+
+  /**
+   * @return The recommended way to run the normalization
+   */
+  public ExecutionMode getMode() {
+    return mode;
+  }
+}
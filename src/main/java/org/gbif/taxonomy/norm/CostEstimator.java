@@ -0,0 +1,191 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Estimates the cost of normalizing a dataset from a uniform sample of its records, and recommends an
+ * {@link ExecutionMode}. A single pass over the records keeps a reservoir sample and counts them, which is far cheaper
+ * than interpreting and normalizing them. When every record fits in the sample there is nothing to project, and the
+ * sample itself is the complete dataset so it can be normalized without reading the source again.
+ * <p/>
+ * The number of distinct classifications is projected using the guaranteed error estimator (GEE) of Charikar et al.
+ * The memory and runtime projections use a rough calibration, good enough to separate the datasets that need care from
+ * those that do not, but not to plan capacity to the megabyte.
+ * <p/>
+ * This class is not thread safe.
+ */
+public class CostEstimator {
+
+  public static final int DEFAULT_SAMPLE_SIZE = 10000;
+
+  // datasets with fewer records gain nothing from parallel interpretation
+  static final long PARALLEL_THRESHOLD = 100000;
+  // the share of the heap a run may be projected to use before duplicates must be collapsed while reading
+  static final double HEAP_FRACTION = 0.6;
+
+  // calibration of the projections
+  private static final long RECORD_BYTES = 120; // the object, its references and an empty payload list
+  private static final long STRING_BYTES = 40; // a string and its array, excluding the characters
+  private static final long TAXON_BYTES = 150; // a NormClassification and the structures referencing it
+  private static final double TAXA_PER_CLASSIFICATION = 2;
+  private static final double SORT_SLACK = 1.25; // the array copied while sorting
+  // per n log2 n of a sort: the first by the full comparator sees the records in no order, while those of each pass, by
+  // the ordinal-indexed rank comparators, see classifications mostly in order already and include merging duplicates
+  private static final double RECORD_SORT_NANOS = 125;
+  private static final double PASS_SORT_NANOS = 100;
+  private static final double PARSE_NANOS = 5000;
+  private static final double CANDIDATE_NANOS = 100;
+  private static final int PASSES = LINNEAN_RANK.values().length;
+
+  private static final Logger LOG = LoggerFactory.getLogger(CostEstimator.class);
+
+  private final int sampleSize;
+  private final Random random;
+
+  public CostEstimator() {
+    this(DEFAULT_SAMPLE_SIZE, 0);
+  }
+
+  /**
+   * @param sampleSize The number of records to sample
+   * @param seed       For the sampling, so that estimates are repeatable
+   */
+  public CostEstimator(int sampleSize, long seed) {
+    if (sampleSize < 1) {
+      throw new IllegalArgumentException("Sample size must be positive: " + sampleSize);
+    }
+    this.sampleSize = sampleSize;
+    random = new Random(seed);
+  }
+
+  /**
+   * Reads every record, keeping a uniform sample, and estimates for the heap and processors of this JVM.
+   *
+   * @param records To estimate
+   *
+   * @return The estimate
+   */
+  public CostEstimate estimate(Iterator<DenormClassification> records) {
+    List<DenormClassification> sample = new ArrayList<DenormClassification>();
+    long count = 0;
+    while (records.hasNext()) {
+      DenormClassification d = records.next();
+      count++;
+      if (sample.size() < sampleSize) {
+        sample.add(d);
+      } else {
+        // reservoir sampling keeps each record with equal probability
+        long slot = (long) (random.nextDouble() * count);
+        if (slot < sampleSize) {
+          sample.set((int) slot, d);
+        }
+      }
+    }
+    return estimate(sample, count, Runtime.getRuntime().maxMemory(), Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param sample     A uniform sample of the records
+   * @param records    The total number of records
+   * @param maxHeap    The heap available in bytes
+   * @param processors The processors available
+   *
+   * @return The estimate
+   */
+  CostEstimate estimate(List<DenormClassification> sample, long records, long maxHeap, int processors) {
+    int n = sample.size();
+
+    // frequencies of the distinct classifications, and of the distinct classifications per genus
+    Map<String, Integer> frequencies = new HashMap<String, Integer>();
+    Map<String, Integer> genera = new HashMap<String, Integer>();
+    Map<LINNEAN_RANK, Double> sparsity = new EnumMap<LINNEAN_RANK, Double>(LINNEAN_RANK.class);
+    long[] nulls = new long[LINNEAN_RANK.values().length];
+    long stringBytes = 0;
+    for (DenormClassification d : sample) {
+      for (LINNEAN_RANK r : LINNEAN_RANK.values()) {
+        String value = d.get(r);
+        if (StringUtils.isBlank(value)) {
+          nulls[r.ordinal()]++;
+        } else {
+          stringBytes += STRING_BYTES + value.length();
+        }
+      }
+      String key = d.toString();
+      Integer frequency = frequencies.get(key);
+      frequencies.put(key, frequency == null ? 1 : frequency + 1);
+      if (frequency == null) {
+        String genus = StringUtils.trimToEmpty(d.getGenus());
+        Integer size = genera.get(genus);
+        genera.put(genus, size == null ? 1 : size + 1);
+      }
+    }
+    for (LINNEAN_RANK r : LINNEAN_RANK.values()) {
+      sparsity.put(r, n == 0 ? 0d : (double) nulls[r.ordinal()] / n);
+    }
+
+    // GEE: scale up those seen once, which stand for the unseen, and count the rest as is
+    long singletons = 0;
+    for (Integer frequency : frequencies.values()) {
+      if (frequency == 1) {
+        singletons++;
+      }
+    }
+    long distinct = n == records ? frequencies.size()
+      : Math.min(records, Math.round(Math.sqrt((double) records / Math.max(1, n)) * singletons) + frequencies.size()
+        - singletons);
+
+    // inference within a group compares the sparse records with the distinct candidates, so grows with its square
+    int largestGroup = 0;
+    double groupWork = 0;
+    double scale = frequencies.isEmpty() ? 0 : (double) distinct / frequencies.size();
+    for (Integer size : genera.values()) {
+      largestGroup = Math.max(largestGroup, size);
+      groupWork += (size * scale) * (size * scale);
+    }
+    double meanGroupSize = genera.isEmpty() ? 0 : (double) frequencies.size() / genera.size();
+
+    double bytesPerRecord = RECORD_BYTES + (n == 0 ? 0 : (double) stringBytes / n);
+    long projectedBytes =
+      (long) (records * bytesPerRecord * SORT_SLACK + distinct * TAXA_PER_CLASSIFICATION * TAXON_BYTES);
+
+    ExecutionMode mode;
+    if (n == records) {
+      mode = ExecutionMode.IN_MEMORY; // the whole dataset is already in hand
+    } else if (projectedBytes > maxHeap * HEAP_FRACTION) {
+      mode = ExecutionMode.DEDUPLICATED;
+    } else if (records >= PARALLEL_THRESHOLD && processors > 1) {
+      mode = ExecutionMode.PARALLEL;
+    } else {
+      mode = ExecutionMode.IN_MEMORY;
+    }
+
+    // the first sort sees every record, later sorts only what remains after duplicates are merged
+    double sortNanos =
+      log2(records) * records * RECORD_SORT_NANOS + (2 * PASSES - 1) * log2(distinct) * distinct * PASS_SORT_NANOS;
+    double parseNanos = records * PARSE_NANOS / (mode == ExecutionMode.IN_MEMORY ? 1 : Math.max(1, processors));
+    double inferenceNanos = PASSES * groupWork * CANDIDATE_NANOS;
+    long projectedMillis = (long) ((sortNanos + parseNanos + inferenceNanos) / 1000000);
+
+    CostEstimate estimate =
+      new CostEstimate(records, sample, distinct, sparsity, largestGroup, meanGroupSize, projectedBytes,
+        projectedMillis, mode);
+    LOG.info("Estimated cost: {}", estimate);
+    return estimate;
+  }
+
+  private static double log2(long n) {
+    return n < 2 ? 1 : Math.log(n) / Math.log(2);
+  }
+}
@@ -0,0 +1,268 @@
+package org.gbif.taxonomy.norm;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.google.common.base.Throwables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams classifications from a delimited text file with a header row, such as a flat taxonomy export. Only a line is
+ * held at a time, and only the columns of interest are copied out of it, so memory is constant per row however wide
+ * the file is.
+ * <p/>
+ * Columns are found by header name, ignoring case, as kingdom, phylum, class, order, family, genus, species,
+ * subspecies, author (or scientificNameAuthorship) and scientificName. Should a header name repeat, the first column
+ * is used. Empty values, and the tokens NULL and \N used by database exports, are read as null. Blank lines are
+ * skipped, missing trailing values are null and surplus values are ignored.
+ * <p/>
+ * Quoted values, as written in CSV, are understood if enabled, but may not span lines.
+ * <p/>
+ * Files opened by name are decompressed as they are read if they are gzip compressed.
+ * <p/>
+ * The scientific name is not part of the classification, so is available from {@link #getScientificName()} for the
+ * record last returned, to be interpreted as in {@link DenormClassificationFactory#build(DelimitedTextReader,
+ * NameInterpreter)}.
+ * <p/>
+ * This class is not thread safe.
+ */
+public class DelimitedTextReader implements Iterator<DenormClassification>, Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DelimitedTextReader.class);
+
+  private static final String[] NULL_TOKENS = {"NULL", "\\N"};
+
+  // the positions of the values, the first 9 being those in the classification constructor order
+  private static final int SCIENTIFIC_NAME = 9;
+  private static final int COLUMNS = 10;
+  private static final Map<String, Integer> HEADERS = new HashMap<String, Integer>();
+
+  static {
+    HEADERS.put("kingdom", 0);
+    HEADERS.put("phylum", 1);
+    HEADERS.put("class", 2);
+    HEADERS.put("order", 3);
+    HEADERS.put("family", 4);
+    HEADERS.put("genus", 5);
+    HEADERS.put("species", 6);
+    HEADERS.put("subspecies", 7);
+    HEADERS.put("author", 8);
+    HEADERS.put("scientificnameauthorship", 8);
+    HEADERS.put("scientificname", SCIENTIFIC_NAME);
+  }
+
+  private final BufferedReader reader;
+  private final char delimiter;
+  private final boolean quoted;
+  // the value position for each field of a line, or -1 if the field is not of interest
+  private final int[] positions;
+  private final String[] values = new String[COLUMNS];
+  private final boolean hasScientificName;
+
+  private String nextLine;
+  private String scientificName;
+  private int lineNumber = 1;
+
+  /**
+   * @param input     To read, of which the first line must be the header
+   * @param delimiter Between the values of a line
+   * @param quoted    If values may be enclosed in double quotes, which are then removed
+   */
+  public DelimitedTextReader(Reader input, char delimiter, boolean quoted) throws IOException {
+    reader = input instanceof BufferedReader ? (BufferedReader) input : new BufferedReader(input);
+    this.delimiter = delimiter;
+    this.quoted = quoted;
+
+    String header = reader.readLine();
+    if (header == null) {
+      throw new IOException("No header row found");
+    }
+    // the header is split like any other line, keeping every field
+    int fields = 1;
+    for (int i = 0; i < header.length(); i++) {
+      fields += header.charAt(i) == delimiter ? 1 : 0;
+    }
+    int[] all = new int[fields];
+    for (int f = 0; f < fields; f++) {
+      all[f] = f;
+    }
+    String[] names = new String[fields];
+    split(header, all, names);
+
+    positions = new int[fields];
+    boolean[] found = new boolean[COLUMNS];
+    for (int f = 0; f < fields; f++) {
+      Integer position = names[f] == null ? null : HEADERS.get(names[f].toLowerCase());
+      if (position == null || found[position]) {
+        positions[f] = -1;
+      } else {
+        positions[f] = position;
+        found[position] = true;
+      }
+    }
+    hasScientificName = found[SCIENTIFIC_NAME];
+    LOG.debug("Header resolved to {} for {}", Arrays.toString(positions), Arrays.toString(names));
+    advance();
+  }
+
+  /**
+   * Opens a UTF-8 file, which may be gzip compressed. A compressed file with more than one member is inflated on a
+   * thread for each processor, as described in {@link ParallelGzipInputStream}.
+   *
+   * @see #DelimitedTextReader(Reader, char, boolean)
+   */
+  public static DelimitedTextReader open(File file, char delimiter, boolean quoted) throws IOException {
+    PushbackInputStream in = new PushbackInputStream(new FileInputStream(file), 2);
+    InputStream input = in;
+    if (ParallelGzipInputStream.isGzip(in)) {
+      LOG.info("Reading gzip compressed {}", file);
+      input = new ParallelGzipInputStream(in, Runtime.getRuntime().availableProcessors());
+    }
+    return new DelimitedTextReader(new InputStreamReader(input, "UTF-8"), delimiter, quoted);
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  /**
+   * @return The scientific name of the record last returned by {@link #next()}, or null if it has none
+   */
+  public String getScientificName() {
+    return scientificName;
+  }
+
+  /**
+   * @return true if there is a scientificName column
+   */
+  public boolean hasScientificName() {
+    return hasScientificName;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return nextLine != null;
+  }
+
+  @Override
+  public DenormClassification next() {
+    if (nextLine == null) {
+      throw new NoSuchElementException();
+    }
+    split(nextLine, positions, values);
+    scientificName = values[SCIENTIFIC_NAME];
+    DenormClassification d =
+      new DenormClassification(values[0], values[1], values[2], values[3], values[4], values[5], values[6], values[7],
+        values[8]);
+    try {
+      advance();
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+    return d;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException("Text files are read only");
+  }
+
+  /**
+   * Reads ahead to the next line with content.
+   */
+  private void advance() throws IOException {
+    do {
+      nextLine = reader.readLine();
+      lineNumber++;
+    } while (nextLine != null && nextLine.trim().isEmpty());
+  }
+
+  /**
+   * Copies the values of interest out of the line, without splitting it into every field.
+   *
+   * @param positions Where to put the value of each field, or -1 to skip it
+   * @param target    To put the values into, which are otherwise null
+   */
+  private void split(String line, int[] positions, String[] target) {
+    Arrays.fill(target, null);
+    int length = line.length();
+    int start = 0;
+    int field = 0;
+    while (start <= length) {
+      if (field == positions.length) {
+        LOG.warn("More values on line[{}] than the header declares", lineNumber);
+        break;
+      }
+      int position = positions[field];
+      int end;
+      if (quoted && start < length && line.charAt(start) == '"') {
+        // unescape into a builder, only if the value is wanted
+        StringBuilder value = position < 0 ? null : new StringBuilder();
+        int i = start + 1;
+        while (i < length) {
+          char c = line.charAt(i);
+          if (c == '"') {
+            if (i + 1 < length && line.charAt(i + 1) == '"') {
+              i++;
+            } else {
+              break;
+            }
+          }
+          if (value != null) {
+            value.append(c);
+          }
+          i++;
+        }
+        if (value != null) {
+          target[position] = toValue(value.toString(), 0, value.length());
+        }
+        end = line.indexOf(delimiter, i);
+      } else {
+        end = line.indexOf(delimiter, start);
+        if (position >= 0) {
+          target[position] = toValue(line, start, end < 0 ? length : end);
+        }
+      }
+      if (end < 0) {
+        break;
+      }
+      start = end + 1;
+      field++;
+    }
+  }
+
+  /**
+   * @return The trimmed value between the offsets, or null if it is empty or a null token
+   */
+  private static String toValue(String line, int start, int end) {
+    while (start < end && Character.isWhitespace(line.charAt(start))) {
+      start++;
+    }
+    while (end > start && Character.isWhitespace(line.charAt(end - 1))) {
+      end--;
+    }
+    if (start == end) {
+      return null;
+    }
+    for (String token : NULL_TOKENS) {
+      if (end - start == token.length() && line.regionMatches(start, token, 0, token.length())) {
+        return null;
+      }
+    }
+    return line.substring(start, end);
+  }
+}
@@ -5,6 +5,8 @@ import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.commons.lang.StringUtils;
+
 /**
  * The denormalised classification.
  *
@@ -12,23 +14,28 @@ import java.util.List;
  */
 public class DenormClassification<T> {
 
-  private String kingdom;
-  private String phylum;
-  private String klass;
-  private String order;
-  private String family;
-  private String genus;
-
-  // DarwinCore gives us scientificName, but for a true denormalized view we desire definitive ranks
-  private String species;
-  private String subspecies;
+  private static final LINNEAN_RANK[] RANKS = LINNEAN_RANK.values();
+  private static final int RANK_COUNT = RANKS.length;
+  private static final int FINGERPRINTS = RANK_COUNT + 2;
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+  // mixed in after each value and for a blank value, outside the range of a char so no value can produce them
+  private static final int SEPARATOR = 0x10000;
+  private static final int BLANK = 0x20000;
+
+  // DarwinCore gives us scientificName, but for a true denormalized view we desire definitive ranks, held here by the
+  // ordinal of the rank
   // scientific name is therefore not accessible in this class
   // see the TestDataFactory as an example for circumventing this
   // by using inference through parsing
-  // protected String scientificName;
+  private final String[] ranks = new String[RANK_COUNT];
 
   private String author; // considered the author of the lowest rank if provided
 
+  // the components from parsing the species or subspecies, kept so the name is only parsed once during interpretation
+  // see NameComponents#describes(String) for checking they are still relevant for a value
+  private NameComponents parsedName;
+
   // we allow an arbitrary list payload objects to be associated with
   // the denormalized classification.  Typically this would be some
   // identifiers which ultimately are used as foreign keys to complete
@@ -36,30 +43,34 @@ public class DenormClassification<T> {
   // the same taxonomy, and this would hold the 10 occurrence IDs
   private final List<T> payloads = new ArrayList<T>();
 
+  // rolling fingerprints of the classification, so classifications can be compared and keyed without walking the
+  // strings: index i covers the ranks above the rank of ordinal i, and the last two the ranks and the author
+  // computed when first needed and cleared by any setter
+  private long[] fingerprints;
+
   public DenormClassification() {
     // default constructor which doesn't initialize any fields
   }
 
   public DenormClassification(String kingdom, String phylum, String klass, String order, String family, String genus,
     String species, String subspecies, String author) {
-    this.kingdom = kingdom;
-    this.phylum = phylum;
-    this.klass = klass;
-    this.order = order;
-    this.family = family;
-    this.genus = genus;
-    this.species = species;
-    this.subspecies = subspecies;
+    ranks[LINNEAN_RANK.K.ordinal()] = kingdom;
+    ranks[LINNEAN_RANK.P.ordinal()] = phylum;
+    ranks[LINNEAN_RANK.C.ordinal()] = klass;
+    ranks[LINNEAN_RANK.O.ordinal()] = order;
+    ranks[LINNEAN_RANK.F.ordinal()] = family;
+    ranks[LINNEAN_RANK.G.ordinal()] = genus;
+    ranks[LINNEAN_RANK.S.ordinal()] = species;
+    ranks[LINNEAN_RANK.SS.ordinal()] = subspecies;
     this.author = author;
   }
 
   @Override
   public String toString() {
-    String[] parts = {kingdom, phylum, klass, order, family, genus, species, subspecies, author};
-
     StringBuilder sb = new StringBuilder();
     boolean firstWritten = false;
-    for (String part : parts) {
+    for (int i = 0; i <= RANK_COUNT; i++) {
+      String part = i < RANK_COUNT ? ranks[i] : author;
       if (part == null) {
         if (firstWritten) {
           sb.append("|");
@@ -77,6 +88,25 @@ public class DenormClassification<T> {
     return sb.toString();
   }
 
+  /**
+   * @return A fingerprint of all ranks and the author, as {@link #higherFingerprint(LINNEAN_RANK)}
+   */
+  public long fingerprint() {
+    return fingerprints()[FINGERPRINTS - 1];
+  }
+
+  /**
+   * Classifications equal at the ranks above the rank always have equal fingerprints, and different ones almost never
+   * do, so equal fingerprints must still be verified. Blank values are treated as null.
+   *
+   * @param rank The highest rank not covered
+   *
+   * @return A fingerprint of the ranks above the rank
+   */
+  public long higherFingerprint(LINNEAN_RANK rank) {
+    return fingerprints()[rank.ordinal()];
+  }
+
   /**
    * Utility getter.
    *
@@ -85,26 +115,7 @@ public class DenormClassification<T> {
    * @return The value for the rank
    */
   public String get(LINNEAN_RANK rank) {
-    switch (rank) {
-      case K:
-        return getKingdom();
-      case P:
-        return getPhylum();
-      case C:
-        return getKlass();
-      case O:
-        return getOrder();
-      case F:
-        return getFamily();
-      case G:
-        return getGenus();
-      case S:
-        return getSpecies();
-      case SS:
-        return getSubspecies();
-      default:
-        return null;
-    }
+    return ranks[rank.ordinal()];
   }
 
   /**
@@ -114,80 +125,56 @@ public class DenormClassification<T> {
    * @param value The value to set
    */
   public void set(LINNEAN_RANK rank, String value) {
-    switch (rank) {
-      case K:
-        setKingdom(value);
-        break;
-      case P:
-        setPhylum(value);
-        break;
-      case C:
-        setKlass(value);
-        break;
-      case O:
-        setOrder(value);
-        break;
-      case F:
-        setFamily(value);
-        break;
-      case G:
-        setGenus(value);
-        break;
-      case S:
-        setSpecies(value);
-        break;
-      case SS:
-        setSubspecies(value);
-        break;
-    }
+    ranks[rank.ordinal()] = value;
+    fingerprints = null;
   }
 
   public String getKingdom() {
-    return kingdom;
+    return get(LINNEAN_RANK.K);
   }
 
   public void setKingdom(String kingdom) {
-    this.kingdom = kingdom;
+    set(LINNEAN_RANK.K, kingdom);
   }
 
   public String getPhylum() {
-    return phylum;
+    return get(LINNEAN_RANK.P);
   }
 
   public void setPhylum(String phylum) {
-    this.phylum = phylum;
+    set(LINNEAN_RANK.P, phylum);
   }
 
   public String getKlass() {
-    return klass;
+    return get(LINNEAN_RANK.C);
   }
 
   public void setKlass(String klass) {
-    this.klass = klass;
+    set(LINNEAN_RANK.C, klass);
   }
 
   public String getOrder() {
-    return order;
+    return get(LINNEAN_RANK.O);
   }
 
   public void setOrder(String order) {
-    this.order = order;
+    set(LINNEAN_RANK.O, order);
   }
 
   public String getFamily() {
-    return family;
+    return get(LINNEAN_RANK.F);
   }
 
   public void setFamily(String family) {
-    this.family = family;
+    set(LINNEAN_RANK.F, family);
   }
 
   public String getGenus() {
-    return genus;
+    return get(LINNEAN_RANK.G);
   }
 
   public void setGenus(String genus) {
-    this.genus = genus;
+    set(LINNEAN_RANK.G, genus);
   }
 
   public String getAuthor() {
@@ -196,6 +183,18 @@ public class DenormClassification<T> {
 
   public void setAuthor(String author) {
     this.author = author;
+    fingerprints = null;
+  }
+
+  /**
+   * @return The components of the last parse of the species or subspecies, which may be out of date
+   */
+  public NameComponents getParsedName() {
+    return parsedName;
+  }
+
+  public void setParsedName(NameComponents parsedName) {
+    this.parsedName = parsedName;
   }
 
   public List<T> getPayloads() {
@@ -203,18 +202,43 @@ public class DenormClassification<T> {
   }
 
   public String getSpecies() {
-    return species;
+    return get(LINNEAN_RANK.S);
   }
 
   public void setSpecies(String species) {
-    this.species = species;
+    set(LINNEAN_RANK.S, species);
   }
 
   public String getSubspecies() {
-    return subspecies;
+    return get(LINNEAN_RANK.SS);
   }
 
   public void setSubspecies(String subspecies) {
-    this.subspecies = subspecies;
+    set(LINNEAN_RANK.SS, subspecies);
+  }
+
+  /**
+   * FNV-1a over the values from the kingdom down, recording the hash before each rank and after the author.
+   */
+  private long[] fingerprints() {
+    if (fingerprints == null) {
+      long[] computed = new long[FINGERPRINTS];
+      long h = FNV_OFFSET;
+      for (int i = 0; i <= RANK_COUNT; i++) {
+        computed[i] = h;
+        String value = i < RANK_COUNT ? ranks[i] : author;
+        if (StringUtils.isBlank(value)) {
+          h = (h ^ BLANK) * FNV_PRIME;
+        } else {
+          for (int c = 0; c < value.length(); c++) {
+            h = (h ^ value.charAt(c)) * FNV_PRIME;
+          }
+        }
+        h = (h ^ SEPARATOR) * FNV_PRIME;
+      }
+      computed[RANK_COUNT + 1] = h;
+      fingerprints = computed;
+    }
+    return fingerprints;
   }
 }
@@ -1,15 +1,10 @@
 package org.gbif.taxonomy.norm;
 
-import org.gbif.ecat.model.ParsedName;
-import org.gbif.ecat.parser.NameParser;
-import org.gbif.ecat.parser.UnparsableException;
-
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,7 +14,6 @@ import org.slf4j.LoggerFactory;
 public class DenormClassificationFactory {
 
   private static final Logger LOG = LoggerFactory.getLogger(DenormClassificationFactory.class);
-  private static final NameParser PARSER = new NameParser();
 
   private DenormClassificationFactory() {
     throw new UnsupportedOperationException("Can't initialize class");
@@ -44,7 +38,47 @@ public class DenormClassificationFactory {
    */
   public static List<DenormClassification> build(Iterator<Map<String, String>> source,
     boolean interpretScientificName) {
+    return build(source, interpretScientificName ? NameInterpreter.getDefault() : null);
+  }
+
+  /**
+   * Builds from a delimited text file, reading it to the end.
+   *
+   * @param source Data to build from
+   * @param interpreter To interpret scientificName with, or null if it should not be interpreted
+   */
+  public static List<DenormClassification> build(DelimitedTextReader source, NameInterpreter interpreter) {
+    List<DenormClassification> data = new ArrayList<DenormClassification>();
+    List<String> scientificNames = new ArrayList<String>();
+
+    int lineCount = 0;
+    while (source.hasNext()) {
+      data.add(source.next());
+      if (interpreter != null) {
+        scientificNames.add(source.getScientificName());
+      }
+      lineCount++;
+      if (lineCount % 1000 == 0) {
+        LOG.info("Built {} records", lineCount);
+      }
+    }
+
+    if (interpreter != null) {
+      interpreter.interpretScientificNames(data, scientificNames);
+    }
+    return data;
+  }
+
+  /**
+   * As {@link #build(Iterator, boolean)} but with the scientific names interpreted by the given interpreter once all
+   * records are read, which allows the parsing to be spread across its workers.
+   *
+   * @param source Data to build from
+   * @param interpreter To interpret scientificName with, or null if it should not be interpreted
+   */
+  public static List<DenormClassification> build(Iterator<Map<String, String>> source, NameInterpreter interpreter) {
     List<DenormClassification> data = new ArrayList<DenormClassification>();
+    List<String> scientificNames = new ArrayList<String>();
 
     int lineCount = 0;
     while (source.hasNext()) {
@@ -53,28 +87,8 @@ public class DenormClassificationFactory {
         new DenormClassification(record.get("kingdom"), record.get("phylum"), record.get("class"), record.get("order"),
           record.get("family"), record.get("genus"), record.get("species"), record.get("subspecies"),
           record.get("author"));
-      if (interpretScientificName) {
-        String scientificName = record.get("scientificName");
-        if (StringUtils.isNotBlank(scientificName)) {
-          try {
-            ParsedName<?> p = PARSER.parse(scientificName);
-            if (p != null && StringUtils.isNotBlank(p.getInfraSpecificEpithet())) {
-              d.setSubspecies(StringUtils.trimToNull(p.fullName()));
-              if (StringUtils.isBlank(d.getAuthor())) {
-                d.setAuthor(StringUtils.trimToNull(p.authorshipComplete()));
-              }
-              d.setSpecies(null);
-            } else if (p != null && p.isBinomial()) {
-              d.setSpecies(StringUtils.trimToNull(p.fullName()));
-              if (StringUtils.isBlank(d.getAuthor())) {
-                d.setAuthor(StringUtils.trimToNull(p.authorshipComplete()));
-              }
-              d.setSubspecies(null);
-            }
-          } catch (UnparsableException e) {
-            // a name we can't handle
-          }
-        }
+      if (interpreter != null) {
+        scientificNames.add(record.get("scientificName"));
       }
       data.add(d);
       lineCount++;
@@ -83,6 +97,10 @@ public class DenormClassificationFactory {
       }
 
     }
+
+    if (interpreter != null) {
+      interpreter.interpretScientificNames(data, scientificNames);
+    }
     return data;
   }
 }
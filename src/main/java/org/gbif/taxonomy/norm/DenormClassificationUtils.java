@@ -1,20 +1,18 @@
 package org.gbif.taxonomy.norm;
 
-import org.gbif.ecat.model.ParsedName;
-import org.gbif.ecat.parser.NameParser;
-import org.gbif.ecat.parser.UnparsableException;
 import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
-import org.apache.commons.beanutils.BeanComparator;
 import org.apache.commons.collections.comparators.ComparatorChain;
 import org.apache.commons.lang.StringUtils;
-import org.apache.commons.lang.builder.EqualsBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,20 +40,95 @@ public class DenormClassificationUtils {
     }
   }
 
+  /**
+   * Hashes and compares a classification on all ranks and the author, as {@link #equalClassifications} does. The
+   * classification must not change while the key is in use.
+   */
+  private static final class ClassificationKey {
+
+    private final DenormClassification classification;
+    private final long fingerprint;
+
+    ClassificationKey(DenormClassification classification) {
+      this.classification = classification;
+      fingerprint = classification.fingerprint();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof ClassificationKey
+        && equalClassifications(classification, ((ClassificationKey) o).classification);
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (fingerprint ^ fingerprint >>> 32);
+    }
+  }
+
+  /**
+   * Compares the value at a rank, or the author if no rank is given, with nulls last.
+   */
+  private static final class ValueComparator implements Comparator<DenormClassification>, Serializable {
+
+    private final LINNEAN_RANK rank;
+    private final NullAwareStringComparator nasc = new NullAwareStringComparator();
+
+    ValueComparator(LINNEAN_RANK rank) {
+      this.rank = rank;
+    }
+
+    @Override
+    public int compare(DenormClassification o1, DenormClassification o2) {
+      return rank == null ? nasc.compare(o1.getAuthor(), o2.getAuthor()) : nasc.compare(o1.get(rank), o2.get(rank));
+    }
+  }
+
   private static final Logger LOG = LoggerFactory.getLogger(DenormClassificationUtils.class);
 
-  private static final NameParser PARSER = new NameParser();
+  // the comparator for each rank, by ordinal
+  private static final List<Comparator<DenormClassification>> RANK_COMPARATORS = newRankComparators();
+
   // comparators are threadsafe AFTER construction, so provide useful singletons
   public static final Comparator<DenormClassification> FULL_COMPARATOR = newFullComparator();
-  public static final Comparator<DenormClassification> KINGDOM_COMPARATOR = newRankComparator(LINNEAN_RANK.K);
-  public static final Comparator<DenormClassification> PHYLUM_COMPARATOR = newRankComparator(LINNEAN_RANK.P);
-  public static final Comparator<DenormClassification> CLASS_COMPARATOR = newRankComparator(LINNEAN_RANK.C);
-  public static final Comparator<DenormClassification> ORDER_COMPARATOR = newRankComparator(LINNEAN_RANK.O);
-  public static final Comparator<DenormClassification> FAMILY_COMPARATOR = newRankComparator(LINNEAN_RANK.F);
-  public static final Comparator<DenormClassification> GENUS_COMPARATOR = newRankComparator(LINNEAN_RANK.G);
-  public static final Comparator<DenormClassification> SPECIES_COMPARATOR = newRankComparator(LINNEAN_RANK.S);
+  public static final Comparator<DenormClassification> KINGDOM_COMPARATOR = rankComparator(LINNEAN_RANK.K);
+  public static final Comparator<DenormClassification> PHYLUM_COMPARATOR = rankComparator(LINNEAN_RANK.P);
+  public static final Comparator<DenormClassification> CLASS_COMPARATOR = rankComparator(LINNEAN_RANK.C);
+  public static final Comparator<DenormClassification> ORDER_COMPARATOR = rankComparator(LINNEAN_RANK.O);
+  public static final Comparator<DenormClassification> FAMILY_COMPARATOR = rankComparator(LINNEAN_RANK.F);
+  public static final Comparator<DenormClassification> GENUS_COMPARATOR = rankComparator(LINNEAN_RANK.G);
+  public static final Comparator<DenormClassification> SPECIES_COMPARATOR = rankComparator(LINNEAN_RANK.S);
 
-  public static final Comparator<DenormClassification> SUBSPECIES_COMPARATOR = newRankComparator(LINNEAN_RANK.SS);
+  public static final Comparator<DenormClassification> SUBSPECIES_COMPARATOR = rankComparator(LINNEAN_RANK.SS);
+
+  /**
+   * Merges classifications that are equal on all ranks and the author into the first of them, as
+   * {@link #mergeDuplicates} does, but by hashing rather than sorting. The order of those remaining is kept.
+   *
+   * @param denorm the list of items to merge
+   */
+  public static void collapseDuplicates(List<DenormClassification> denorm) {
+    Map<ClassificationKey, DenormClassification> firsts =
+      new HashMap<ClassificationKey, DenormClassification>(Math.max(16, denorm.size() * 4 / 3));
+    int kept = 0;
+    for (int i = 0; i < denorm.size(); i++) {
+      DenormClassification curr = denorm.get(i);
+      ClassificationKey key = new ClassificationKey(curr);
+      DenormClassification first = firsts.get(key);
+      if (first == null) {
+        firsts.put(key, curr);
+        denorm.set(kept++, curr);
+      } else {
+        LOG.debug("Merging duplicate classification after inference: {}", curr);
+        mergeInto(curr, first);
+      }
+    }
+    denorm.subList(kept, denorm.size()).clear();
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Finished collapsing classifications[{}]", denorm.size());
+      debug(denorm);
+    }
+  }
 
   /**
    * For each DC in the list, it is logged at debug level.
@@ -79,11 +152,59 @@ public class DenormClassificationUtils {
    * @return true if they represent the same classification
    */
   public static boolean equalClassifications(DenormClassification source, DenormClassification target) {
-    return new EqualsBuilder().append(source.getKingdom(), target.getKingdom())
-      .append(source.getPhylum(), target.getPhylum()).append(source.getKlass(), target.getKlass())
-      .append(source.getOrder(), target.getOrder()).append(source.getFamily(), target.getFamily())
-      .append(source.getGenus(), target.getGenus()).append(source.getSpecies(), target.getSpecies())
-      .append(source.getSubspecies(), target.getSubspecies()).append(source.getAuthor(), target.getAuthor()).isEquals();
+    // differing fingerprints are certain to differ, but equal ones may still collide
+    return source.fingerprint() == target.fingerprint()
+      && StringUtils.equals(source.getKingdom(), target.getKingdom())
+      && StringUtils.equals(source.getPhylum(), target.getPhylum())
+      && StringUtils.equals(source.getKlass(), target.getKlass())
+      && StringUtils.equals(source.getOrder(), target.getOrder())
+      && StringUtils.equals(source.getFamily(), target.getFamily())
+      && StringUtils.equals(source.getGenus(), target.getGenus())
+      && StringUtils.equals(source.getSpecies(), target.getSpecies())
+      && StringUtils.equals(source.getSubspecies(), target.getSubspecies())
+      && StringUtils.equals(source.getAuthor(), target.getAuthor());
+  }
+
+  /**
+   * Groups the classifications by their value at the rank without sorting them, skipping those blank at the rank as
+   * there is nothing to merge into them. Each group keeps the order of the list.
+   *
+   * @param rank To group by
+   * @param denorm To group
+   *
+   * @return The groups by value, in the order each value is first found
+   */
+  public static Map<String, List<DenormClassification>> groupByRank(LINNEAN_RANK rank,
+    List<DenormClassification> denorm) {
+    Map<String, List<DenormClassification>> groups = new LinkedHashMap<String, List<DenormClassification>>();
+    for (DenormClassification d : denorm) {
+      String value = d.get(rank);
+      if (StringUtils.isNotBlank(value)) {
+        List<DenormClassification> group = groups.get(value);
+        if (group == null) {
+          group = new ArrayList<DenormClassification>(2);
+          groups.put(value, group);
+        }
+        group.add(d);
+      }
+    }
+    return groups;
+  }
+
+  /**
+   * The order in which a group of classifications sharing a value at the rank is merged: that of the rank comparator,
+   * then the full comparator. This is the order a stable sort at the rank gives to classifications already in full
+   * order, as each rank pass after the first receives them, whatever order they are received in.
+   *
+   * @param rank The rank of the group
+   *
+   * @return a new comparator
+   */
+  public static Comparator<DenormClassification> groupComparator(LINNEAN_RANK rank) {
+    ComparatorChain cc = new ComparatorChain();
+    cc.addComparator(rankComparator(rank));
+    cc.addComparator(FULL_COMPARATOR);
+    return cc;
   }
 
   /**
@@ -108,75 +229,25 @@ public class DenormClassificationUtils {
   }
 
   /**
-   * Infer genera where missing.
+   * Infer genera where missing, using the shared name interpreter.
    *
    * @param denorm To iterate and infer over
+   *
+   * @see NameInterpreter#inferGenera(List)
    */
   public static void inferGenera(List<DenormClassification> denorm) {
-    LOG.debug("Inferring genera for {} classifications", denorm.size());
-    for (DenormClassification d : denorm) {
-      if (StringUtils.isBlank(d.getGenus()) && StringUtils.isNotBlank(d.getSpecies())) {
-
-        try {
-          ParsedName<Object> pn = PARSER.parse(d.getSpecies());
-          if (pn != null && pn.getGenusOrAbove() != null) {
-            // make sure we are not mistaking it as a higher taxa
-            String tentativeGenus = pn.getGenusOrAbove();
-            if (!StringUtils.equalsIgnoreCase(tentativeGenus, d.getKingdom()) &&
-              !StringUtils.equalsIgnoreCase(tentativeGenus, d.getPhylum()) &&
-              !StringUtils.equalsIgnoreCase(tentativeGenus, d.getKlass()) &&
-              !StringUtils.equalsIgnoreCase(tentativeGenus, d.getOrder()) &&
-              !StringUtils.equalsIgnoreCase(tentativeGenus, d.getFamily())) {
-              // looks like a candidate to be a genus, or we have some very poor data
-              d.setGenus(tentativeGenus);
-            }
-          }
-        } catch (UnparsableException e) {
-          // a name we can't handle
-        }
-      }
-    }
-    LOG.debug("Inferred genera for {} classifications", denorm.size());
+    NameInterpreter.getDefault().inferGenera(denorm);
   }
 
   /**
-   * Infer species binomials where missing but a subspecies is known.
+   * Infer species binomials where missing but a subspecies is known, using the shared name interpreter.
    *
    * @param denorm To iterate and infer over
+   *
+   * @see NameInterpreter#inferSpecies(List)
    */
   public static void inferSpecies(List<DenormClassification> denorm) {
-    LOG.debug("Inferring species for {} classifications", denorm.size());
-    for (DenormClassification d : denorm) {
-      if (StringUtils.isBlank(d.getSpecies()) && StringUtils.isNotBlank(d.getSubspecies())) {
-
-        try {
-          ParsedName<Object> pn = PARSER.parse(d.getSubspecies());
-          if (pn != null && pn.getGenusOrAbove() != null && pn.getSpecificEpithet() != null) {
-            // make sure we are not mistaking a monomial as a higher taxa due to bad data
-            String tentativeGenus = pn.getGenusOrAbove();
-            String tentativeSpecificEpithet = pn.getSpecificEpithet();
-
-            boolean duplicate = false;
-            for (LINNEAN_RANK r : LinneanRank.ranksHigherThan(LINNEAN_RANK.F, true)) {
-              duplicate = StringUtils.equalsIgnoreCase(tentativeGenus, d.get(r)) || StringUtils
-                .equalsIgnoreCase(tentativeSpecificEpithet, d.get(r));
-              if (duplicate) {
-                break;
-              }
-            }
-
-            // neither the specific epithet or generic epithet are repeated in the higher taxa, so
-            // construct a binomial
-            if (!duplicate) {
-              d.setSpecies(tentativeGenus + ' ' + tentativeSpecificEpithet);
-            }
-          }
-        } catch (UnparsableException e) {
-          // a name we can't handle
-        }
-      }
-    }
-    LOG.debug("Inferred species for {} classifications", denorm.size());
+    NameInterpreter.getDefault().inferSpecies(denorm);
   }
 
   /**
@@ -187,21 +258,20 @@ public class DenormClassificationUtils {
   public static void mergeDuplicates(List<DenormClassification> denorm) {
     Collections.sort(denorm, FULL_COMPARATOR);
 
-    // the previous record
+    // compact in place, since removing each duplicate from the list would shift all that follow it
     DenormClassification prev = null;
-    Iterator<DenormClassification> iter = denorm.iterator();
-    while (iter.hasNext()) {
-      DenormClassification curr = iter.next();
+    int kept = 0;
+    for (int i = 0; i < denorm.size(); i++) {
+      DenormClassification curr = denorm.get(i);
       if (prev != null && equalClassifications(curr, prev)) {
         LOG.debug("Merging duplicate classification after inference: {}", curr);
-
-        mergeInto(curr, prev);
-        iter.remove(); // and keep previous as is, since we merged this one into previous
-
+        mergeInto(curr, prev); // and keep previous as is, since we merged this one into previous
       } else {
+        denorm.set(kept++, curr);
         prev = curr;
       }
     }
+    denorm.subList(kept, denorm.size()).clear();
     if (LOG.isDebugEnabled()) {
       LOG.debug("Finished merging classifications[{}]", denorm.size());
       debug(denorm);
@@ -226,16 +296,10 @@ public class DenormClassificationUtils {
    */
   protected static Comparator<DenormClassification> newFullComparator() {
     ComparatorChain cc = new ComparatorChain();
-    NullAwareStringComparator nasc = new NullAwareStringComparator();
-    cc.addComparator(new BeanComparator("kingdom", nasc));
-    cc.addComparator(new BeanComparator("phylum", nasc));
-    cc.addComparator(new BeanComparator("klass", nasc));
-    cc.addComparator(new BeanComparator("order", nasc));
-    cc.addComparator(new BeanComparator("family", nasc));
-    cc.addComparator(new BeanComparator("genus", nasc));
-    cc.addComparator(new BeanComparator("species", nasc));
-    cc.addComparator(new BeanComparator("subspecies", nasc));
-    cc.addComparator(new BeanComparator("author", nasc));
+    for (LINNEAN_RANK rank : LINNEAN_RANK.values()) {
+      cc.addComparator(new ValueComparator(rank));
+    }
+    cc.addComparator(new ValueComparator(null));
     return cc;
   }
 
@@ -245,60 +309,27 @@ public class DenormClassificationUtils {
    * @return A new instance of a comparator
    */
   protected static Comparator<DenormClassification> newRankComparator(LINNEAN_RANK rank) {
-
-    NullAwareStringComparator nasc = new NullAwareStringComparator();
-    switch (rank) {
-      case K:
-        return new BeanComparator("kingdom", nasc);
-      case P:
-        return new BeanComparator("phylum", nasc);
-      case C:
-        return new BeanComparator("klass", nasc);
-      case O:
-        return new BeanComparator("order", nasc);
-      case F:
-        return new BeanComparator("family", nasc);
-      case G:
-        return new BeanComparator("genus", nasc);
-      case S:
-        ComparatorChain cc = new ComparatorChain();
-        cc.addComparator(new BeanComparator("species", nasc));
-        cc.addComparator(new BeanComparator("author", nasc));
-        return cc;
-      default:
-        ComparatorChain cc2 = new ComparatorChain();
-        cc2.addComparator(new BeanComparator("subspecies", nasc));
-        cc2.addComparator(new BeanComparator("author", nasc));
-        return cc2;
+    if (LinneanRank.isHigherOrEqual(rank, LINNEAN_RANK.G)) {
+      return new ValueComparator(rank);
     }
+    // the author is that of the species or subspecies
+    ComparatorChain cc = new ComparatorChain();
+    cc.addComparator(new ValueComparator(rank));
+    cc.addComparator(new ValueComparator(null));
+    return cc;
   }
 
+
   /**
    * @param rank At which comparison should <b>ONLY</b> take place
    *
    * @return a comparator for the given rank
    */
   public static Comparator<DenormClassification> rankComparator(LINNEAN_RANK rank) {
-    switch (rank) {
-      case K:
-        return DenormClassificationUtils.KINGDOM_COMPARATOR;
-      case P:
-        return DenormClassificationUtils.PHYLUM_COMPARATOR;
-      case C:
-        return DenormClassificationUtils.CLASS_COMPARATOR;
-      case O:
-        return DenormClassificationUtils.ORDER_COMPARATOR;
-      case F:
-        return DenormClassificationUtils.FAMILY_COMPARATOR;
-      case G:
-        return DenormClassificationUtils.GENUS_COMPARATOR;
-      case S:
-        return DenormClassificationUtils.SPECIES_COMPARATOR;
-      default:
-        return DenormClassificationUtils.SUBSPECIES_COMPARATOR;
-    }
+    return RANK_COMPARATORS.get(rank.ordinal());
   }
 
+
   /**
    * Takes 2 classifications and returns the rank at which they differ.
    * Consider:
@@ -473,6 +504,9 @@ public class DenormClassificationUtils {
    */
   public static boolean shareHigherTaxonomy(DenormClassification source, DenormClassification target,
     LINNEAN_RANK rank) {
+    if (source.higherFingerprint(rank) != target.higherFingerprint(rank)) {
+      return false;
+    }
     for (LINNEAN_RANK r : LinneanRank.ranksHigherThan(rank, false)) {
       String v1 = source.get(r);
       String v2 = target.get(r);
@@ -496,6 +530,14 @@ public class DenormClassificationUtils {
     LOG.debug("Sorted classifications[{}] at rank[{}]", denorm.size(), sortRank);
   }
 
+  private static List<Comparator<DenormClassification>> newRankComparators() {
+    List<Comparator<DenormClassification>> comparators = new ArrayList<Comparator<DenormClassification>>();
+    for (LINNEAN_RANK rank : LINNEAN_RANK.values()) {
+      comparators.add(newRankComparator(rank));
+    }
+    return comparators;
+  }
+
   private DenormClassificationUtils() {
     throw new UnsupportedOperationException("Can't initialize class");
   }
@@ -6,19 +6,27 @@ import org.gbif.dwc.text.ArchiveFactory;
 import org.gbif.dwc.text.UnsupportedArchiveException;
 import org.gbif.utils.file.ClosableIterator;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import com.beust.jcommander.IStringConverter;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.internal.Lists;
 import com.google.common.base.Throwables;
+import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,7 +52,124 @@ public class DwcaNormalizer {
     }
   }
 
+  /**
+   * Where the occurrences to join to taxa are read from.
+   */
+  interface OccurrenceSource extends IngestPipeline.Source {
+
+    /**
+     * @return The id of the last occurrence
+     */
+    String getOccurrenceId();
+  }
+
+  /**
+   * Reads the classifications from the archive or text file, stopping after the limit if one is set.
+   */
+  private static class ClassificationIterator implements Iterator<DenormClassification>, OccurrenceSource {
+
+    // only one of these is set
+    private final ClosableIterator<DarwinCoreRecord> records;
+    private final DelimitedTextReader text;
+    private final int limit;
+    private int count;
+    private DarwinCoreRecord last;
+
+    ClassificationIterator(Archive archive, int limit) {
+      records = archive.iteratorDwc();
+      text = null;
+      this.limit = limit;
+    }
+
+    ClassificationIterator(DelimitedTextReader text, int limit) {
+      records = null;
+      this.text = text;
+      this.limit = limit;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return (limit <= 0 || count < limit) && (text == null ? records.hasNext() : text.hasNext());
+    }
+
+    @Override
+    public DenormClassification next() {
+      count++;
+      if (text == null) {
+        last = records.next();
+        return toClassification(last);
+      }
+      return text.next();
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Sources are read only");
+    }
+
+    /**
+     * @return The occurrenceID of the last record, or its core id if it has none
+     */
+    @Override
+    public String getOccurrenceId() {
+      return StringUtils.isBlank(last.getOccurrenceID()) ? last.getId() : last.getOccurrenceID();
+    }
+
+    @Override
+    public String getScientificName() {
+      return text == null ? null : text.getScientificName();
+    }
+
+    void close() throws IOException {
+      if (text == null) {
+        records.close();
+      } else {
+        text.close();
+      }
+    }
+  }
+
+  /**
+   * Writes each taxon as it is received, so the tree can be written while it is built and need not be held.
+   */
+  static class TaxonWriter implements NormClassificationSink, Closeable {
+
+    private final BufferedWriter bw;
+    private int count;
+
+    TaxonWriter(File file) throws IOException {
+      bw = new BufferedWriter(new FileWriter(file));
+    }
+
+    @Override
+    public void accept(NormClassification taxon) {
+      try {
+        bw.write(
+          taxon.getId() + "|" +
+            taxon.getParentId() + "|" +
+            taxon.getRank() + "|" +
+            taxon.getScientificName() + "|" +
+            taxon.getAuthor() + "|\n");
+        count++;
+      } catch (IOException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      bw.close();
+      LOG.info("Normalized resulted in {} records", count);
+    }
+  }
+
   private static final Logger LOG = LoggerFactory.getLogger(DwcaNormalizer.class);
+  private static final String OCCURRENCE_FILE = "occurrence-taxon.txt";
+
+  // told as each phase of the normalizer completes, if set
+  NormalizerListener listener;
+  // registered over JMX for the duration of a run
+  final NormalizerProgress progress = new NormalizerProgress();
 
   @Parameter(names = "-file", description = "Path of the input DwC-A", converter = FileConverter.class)
   public File sourceFile;
@@ -53,72 +178,510 @@ public class DwcaNormalizer {
     converter = URLConverter.class)
   public URL sourceUrl;
 
+  @Parameter(names = "-text",
+    description = "Path of an input delimited text file with a header row, which may be gzip compressed - if supplied "
+    + "will be used instead of -file",
+    converter = FileConverter.class)
+  public File textFile;
+
+  @Parameter(names = "-delimiter", description = "Of the -text file, either tab or comma (default = tab)")
+  public String delimiter = "tab";
+
   @Parameter(names = "-output", description = "File path for the output dir which must exist (default = /tmp)")
   public File outDir = new File("/tmp");
 
+  @Parameter(names = "-workdir", description = "Dir to unpack archives into (default = java.io.tmpdir)",
+    converter = FileConverter.class)
+  public File workDir = new File(System.getProperty("java.io.tmpdir"));
+
+  @Parameter(names = "-dictionary",
+    description = "Name dictionary file shared across runs, created if it does not exist (default = none)",
+    converter = FileConverter.class)
+  public File dictionaryFile;
+
+  @Parameter(names = "-sample",
+    description = "Only normalize the first N records of the archive, for trials on large archives (default = all)")
+  public int sample;
+
+  @Parameter(names = "-mode",
+    description = "One of IN_MEMORY, PARALLEL or DEDUPLICATED (default = chosen from a cost estimate)")
+  public String mode;
+
+  @Parameter(names = "-estimate", description = "Only estimate the cost of normalizing and print the estimate")
+  public boolean estimateOnly;
+
+  @Parameter(names = "-checkpoint", description = "Dir to write a checkpoint to after each rank pass, which must exist",
+    converter = FileConverter.class)
+  public File checkpointDir;
+
+  @Parameter(names = "-resume",
+    description = "Resume from the latest checkpoint in the -checkpoint dir if there is one, which must have been "
+      + "written for the same source, unchanged since")
+  public boolean resume;
+
+  @Parameter(names = "-events",
+    description = "File to record the time of each phase and of the largest groups to, as tab separated rows",
+    converter = FileConverter.class)
+  public File eventFile;
+
+  @Parameter(names = "-join", description = "Also write the taxon id of each occurrence to " + OCCURRENCE_FILE
+    + ", normalizing only the distinct classifications and then reading the archive a second time")
+  public boolean join;
+
   public static void main(String[] args) throws Exception {
     DwcaNormalizer app = new DwcaNormalizer();
     new JCommander(app, args);
-    if (app.sourceFile == null && app.sourceUrl == null) {
-      System.out.println("Either sourceUrl or sourceFile must be supplied");
+    if (app.sourceFile == null && app.sourceUrl == null && app.textFile == null && !app.resume) {
+      System.out.println("Either sourceUrl, sourceFile or textFile must be supplied");
+    } else if (app.resume && app.checkpointDir == null) {
+      System.out.println("A checkpoint dir must be supplied to resume");
+    } else if (app.join && app.textFile != null) {
+      System.out.println("Only an archive can be joined, as text files have no occurrence IDs");
+    } else if (app.join && app.resume) {
+      System.out.println("A join cannot be resumed, as the distinct classifications are not checkpointed");
     } else {
       app.run();
     }
   }
 
-  private void run() throws UnsupportedArchiveException, IOException {
-    Archive archive = null;
-    if (sourceUrl != null) {
-      archive = ArchiveFactory.openArchive(sourceUrl, new File(System.getProperty("java.io.tmpdir")));
-    } else {
-      archive = ArchiveFactory.openArchive(sourceFile, new File(System.getProperty("java.io.tmpdir")));
+  private static DenormClassification toClassification(DarwinCoreRecord record) {
+    return new DenormClassification(
+      record.getKingdom(),
+      record.getPhylum(),
+      record.getClasss(),
+      record.getOrder(),
+      record.getFamily(),
+      record.getGenus(),
+      // the following is wrong, as it will put subspecies in here
+      // consider using NameParser
+      record.getScientificName(),
+      record.getInfraspecificEpithet(),
+      record.getScientificNameAuthorship());
+  }
+
+  /**
+   * Streams the source once to estimate the cost of normalizing it.
+   *
+   * @param archive To estimate, or null to estimate the text file
+   */
+  private CostEstimate estimate(Archive archive) throws IOException {
+    LOG.info("Estimating cost of normalizing source");
+    ClassificationIterator iter = open(archive);
+    try {
+      return new CostEstimator().estimate(iter);
+    } finally {
+      iter.close();
     }
+  }
 
-    ClosableIterator<DarwinCoreRecord> iter = archive.iteratorDwc();
-    List<DenormClassification> denorm = Lists.newArrayList();
-    LOG.info("Reading archive");
-    int count = 0;
+  /**
+   * Normalizes the source, writing the tree to the output as it is built.
+   *
+   * @return false if only an estimate was asked for
+   */
+  private boolean normalize(File output) throws IOException {
+    Archive archive = textFile == null ? openArchive() : null;
+    if (join && !estimateOnly) {
+      List<NormClassification> norm = join(archive);
+      long time = System.nanoTime();
+      write(norm, output);
+      phaseCompleted("write", norm.size(), time);
+      return true;
+    }
+
+    CostEstimate estimate = null;
+    if (mode == null || estimateOnly) {
+      estimate = estimate(archive);
+      if (estimateOnly) {
+        System.out.println(estimate);
+        return false;
+      }
+    }
+    ExecutionMode executionMode = mode == null ? estimate.getMode() : ExecutionMode.valueOf(mode.toUpperCase());
+    LOG.info("Normalizing in mode {}", executionMode);
+
+    // small archives are wholly within the sample, so there is no need to read them again, but text files are read
+    // again to interpret their scientific names
+    boolean sampled = archive != null && estimate != null && estimate.isComplete();
+    List<DenormClassification> denorm =
+      sampled ? read(estimate.getSample(), executionMode) : read(archive, executionMode);
+
+    final TaxonWriter writer = new TaxonWriter(output);
     try {
-      while (iter.hasNext()) {
-        DarwinCoreRecord record = iter.next();
-
-        denorm.add(new DenormClassification(
-          record.getKingdom(),
-          record.getPhylum(),
-          record.getClasss(),
-          record.getOrder(),
-          record.getFamily(),
-          record.getGenus(),
-          // the following is wrong, as it will put subspecies in here
-          // consider using NameParser
-          record.getScientificName(),
-          record.getInfraspecificEpithet(),
-          record.getScientificNameAuthorship()));
-
-        if (++count % 10000 == 0) {
-          LOG.info("Read {} records from archive", denorm.size());
-          break;
-        }
+      if (listener == null) {
+        normalize(denorm, executionMode, writer);
+      } else {
+        // the tree is written as it is built, so the time writing is summed over the taxa
+        final long[] nanos = new long[1];
+        final int[] count = new int[1];
+        normalize(denorm, executionMode, new NormClassificationSink() {
+
+          @Override
+          public void accept(NormClassification taxon) {
+            long time = System.nanoTime();
+            writer.accept(taxon);
+            nanos[0] += System.nanoTime() - time;
+            count[0]++;
+          }
+        });
+        listener.phaseCompleted("write", count[0], nanos[0] / 1000);
       }
+    } finally {
+      writer.close();
+    }
+    return true;
+  }
+
+  /**
+   * Normalizes only the distinct classifications of the archive, then streams it a second time to write the taxon id
+   * of each occurrence. Memory is held for the distinct classifications rather than for the occurrences.
+   */
+  private List<NormClassification> join(Archive archive) throws IOException {
+    List<DenormClassification> denorm = read(archive, ExecutionMode.DEDUPLICATED);
+    File file = new File(outDir, OCCURRENCE_FILE);
+    LOG.info("Joining occurrences to taxa in {}", file.getAbsolutePath());
+    BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+    ClassificationIterator iter = open(archive);
+    try {
+      return join(denorm, iter, bw);
     } finally {
       iter.close();
+      bw.close();
+    }
+  }
+
+  /**
+   * Normalizes the distinct classifications, then writes the id of the taxon each record of the source belongs to as
+   * a row of its occurrence id and taxon id. Records whose classification is not among those normalized have no taxon
+   * and are left out.
+   *
+   * @param denorm The distinct classifications of the source, as read
+   *
+   * @return The normalized classifications
+   */
+  List<NormClassification> join(List<DenormClassification> denorm, OccurrenceSource source, Writer out)
+    throws IOException {
+    // the normalizer infers names and merges records in the list it is given, so the classifications to match are
+    // copies as read
+    List<DenormClassification> distinct = Lists.newArrayList();
+    for (DenormClassification d : denorm) {
+      distinct.add(new DenormClassification(d.getKingdom(), d.getPhylum(), d.getKlass(), d.getOrder(), d.getFamily(),
+        d.getGenus(), d.getSpecies(), d.getSubspecies(), d.getAuthor()));
     }
-    LOG.info("Read {} records from archive", denorm.size());
+    List<NormClassification> norm = normalize(denorm, ExecutionMode.DEDUPLICATED);
+    Map<IngestPipeline.Key, Integer> taxonIds = taxonIds(distinct, norm);
+    distinct.clear();
 
+    int count = 0;
+    int unmatched = 0;
+    while (source.hasNext()) {
+      DenormClassification d = source.next();
+      Integer taxonId = taxonIds.get(IngestPipeline.key(d, null));
+      if (taxonId == null) {
+        unmatched++;
+      } else {
+        out.write(source.getOccurrenceId() + "|" + taxonId + "|\n");
+      }
+      if (++count % 10000 == 0) {
+        LOG.info("Joined {} records to taxa", count);
+      }
+    }
+    LOG.info("Joined {} records to taxa, of which {} had no match and were left out", count, unmatched);
+    return norm;
+  }
+
+  /**
+   * Matches each distinct classification to the taxon it was normalized into. The names are inferred as the normalizer
+   * did before the match, and the result is keyed on the classification as read.
+   *
+   * @return The taxon ids by {@link IngestPipeline#key(DenormClassification, String)}, omitting classifications
+   *         without a match
+   */
+  private static Map<IngestPipeline.Key, Integer> taxonIds(List<DenormClassification> distinct,
+    List<NormClassification> norm) {
+    List<IngestPipeline.Key> keys = Lists.newArrayList();
+    for (DenormClassification d : distinct) {
+      keys.add(IngestPipeline.key(d, null));
+    }
+    NameInterpreter interpreter = interpreter(ExecutionMode.DEDUPLICATED);
+    interpreter.inferSpecies(distinct);
+    interpreter.inferGenera(distinct);
+
+    TaxonLookup lookup = TaxonLookup.build(norm);
+    Map<IngestPipeline.Key, Integer> taxonIds = new HashMap<IngestPipeline.Key, Integer>();
+    for (int i = 0; i < distinct.size(); i++) {
+      int taxonId = lookup.lookup(distinct.get(i));
+      if (taxonId != TaxonLookup.NO_MATCH) {
+        taxonIds.put(keys.get(i), taxonId);
+      }
+    }
+    return taxonIds;
+  }
+
+  /**
+   * @return The interpreter suited to the mode
+   */
+  private static NameInterpreter interpreter(ExecutionMode executionMode) {
+    // small datasets are not worth starting workers for
+    return executionMode == ExecutionMode.IN_MEMORY ? new NameInterpreter(1, NameInterpreter.DEFAULT_BATCH_SIZE)
+      : NameInterpreter.getDefault();
+  }
+
+  /**
+   * Resumes from the latest checkpoint if asked to and there is one, and otherwise normalizes the source.
+   *
+   * @return false if there was nothing to do or only an estimate was asked for
+   */
+  private boolean normalizeOrResume() throws IOException {
+    File output = new File(outDir, "normalized.txt");
+    List<NormClassification> norm = resume ? resume() : null;
+    if (norm != null) {
+      long time = System.nanoTime();
+      write(norm, output);
+      phaseCompleted("write", norm.size(), time);
+      return true;
+    }
+    if (sourceFile == null && sourceUrl == null && textFile == null) {
+      System.out.println("Nothing to resume, and no sourceUrl, sourceFile or textFile supplied");
+      return false;
+    }
+    return normalize(output);
+  }
+
+  List<NormClassification> normalize(List<DenormClassification> denorm, ExecutionMode executionMode) {
+    final List<NormClassification> norm = Lists.newArrayList();
+    normalize(denorm, executionMode, new NormClassificationSink() {
+
+      @Override
+      public void accept(NormClassification taxon) {
+        norm.add(taxon);
+      }
+    });
+    return norm;
+  }
+
+  /**
+   * Normalizes, passing each taxon to the sink as soon as it is final.
+   */
+  void normalize(List<DenormClassification> denorm, ExecutionMode executionMode, NormClassificationSink sink) {
     Normalizer n = new Normalizer();
+    n.setNameInterpreter(interpreter(executionMode));
+    n.setBuildThreads(executionMode == ExecutionMode.IN_MEMORY ? 1 : Runtime.getRuntime().availableProcessors());
+    CheckpointWriter checkpointWriter =
+      checkpointDir == null ? null : new CheckpointWriter(checkpointDir, checkpointSource());
+    n.setCheckpointWriter(checkpointWriter);
+    n.setListener(listener);
+    n.setProgress(progress);
     LOG.info("Normalizing archive");
-    List<NormClassification> norm = n.normalize(denorm);
-
-    BufferedWriter bw = new BufferedWriter(new FileWriter(new File(outDir, "normalized.txt")));
-    for (NormClassification taxon : norm) {
-      bw.write(
-        taxon.getId() + "|" +
-          taxon.getParentId() + "|" +
-          taxon.getRank() + "|" +
-          taxon.getScientificName() + "|" +
-          taxon.getAuthor() + "|\n");
-    }
-    bw.close();
-    LOG.info("Normalized resulted in {} records", norm.size());
+    try {
+      n.normalize(denorm, sink);
+    } finally {
+      if (checkpointWriter != null) {
+        checkpointWriter.close();
+      }
+    }
+  }
+
+  /**
+   * @param archive To read, or null to read the text file
+   */
+  private ClassificationIterator open(Archive archive) throws IOException {
+    if (archive != null) {
+      return new ClassificationIterator(archive, sample);
+    }
+    boolean comma = ",".equals(delimiter) || "comma".equalsIgnoreCase(delimiter);
+    return new ClassificationIterator(DelimitedTextReader.open(textFile, comma ? ',' : '\t', comma), sample);
+  }
+
+  private Archive openArchive() throws IOException {
+    if (sourceUrl != null) {
+      return ArchiveFactory.openArchive(sourceUrl, workDir);
+    }
+    return ArchiveFactory.openArchive(sourceFile, workDir);
+  }
+
+  private void phaseCompleted(String phase, int classifications, long startNanos) {
+    if (listener != null) {
+      listener.phaseCompleted(phase, classifications, (System.nanoTime() - startNanos) / 1000);
+    }
+  }
+
+  /**
+   * Reads the archive or text file.
+   */
+  List<DenormClassification> read(ExecutionMode executionMode) throws IOException {
+    return read(textFile == null ? openArchive() : null, executionMode);
+  }
+
+  /**
+   * Reads every record through an {@link IngestPipeline}, collapsing duplicate classifications as they are read in
+   * DEDUPLICATED mode so only distinct ones are held. Names are replaced by the shared instances in the dictionary if
+   * there is one. Scientific names from a text file are interpreted while the rest is still being read.
+   *
+   * @param archive To read, or null to read the text file
+   */
+  private List<DenormClassification> read(Archive archive, ExecutionMode executionMode) throws IOException {
+    ClassificationIterator iter = open(archive);
+    try {
+      return read(iter, archive == null ? interpreter(executionMode) : null, executionMode);
+    } finally {
+      iter.close();
+    }
+  }
+
+  /**
+   * Reads the records sampled from an archive that fits wholly within the sample, through an {@link IngestPipeline}
+   * as the archive itself would be, so they are collapsed, canonicalized and counted the same without reading the
+   * archive again.
+   */
+  List<DenormClassification> read(final List<DenormClassification> sample, ExecutionMode executionMode)
+    throws IOException {
+    return read(new IngestPipeline.Source() {
+
+      private int index;
+
+      @Override
+      public boolean hasNext() {
+        return index < sample.size();
+      }
+
+      @Override
+      public DenormClassification next() {
+        return sample.get(index++);
+      }
+
+      @Override
+      public String getScientificName() {
+        // the names of archives are not interpreted
+        return null;
+      }
+    }, null, executionMode);
+  }
+
+  private List<DenormClassification> read(IngestPipeline.Source source, NameInterpreter interpreter,
+    ExecutionMode executionMode) throws IOException {
+    long time = System.nanoTime();
+    NameDictionary dictionary = dictionaryFile == null ? null : NameDictionary.open(dictionaryFile);
+    IngestPipeline pipeline =
+      new IngestPipeline(dictionary, executionMode == ExecutionMode.DEDUPLICATED, interpreter, progress);
+    LOG.info("Reading source");
+    progress.phaseStarted("read", 0, 0);
+    List<DenormClassification> denorm = pipeline.run(source);
+    phaseCompleted("read", denorm.size(), time);
+    return denorm;
+  }
+
+  /**
+   * @return The normalized classifications from the latest checkpoint, or null if there is no checkpoint
+   *
+   * @throws IOException If the checkpoint was written for a source other than the one supplied
+   */
+  private List<NormClassification> resume() throws IOException {
+    Checkpoint checkpoint = Checkpoint.latest(checkpointDir, checkpointSource());
+    if (checkpoint == null) {
+      LOG.info("No checkpoint found in {}", checkpointDir.getAbsolutePath());
+      return null;
+    }
+    LOG.info("Resuming from the checkpoint of source[{}]", checkpoint.getSource());
+    Normalizer n = new Normalizer();
+    CheckpointWriter checkpointWriter = new CheckpointWriter(checkpointDir, checkpoint.getSource());
+    n.setCheckpointWriter(checkpointWriter);
+    n.setListener(listener);
+    n.setProgress(progress);
+    try {
+      return n.resume(checkpoint);
+    } finally {
+      checkpointWriter.close();
+    }
+  }
+
+  private void run() throws UnsupportedArchiveException, IOException {
+    NormalizerEventLog eventLog = eventFile == null ? null : new NormalizerEventLog(eventFile);
+    if (eventLog != null) {
+      listener = eventLog;
+    }
+    progress.register(source());
+    try {
+      if (!normalizeOrResume()) {
+        return;
+      }
+    } finally {
+      progress.unregister();
+      if (eventLog != null) {
+        eventLog.close();
+      }
+    }
+
+    // the run is complete, so a later resume must not pick up its state
+    if (checkpointDir != null) {
+      Checkpoint.file(checkpointDir).delete();
+    }
+  }
+
+  /**
+   * Reads a tree as written by {@link #write(List, File)}.
+   */
+  static List<NormClassification> readNormalized(File file) throws IOException {
+    List<NormClassification> norm = Lists.newArrayList();
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    try {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        if (line.length() > 0) {
+          String[] fields = line.split("\\|", -1);
+          if (fields.length < 5) {
+            throw new IOException("Expected id|parentId|rank|name|author| on line: " + line);
+          }
+          norm.add(new NormClassification(Integer.valueOf(fields[0]), nullable(fields[1]) == null ? null
+            : Integer.valueOf(fields[1]), nullable(fields[3]), nullable(fields[4]), fields[2]));
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return norm;
+  }
+
+  /**
+   * @return The value, or null where null was written
+   */
+  private static String nullable(String value) {
+    return "null".equals(value) ? null : value;
+  }
+
+  /**
+   * @return Identifies the source for its checkpoints, or null if only resuming
+   */
+  private String checkpointSource() {
+    if (textFile != null) {
+      return Checkpoint.source(textFile);
+    }
+    if (sourceUrl != null) {
+      return sourceUrl.toString();
+    }
+    return sourceFile == null ? null : Checkpoint.source(sourceFile);
+  }
+
+  /**
+   * @return The path or URL of what is normalized, or of the checkpoints if only resuming
+   */
+  private String source() {
+    if (textFile != null) {
+      return textFile.getAbsolutePath();
+    }
+    if (sourceUrl != null) {
+      return sourceUrl.toString();
+    }
+    return sourceFile == null ? checkpointDir.getAbsolutePath() : sourceFile.getAbsolutePath();
+  }
+
+  static void write(List<NormClassification> norm, File file) throws IOException {
+    TaxonWriter writer = new TaxonWriter(file);
+    try {
+      for (NormClassification taxon : norm) {
+        writer.accept(taxon);
+      }
+    } finally {
+      writer.close();
+    }
   }
 }
@@ -0,0 +1,24 @@
+package org.gbif.taxonomy.norm;
+
+/**
+ * How a normalization is executed, usually chosen from a {@link CostEstimate}.
+ */
+public enum ExecutionMode {
+
+  /**
+   * Every record is held and names are interpreted on the calling thread. Right for small datasets, where starting
+   * workers costs more than it saves.
+   */
+  IN_MEMORY,
+
+  /**
+   * Every record is held, and names are interpreted and the tree is built across a worker per processor.
+   */
+  PARALLEL,
+
+  /**
+   * Duplicate classifications are collapsed while reading, so the heap holds one record per distinct classification
+   * rather than one per input row. Names are interpreted and the tree is built across a worker per processor.
+   */
+  DEDUPLICATED
+}
@@ -0,0 +1,236 @@
+package org.gbif.taxonomy.norm;
+
+/**
+ * A hand written tokenizer for the shapes that make up the bulk of real data:
+ * <ul>
+ * <li>Aus bus</li>
+ * <li>Aus bus cus</li>
+ * <li>Aus bus subsp. cus</li>
+ * <li>Aus bus var. cus</li>
+ * </ul>
+ * each optionally followed by a simple authorship such as "Zimmer, 1937", "Salvin &amp; Godman, 1890" or
+ * "(Statius Muller, 1776)".
+ * <p/>
+ * The tokenizer is deliberately strict: anything that is not exactly one of these shapes with single spaces between the
+ * tokens is rejected, so that the caller falls back to the full NameParser. Initials, abbreviated authors, rank markers
+ * other than subsp. and var., author particles, hybrids and any non ASCII character all fall back. Under those
+ * constraints the input is already in the form the NameParser renders, so the full name is the input itself and the
+ * only allocations are the component substrings.
+ * <p/>
+ * This class is thread safe.
+ */
+public class FastNameTokenizer {
+
+  private static final String SUBSP = "subsp.";
+  private static final String VAR = "var.";
+
+  // lower case words that are not epithets, but are either author particles or informal qualifiers
+  private static final String[] NOT_EPITHETS =
+    {"agg", "aff", "and", "auct", "cf", "d", "da", "de", "del", "della", "den", "der", "des", "di", "du", "et", "ex",
+      "f", "fo", "forma", "in", "la", "le", "nom", "non", "nothosp", "sensu", "sp", "spp", "ssp", "subsp", "subvar",
+      "van", "var", "von", "y", "zu"};
+
+  /**
+   * @param name To tokenize
+   *
+   * @return The components of the name, or null if it is not one of the simple shapes and needs the NameParser
+   */
+  public static NameComponents tokenize(String name) {
+    if (name == null) {
+      return null;
+    }
+    int len = name.length();
+
+    int genusEnd = scanCapitalizedWord(name, 0, len);
+    if (genusEnd < 0 || genusEnd == len || name.charAt(genusEnd) != ' ') {
+      return null; // monomials are left to the parser, as they are ambiguous with higher taxa
+    }
+
+    int epithetStart = genusEnd + 1;
+    int epithetEnd = scanEpithet(name, epithetStart, len);
+    if (epithetEnd < 0) {
+      return null;
+    }
+
+    int pos = epithetEnd;
+    String rankMarker = null;
+    int infraStart = -1;
+    int infraEnd = -1;
+    if (pos < len) {
+      if (name.charAt(pos) != ' ') {
+        return null;
+      }
+      int next = pos + 1;
+      if (name.startsWith(SUBSP, next) || name.startsWith(VAR, next)) {
+        rankMarker = name.startsWith(SUBSP, next) ? SUBSP : VAR;
+        int markerEnd = next + rankMarker.length();
+        if (markerEnd == len || name.charAt(markerEnd) != ' ') {
+          return null;
+        }
+        infraStart = markerEnd + 1;
+        infraEnd = scanEpithet(name, infraStart, len);
+        if (infraEnd < 0) {
+          return null;
+        }
+        pos = infraEnd;
+      } else {
+        int end = scanEpithet(name, next, len);
+        if (end > 0) {
+          infraStart = next;
+          infraEnd = end;
+          pos = end;
+        }
+      }
+    }
+
+    String authorship = null;
+    if (pos < len) {
+      if (name.charAt(pos) != ' ' || !isSimpleAuthorship(name, pos + 1, len)) {
+        return null;
+      }
+      authorship = name.substring(pos + 1);
+    }
+
+    return new NameComponents(name.substring(0, genusEnd), name.substring(epithetStart, epithetEnd), rankMarker,
+      infraStart < 0 ? null : name.substring(infraStart, infraEnd), authorship, name);
+  }
+
+  /**
+   * authorship := team | "(" team ")" [" " team]
+   */
+  private static boolean isSimpleAuthorship(String s, int start, int end) {
+    int pos = start;
+    if (pos < end && s.charAt(pos) == '(') {
+      pos = scanTeam(s, pos + 1, end);
+      if (pos < 0 || pos == end || s.charAt(pos) != ')') {
+        return false;
+      }
+      pos++;
+      if (pos == end) {
+        return true;
+      }
+      if (s.charAt(pos) != ' ') {
+        return false;
+      }
+      pos++;
+    }
+    return scanTeam(s, pos, end) == end;
+  }
+
+  /**
+   * team := author [" & " author] [", " year] where author := word (" " word)*
+   *
+   * @return the end of the team or -1 if it does not match
+   */
+  private static int scanTeam(String s, int start, int end) {
+    int pos = scanAuthor(s, start, end);
+    if (pos < 0) {
+      return -1;
+    }
+    if (s.startsWith(" & ", pos)) {
+      pos = scanAuthor(s, pos + 3, end);
+      if (pos < 0) {
+        return -1;
+      }
+    }
+    if (s.startsWith(", ", pos)) {
+      int yearEnd = pos + 6;
+      if (yearEnd > end) {
+        return -1;
+      }
+      for (int i = pos + 2; i < yearEnd; i++) {
+        if (!isDigit(s.charAt(i))) {
+          return -1;
+        }
+      }
+      if (yearEnd < end && isDigit(s.charAt(yearEnd))) {
+        return -1;
+      }
+      pos = yearEnd;
+    }
+    return pos;
+  }
+
+  private static int scanAuthor(String s, int start, int end) {
+    int pos = scanCapitalizedWord(s, start, end);
+    if (pos < 0) {
+      return -1;
+    }
+    // further words of the same author, e.g. Statius Muller
+    while (pos + 1 < end && s.charAt(pos) == ' ' && isUpper(s.charAt(pos + 1))) {
+      int next = scanCapitalizedWord(s, pos + 1, end);
+      if (next < 0) {
+        return -1;
+      }
+      pos = next;
+    }
+    return pos;
+  }
+
+  /**
+   * word := [A-Z][a-z]+ ([-'][A-Z]?[a-z]+)* so abbreviations such as "L." are never words
+   */
+  private static int scanCapitalizedWord(String s, int start, int end) {
+    if (start >= end || !isUpper(s.charAt(start))) {
+      return -1;
+    }
+    int pos = scanLowers(s, start + 1, end);
+    while (pos > 0 && pos < end && (s.charAt(pos) == '-' || s.charAt(pos) == '\'')) {
+      int next = pos + 1;
+      if (next < end && isUpper(s.charAt(next))) {
+        next++;
+      }
+      pos = scanLowers(s, next, end);
+    }
+    return pos;
+  }
+
+  /**
+   * @return the end of one or more lower case letters or -1 if there are none
+   */
+  private static int scanLowers(String s, int start, int end) {
+    int pos = start;
+    while (pos < end && isLower(s.charAt(pos))) {
+      pos++;
+    }
+    return pos > start ? pos : -1;
+  }
+
+  /**
+   * epithet := [a-z][a-z-]*[a-z] followed by a space or the end, which is not an author particle or qualifier
+   */
+  private static int scanEpithet(String s, int start, int end) {
+    if (start >= end || !isLower(s.charAt(start))) {
+      return -1;
+    }
+    int pos = start + 1;
+    while (pos < end && (isLower(s.charAt(pos)) || s.charAt(pos) == '-')) {
+      pos++;
+    }
+    if (pos < end && s.charAt(pos) != ' ' || !isLower(s.charAt(pos - 1)) || pos - start < 2) {
+      return -1;
+    }
+    for (String word : NOT_EPITHETS) {
+      if (word.length() == pos - start && s.startsWith(word, start)) {
+        return -1;
+      }
+    }
+    return pos;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isLower(char c) {
+    return c >= 'a' && c <= 'z';
+  }
+
+  private static boolean isUpper(char c) {
+    return c >= 'A' && c <= 'Z';
+  }
+
+  private FastNameTokenizer() {
+    throw new UnsupportedOperationException("Can't initialize class");
+  }
+}
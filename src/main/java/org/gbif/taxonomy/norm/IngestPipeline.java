@@ -0,0 +1,275 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Throwables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the classifications to normalize in three stages that overlap, each on its own thread and handing batches to
+ * the next through a {@link SpscRingBuffer}:
+ * <ol>
+ * <li>the source is read</li>
+ * <li>names are replaced by the shared instances in the dictionary if there is one, and duplicate classifications are
+ * collapsed if asked to</li>
+ * <li>the scientific names of the classifications remaining are interpreted if there is an interpreter, on the calling
+ * thread</li>
+ * </ol>
+ * The buffers are bounded, so a stage that falls behind holds back those before it rather than letting batches pile
+ * up, and the classifications are ready to normalize as soon as the source is read. Duplicates are collapsed before
+ * names are interpreted, so the names of duplicates are never parsed.
+ * <p/>
+ * This class is not thread safe.
+ */
+public class IngestPipeline {
+
+  /**
+   * Where the classifications are read from.
+   */
+  public interface Source {
+
+    boolean hasNext();
+
+    DenormClassification next();
+
+    /**
+     * @return The scientific name to interpret for the last classification, or null if it needs no interpretation
+     */
+    String getScientificName();
+  }
+
+  /**
+   * Classifications handed between stages, with the scientific name of each.
+   */
+  private static class Batch {
+
+    private final List<DenormClassification> classifications = new ArrayList<DenormClassification>(BATCH_SIZE);
+    private final List<String> scientificNames = new ArrayList<String>(BATCH_SIZE);
+
+    private void add(DenormClassification d, String scientificName) {
+      classifications.add(d);
+      scientificNames.add(scientificName);
+    }
+  }
+
+  /**
+   * A classification as read with its scientific name, compared value by value so that no value can be mistaken for
+   * another or for a missing one. The values are copied, as interpreting the name changes the classification.
+   */
+  static final class Key {
+
+    private static final LINNEAN_RANK[] RANKS = LINNEAN_RANK.values();
+
+    private final String[] values = new String[RANKS.length + 2];
+    private final int hash;
+
+    private Key(DenormClassification d, String scientificName) {
+      for (LINNEAN_RANK r : RANKS) {
+        values[r.ordinal()] = d.get(r);
+      }
+      values[RANKS.length] = d.getAuthor();
+      values[RANKS.length + 1] = scientificName;
+      hash = Arrays.hashCode(values);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Key && Arrays.equals(values, ((Key) o).values);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  public static final int BATCH_SIZE = 1000;
+  public static final int BUFFER_CAPACITY = 16;
+
+  private static final Logger LOG = LoggerFactory.getLogger(IngestPipeline.class);
+
+  private final NameDictionary dictionary;
+  private final boolean deduplicate;
+  private final NameInterpreter interpreter;
+  private final NormalizerProgress progress;
+  private int records;
+
+  /**
+   * @param dictionary To canonicalize the names with, or null
+   * @param deduplicate If duplicate classifications are to be collapsed
+   * @param interpreter To interpret scientific names with, or null if the source has none
+   * @param progress Told of each record read
+   */
+  public IngestPipeline(NameDictionary dictionary, boolean deduplicate, NameInterpreter interpreter,
+    NormalizerProgress progress) {
+    this.dictionary = dictionary;
+    this.deduplicate = deduplicate;
+    this.interpreter = interpreter;
+    this.progress = progress;
+  }
+
+  /**
+   * @return The number of records read by the latest run
+   */
+  public int getRecords() {
+    return records;
+  }
+
+  /**
+   * Reads the source to its end. The source is not closed, and is no longer in use once this returns.
+   *
+   * @return The classifications read, in the order read
+   */
+  public List<DenormClassification> run(final Source source) {
+    final SpscRingBuffer<Batch> read = new SpscRingBuffer<Batch>(BUFFER_CAPACITY);
+    final SpscRingBuffer<Batch> distinct = new SpscRingBuffer<Batch>(BUFFER_CAPACITY);
+    ExecutorService executor = Executors.newFixedThreadPool(2, new ThreadFactory() {
+
+      private int count;
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, ++count == 1 ? "ingest-reader" : "ingest-deduplicator");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    try {
+      Future<Integer> reader = executor.submit(new Callable<Integer>() {
+
+        @Override
+        public Integer call() throws InterruptedException {
+          return read(source, read);
+        }
+      });
+      Future<?> deduplicator = executor.submit(new Callable<Void>() {
+
+        @Override
+        public Void call() throws InterruptedException {
+          deduplicate(read, distinct);
+          return null;
+        }
+      });
+
+      // names are interpreted in chunks large enough to share out across the interpreter's workers
+      int chunkSize = Runtime.getRuntime().availableProcessors() * NameInterpreter.DEFAULT_BATCH_SIZE;
+      List<DenormClassification> denorm = new ArrayList<DenormClassification>();
+      Batch chunk = new Batch();
+      for (Batch batch = distinct.take(); batch != null; batch = distinct.take()) {
+        chunk.classifications.addAll(batch.classifications);
+        chunk.scientificNames.addAll(batch.scientificNames);
+        if (chunk.classifications.size() >= chunkSize) {
+          interpret(chunk, denorm);
+          chunk = new Batch();
+        }
+      }
+      interpret(chunk, denorm);
+
+      // a stage that failed closed its buffer early, so its failure is only seen here, and the deduplicator is asked
+      // first as a reader held back by a failed deduplicator would never finish, until stopped by the shutdown below
+      deduplicator.get();
+      records = reader.get();
+      LOG.info("Read {} records from source into {} classifications", records, denorm.size());
+      return denorm;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      // stops any stage still waiting on a buffer, and waits for the reader to be done with the source
+      executor.shutdownNow();
+      try {
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * @return The key of a classification as read, distinct for each distinct record
+   */
+  static Key key(DenormClassification d, String scientificName) {
+    // the name is not yet interpreted, so is part of what makes the record distinct
+    return new Key(d, scientificName);
+  }
+
+  private void deduplicate(SpscRingBuffer<Batch> in, SpscRingBuffer<Batch> out) throws InterruptedException {
+    Map<Key, DenormClassification> distinct = new HashMap<Key, DenormClassification>();
+    try {
+      for (Batch batch = in.take(); batch != null; batch = in.take()) {
+        Batch kept = deduplicate ? new Batch() : batch;
+        for (int i = 0; i < batch.classifications.size(); i++) {
+          DenormClassification d = batch.classifications.get(i);
+          if (dictionary != null) {
+            dictionary.canonicalize(d);
+          }
+          if (deduplicate) {
+            String scientificName = batch.scientificNames.get(i);
+            Key key = key(d, scientificName);
+            DenormClassification existing = distinct.get(key);
+            if (existing == null) {
+              distinct.put(key, d);
+              kept.add(d, scientificName);
+            } else {
+              // only the payloads of the existing classification change, which interpreting its name leaves alone
+              DenormClassificationUtils.mergeInto(d, existing);
+            }
+          }
+        }
+        if (!kept.classifications.isEmpty()) {
+          out.put(kept);
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private void interpret(Batch chunk, List<DenormClassification> denorm) {
+    if (interpreter != null && !chunk.classifications.isEmpty()) {
+      interpreter.interpretScientificNames(chunk.classifications, chunk.scientificNames);
+    }
+    denorm.addAll(chunk.classifications);
+  }
+
+  private int read(Source source, SpscRingBuffer<Batch> out) throws InterruptedException {
+    int count = 0;
+    try {
+      Batch batch = new Batch();
+      while (source.hasNext()) {
+        DenormClassification d = source.next();
+        progress.recordRead();
+        batch.add(d, source.getScientificName());
+        if (batch.classifications.size() == BATCH_SIZE) {
+          out.put(batch);
+          batch = new Batch();
+        }
+        if (++count % 10000 == 0) {
+          LOG.info("Read {} records from source", count);
+        }
+      }
+      if (!batch.classifications.isEmpty()) {
+        out.put(batch);
+      }
+    } finally {
+      out.close();
+    }
+    return count;
+  }
+}
@@ -1,14 +1,31 @@
 package org.gbif.taxonomy.norm;
 
+import java.util.Arrays;
+
 /**
  * Utility class.
  */
 public class LinneanRank {
 
-  private static final LINNEAN_RANK[] EMPTY_LINNEAN_RANKS_ARRAY = new LINNEAN_RANK[] {};
-
+  /**
+   * The ranks from the highest down, which is the order their ordinals express. The orderings below follow the
+   * ordinals, but the comparisons by rank and the logging of the normalizer still treat genus, species and subspecies
+   * apart by name, so a rank can't be added here without changing those too.
+   */
   public enum LINNEAN_RANK {K, P, C, O, F, G, S, SS}
 
+  private static final LINNEAN_RANK[] RANKS = LINNEAN_RANK.values();
+  // by ordinal, the ranks above the rank, and the ranks below it, in order (kingdom first), each exclusive
+  private static final LINNEAN_RANK[][] HIGHER = new LINNEAN_RANK[RANKS.length + 1][];
+  private static final LINNEAN_RANK[][] LOWER = new LINNEAN_RANK[RANKS.length + 1][];
+
+  static {
+    for (int i = 0; i <= RANKS.length; i++) {
+      HIGHER[i] = Arrays.copyOfRange(RANKS, 0, i);
+      LOWER[i] = Arrays.copyOfRange(RANKS, i, RANKS.length);
+    }
+  }
+
   /**
    * Utility method.
    *
@@ -18,128 +35,21 @@ public class LinneanRank {
    * @return true if Source rank is for a taxon higher or the same as b, otherwise false
    */
   public static boolean isHigherOrEqual(LINNEAN_RANK a, LINNEAN_RANK b) {
-    switch (a) {
-      case K:
-        return true;
-      case P:
-        return b != LINNEAN_RANK.K;
-      case C:
-        return b != LINNEAN_RANK.K && b != LINNEAN_RANK.P;
-      case O:
-        return b != LINNEAN_RANK.K && b != LINNEAN_RANK.P && b != LINNEAN_RANK.C;
-      case F:
-        return b != LINNEAN_RANK.K && b != LINNEAN_RANK.P && b != LINNEAN_RANK.C && b != LINNEAN_RANK.O;
-      case G:
-        return b != LINNEAN_RANK.K && b != LINNEAN_RANK.P && b != LINNEAN_RANK.C && b != LINNEAN_RANK.O &&
-          b != LINNEAN_RANK.F;
-      case S:
-        return b != LINNEAN_RANK.K && b != LINNEAN_RANK.P && b != LINNEAN_RANK.C && b != LINNEAN_RANK.O &&
-          b != LINNEAN_RANK.F && b != LINNEAN_RANK.G;
-      default:  // must be subspecies
-        return b != LINNEAN_RANK.K && b != LINNEAN_RANK.P && b != LINNEAN_RANK.C && b != LINNEAN_RANK.O &&
-          b != LINNEAN_RANK.F && b != LINNEAN_RANK.G && b != LINNEAN_RANK.S;
-    }
+    return a.ordinal() <= b.ordinal();
   }
 
   /**
-   * @return an order (kingdom first) array of ranks
+   * @return an order (kingdom first) array of ranks, shared so not to be modified
    */
   public static LINNEAN_RANK[] ranksHigherThan(LINNEAN_RANK rank, boolean inclusive) {
-    if (inclusive) {
-      switch (rank) {
-        case K:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.K};
-        case P:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.K, LINNEAN_RANK.P};
-        case C:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.K, LINNEAN_RANK.P, LINNEAN_RANK.C};
-        case O:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.K, LINNEAN_RANK.P, LINNEAN_RANK.C, LINNEAN_RANK.O};
-        case F:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.K, LINNEAN_RANK.P, LINNEAN_RANK.C, LINNEAN_RANK.O, LINNEAN_RANK.F};
-        case G:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.K, LINNEAN_RANK.P, LINNEAN_RANK.C, LINNEAN_RANK.O, LINNEAN_RANK.F,
-            LINNEAN_RANK.G};
-        case S:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.K, LINNEAN_RANK.P, LINNEAN_RANK.C, LINNEAN_RANK.O, LINNEAN_RANK.F,
-            LINNEAN_RANK.G, LINNEAN_RANK.S};
-        default: // must be subspecies
-          return new LINNEAN_RANK[] {LINNEAN_RANK.K, LINNEAN_RANK.P, LINNEAN_RANK.C, LINNEAN_RANK.O, LINNEAN_RANK.F,
-            LINNEAN_RANK.G, LINNEAN_RANK.S, LINNEAN_RANK.SS};
-      }
-    } else {
-      switch (rank) {
-        case K:
-          return EMPTY_LINNEAN_RANKS_ARRAY;
-        case P:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.K};
-        case C:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.K, LINNEAN_RANK.P};
-        case O:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.K, LINNEAN_RANK.P, LINNEAN_RANK.C};
-        case F:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.K, LINNEAN_RANK.P, LINNEAN_RANK.C, LINNEAN_RANK.O};
-        case G:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.K, LINNEAN_RANK.P, LINNEAN_RANK.C, LINNEAN_RANK.O, LINNEAN_RANK.F};
-        case S:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.K, LINNEAN_RANK.P, LINNEAN_RANK.C, LINNEAN_RANK.O, LINNEAN_RANK.F,
-            LINNEAN_RANK.G};
-        default: // must be subspecies
-          return new LINNEAN_RANK[] {LINNEAN_RANK.K, LINNEAN_RANK.P, LINNEAN_RANK.C, LINNEAN_RANK.O, LINNEAN_RANK.F,
-            LINNEAN_RANK.G, LINNEAN_RANK.S};
-      }
-    }
+    return HIGHER[inclusive ? rank.ordinal() + 1 : rank.ordinal()];
   }
 
-
   /**
-   * @return an order (kingdom first) array of ranks
+   * @return an order (kingdom first) array of ranks, shared so not to be modified
    */
   public static LINNEAN_RANK[] ranksLowerThan(LINNEAN_RANK rank, boolean inclusive) {
-    if (inclusive) {
-      switch (rank) {
-        case K:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.K, LINNEAN_RANK.P, LINNEAN_RANK.C, LINNEAN_RANK.O, LINNEAN_RANK.F,
-            LINNEAN_RANK.G, LINNEAN_RANK.S, LINNEAN_RANK.SS};
-        case P:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.P, LINNEAN_RANK.C, LINNEAN_RANK.O, LINNEAN_RANK.F, LINNEAN_RANK.G,
-            LINNEAN_RANK.S, LINNEAN_RANK.SS};
-        case C:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.C, LINNEAN_RANK.O, LINNEAN_RANK.F, LINNEAN_RANK.G, LINNEAN_RANK.S,
-            LINNEAN_RANK.SS};
-        case O:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.O, LINNEAN_RANK.F, LINNEAN_RANK.G, LINNEAN_RANK.S, LINNEAN_RANK.SS};
-        case F:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.F, LINNEAN_RANK.G, LINNEAN_RANK.S, LINNEAN_RANK.SS};
-        case G:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.G, LINNEAN_RANK.S, LINNEAN_RANK.SS};
-        case S:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.S, LINNEAN_RANK.SS};
-        default: // must be subspecies
-          return new LINNEAN_RANK[] {LINNEAN_RANK.SS};
-      }
-    } else {
-      switch (rank) {
-        case K:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.P, LINNEAN_RANK.C, LINNEAN_RANK.O, LINNEAN_RANK.F, LINNEAN_RANK.G,
-            LINNEAN_RANK.S, LINNEAN_RANK.SS};
-        case P:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.C, LINNEAN_RANK.O, LINNEAN_RANK.F, LINNEAN_RANK.G, LINNEAN_RANK.S,
-            LINNEAN_RANK.SS};
-        case C:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.O, LINNEAN_RANK.F, LINNEAN_RANK.G, LINNEAN_RANK.S, LINNEAN_RANK.SS};
-        case O:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.F, LINNEAN_RANK.G, LINNEAN_RANK.S, LINNEAN_RANK.SS};
-        case F:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.G, LINNEAN_RANK.S, LINNEAN_RANK.SS};
-        case G:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.S, LINNEAN_RANK.SS};
-        case S:
-          return new LINNEAN_RANK[] {LINNEAN_RANK.SS};
-        default: // must be subspecies
-          return EMPTY_LINNEAN_RANKS_ARRAY;
-      }
-    }
+    return LOWER[inclusive ? rank.ordinal() : rank.ordinal() + 1];
   }
 
   private LinneanRank() {
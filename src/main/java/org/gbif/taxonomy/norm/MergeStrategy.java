@@ -0,0 +1,23 @@
+package org.gbif.taxonomy.norm;
+
+/**
+ * How the {@link Normalizer} finds the groups and duplicates of each rank pass. Every strategy makes the same merges.
+ */
+public enum MergeStrategy {
+
+  /**
+   * Each pass sorts at the rank, as {@link Normalizer#sortAndMerge} does. This is the reference the others are held
+   * to.
+   */
+  SORT,
+
+  /**
+   * Each pass hashes, as {@link Normalizer#hashAndMerge} does.
+   */
+  HASH,
+
+  /**
+   * Each pass hashes or sorts depending on the number of distinct values at the rank.
+   */
+  CHOSEN
+}
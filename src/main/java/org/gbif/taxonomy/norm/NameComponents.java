@@ -0,0 +1,131 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.ecat.model.ParsedName;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The components of a parsed scientific name, as used by the normalizer. Instances come either from the ecat
+ * NameParser or from the {@link FastNameTokenizer}, and both sources must produce identical components for the same
+ * name.
+ * <p/>
+ * This class is immutable.
+ */
+public class NameComponents {
+
+  private final String genus;
+  private final String specificEpithet;
+  private final String rankMarker;
+  private final String infraSpecificEpithet;
+  private final String authorship;
+  private final String fullName;
+
+  public NameComponents(String genus, String specificEpithet, String rankMarker, String infraSpecificEpithet,
+    String authorship, String fullName) {
+    this.genus = genus;
+    this.specificEpithet = specificEpithet;
+    this.rankMarker = rankMarker;
+    this.infraSpecificEpithet = infraSpecificEpithet;
+    this.authorship = authorship;
+    this.fullName = fullName;
+  }
+
+  /**
+   * @param pn As returned by the NameParser
+   *
+   * @return The components with blanks as nulls, or null if the parsed name is null
+   */
+  public static NameComponents fromParsedName(ParsedName<?> pn) {
+    if (pn == null) {
+      return null;
+    }
+    return new NameComponents(StringUtils.trimToNull(pn.getGenusOrAbove()),
+      StringUtils.trimToNull(pn.getSpecificEpithet()), StringUtils.trimToNull(pn.getRankMarker()),
+      StringUtils.trimToNull(pn.getInfraSpecificEpithet()), StringUtils.trimToNull(pn.authorshipComplete()),
+      StringUtils.trimToNull(pn.fullName()));
+  }
+
+  /**
+   * Checks if these components are those of the given name, either as the full name or as the binomial that would be
+   * built from the genus and specific epithet.
+   *
+   * @param name To check
+   *
+   * @return true if the components describe the name
+   */
+  public boolean describes(String name) {
+    if (name == null) {
+      return false;
+    }
+    if (name.equals(fullName)) {
+      return true;
+    }
+    // check against "genus epithet" without building it
+    return isBinomial() && name.length() == genus.length() + 1 + specificEpithet.length() && name.startsWith(genus) &&
+      name.charAt(genus.length()) == ' ' && name.endsWith(specificEpithet);
+  }
+
+  /**
+   * @return true if there is both a genus and a specific epithet
+   */
+  public boolean isBinomial() {
+    return genus != null && specificEpithet != null;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof NameComponents)) {
+      return false;
+    }
+    NameComponents other = (NameComponents) obj;
+    return StringUtils.equals(genus, other.genus) && StringUtils.equals(specificEpithet, other.specificEpithet) &&
+      StringUtils.equals(rankMarker, other.rankMarker) &&
+      StringUtils.equals(infraSpecificEpithet, other.infraSpecificEpithet) &&
+      StringUtils.equals(authorship, other.authorship) && StringUtils.equals(fullName, other.fullName);
+  }
+
+  @Override
+  public int hashCode() {
+    return fullName == null ? 0 : fullName.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return "genus[" + genus + "], specificEpithet[" + specificEpithet + "], rankMarker[" + rankMarker +
+      "], infraSpecificEpithet[" + infraSpecificEpithet + "], authorship[" + authorship + "], fullName[" + fullName +
+      "]";
+  }
+
+  public String getGenus() {
+    return genus;
+  }
+
+  public String getSpecificEpithet() {
+    return specificEpithet;
+  }
+
+  public String getRankMarker() {
+    return rankMarker;
+  }
+
+  public String getInfraSpecificEpithet() {
+    return infraSpecificEpithet;
+  }
+
+  /**
+   * @return The complete authorship, including any bracketed authors and years
+   */
+  public String getAuthorship() {
+    return authorship;
+  }
+
+  /**
+   * @return The name including rank marker and authorship
+   */
+  public String getFullName() {
+    return fullName;
+  }
+}
@@ -0,0 +1,300 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.common.base.Throwables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persistent dictionary of names, shared across runs and across the processes on a host, held in a memory mapped
+ * file. Each name is given a stable id the first time it is seen, and ingest only appends the names not already known,
+ * so the work of hashing and interning the common higher taxa is done once rather than on every run.
+ * <p/>
+ * The file holds a header, an open addressing hash table and an append only region of UTF-8 names. The id of a name is
+ * its offset in the name region, so names are found from ids without any index. Lookups read the mapping without
+ * locking. Appends are made under a lock on the file, writing the name before publishing it in the table. A lookup
+ * that races with an append can only miss, never match wrongly, and a miss is checked again under the lock before
+ * anything is appended. The capacity is fixed when the file is created, and once it is reached the names not already
+ * held are passed through as they are, with a warning logged once, so a full dictionary only loses the sharing of new
+ * names.
+ * <p/>
+ * Only a bounded cache of the instances handed out is kept on the heap, in which a name can displace another with an
+ * id in the same place, so the names held stay in the file rather than growing the heap over the life of the JVM.
+ * <p/>
+ * Only one instance is opened per file in a JVM, as file locks are held per process, and instances are never closed.
+ * <p/>
+ * This class is thread safe.
+ */
+public class NameDictionary {
+
+  public static final int DEFAULT_SLOTS = 1 << 21;
+  public static final int DEFAULT_DATA_BYTES = 1 << 27;
+  public static final int CACHE_SIZE = 1 << 16;
+
+  private static final Logger LOG = LoggerFactory.getLogger(NameDictionary.class);
+
+  private static final int MAGIC = 0x4e444943; // NDIC
+  private static final int VERSION = 1;
+  // the header holds the magic, version, slots, data bytes, count and data end as ints
+  private static final int COUNT = 16;
+  private static final int DATA_END = 20;
+  private static final int HEADER_BYTES = 64;
+  // each slot holds the hash and the id + 1, with 0 marking it empty
+  private static final int SLOT_BYTES = 8;
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final Map<String, NameDictionary> OPEN = new HashMap<String, NameDictionary>();
+
+  private final File file;
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+  private final int slots;
+  private final int dataBytes;
+  private final int dataStart;
+  // the instances last handed out, by id modulo the cache size
+  private final AtomicReferenceArray<String> cache = new AtomicReferenceArray<String>(CACHE_SIZE);
+  // set once a name is found not to fit, after which no more are added, as the file never frees any room
+  private final AtomicBoolean full = new AtomicBoolean();
+
+  /**
+   * Opens the file, creating it with the given capacity if it does not exist.
+   *
+   * @param slots     The size of the hash table, which must exceed the number of names by a third
+   * @param dataBytes The space for names, at their UTF-8 length plus 4 bytes each
+   */
+  NameDictionary(File file, int slots, int dataBytes) throws IOException {
+    this.file = file;
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    channel = raf.getChannel();
+    FileLock lock = channel.lock();
+    try {
+      if (raf.length() == 0) {
+        if ((long) HEADER_BYTES + (long) slots * SLOT_BYTES + dataBytes > Integer.MAX_VALUE) {
+          throw new IllegalArgumentException("A dictionary must be smaller than 2GB");
+        }
+        raf.setLength(HEADER_BYTES + slots * SLOT_BYTES + dataBytes);
+        raf.writeInt(MAGIC);
+        raf.writeInt(VERSION);
+        raf.writeInt(slots);
+        raf.writeInt(dataBytes);
+        raf.writeInt(0);
+        raf.writeInt(0);
+      } else {
+        if (raf.readInt() != MAGIC || raf.readInt() != VERSION) {
+          throw new IOException("Not a name dictionary: " + file.getAbsolutePath());
+        }
+        slots = raf.readInt();
+        dataBytes = raf.readInt();
+      }
+    } finally {
+      lock.release();
+    }
+    this.slots = slots;
+    this.dataBytes = dataBytes;
+    dataStart = HEADER_BYTES + slots * SLOT_BYTES;
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, dataStart + dataBytes);
+  }
+
+  /**
+   * @param file To open, or create with the default capacity
+   *
+   * @return The instance for the file in this JVM
+   */
+  public static NameDictionary open(File file) throws IOException {
+    String path = file.getCanonicalPath();
+    synchronized (OPEN) {
+      NameDictionary dictionary = OPEN.get(path);
+      if (dictionary == null) {
+        dictionary = new NameDictionary(file, DEFAULT_SLOTS, DEFAULT_DATA_BYTES);
+        OPEN.put(path, dictionary);
+      }
+      return dictionary;
+    }
+  }
+
+  /**
+   * @param name To find or add
+   *
+   * @return The instance of the name cached by this dictionary, or the name itself if it is not cached or the
+   * dictionary is full, or null for null
+   */
+  public String canonical(String name) {
+    if (name == null) {
+      return null;
+    }
+    int id = id(name);
+    if (id < 0) {
+      return name;
+    }
+    int i = id % CACHE_SIZE;
+    String cached = cache.get(i);
+    if (name.equals(cached)) {
+      return cached;
+    }
+    cache.set(i, name);
+    return name;
+  }
+
+  /**
+   * Replaces the values of the classification by their canonical instances.
+   */
+  public void canonicalize(DenormClassification d) {
+    for (LINNEAN_RANK r : LINNEAN_RANK.values()) {
+      String value = d.get(r);
+      if (value != null) {
+        d.set(r, canonical(value));
+      }
+    }
+    d.setAuthor(canonical(d.getAuthor()));
+  }
+
+  /**
+   * @return The number of names held
+   */
+  public int size() {
+    return buffer.getInt(COUNT);
+  }
+
+  /**
+   * @param name To find, or add if it is not yet known
+   *
+   * @return The id of the name, or -1 if it is not known and the dictionary is full
+   */
+  public int id(String name) {
+    byte[] bytes = name.getBytes(UTF8);
+    int hash = hash(bytes);
+    int id = find(bytes, hash);
+    return id < 0 && !full.get() ? append(bytes, hash) : id;
+  }
+
+  /**
+   * @param name To find
+   *
+   * @return The id of the name, or -1 if it is not known
+   */
+  public int lookup(String name) {
+    byte[] bytes = name.getBytes(UTF8);
+    return find(bytes, hash(bytes));
+  }
+
+  /**
+   * @param id As given by {@link #id(String)}, in this or any other run
+   *
+   * @return The name with the id
+   */
+  public String name(int id) {
+    if (id < 0 || id >= buffer.getInt(DATA_END)) {
+      throw new IllegalArgumentException("No name with id " + id);
+    }
+    byte[] bytes = new byte[buffer.getInt(dataStart + id)];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = buffer.get(dataStart + id + 4 + i);
+    }
+    return new String(bytes, UTF8);
+  }
+
+  /**
+   * Adds the name under the file lock, unless it was added by another thread or process while waiting for the lock.
+   *
+   * @return The id of the name, or -1 if there is no room for it
+   */
+  private synchronized int append(byte[] bytes, int hash) {
+    try {
+      FileLock lock = channel.lock(0, HEADER_BYTES, false);
+      try {
+        int id = find(bytes, hash);
+        if (id >= 0) {
+          return id;
+        }
+        int count = buffer.getInt(COUNT);
+        int end = buffer.getInt(DATA_END);
+        if (count + 1 > slots - slots / 4 || (long) end + 4 + bytes.length > dataBytes) {
+          if (full.compareAndSet(false, true)) {
+            LOG.warn("Name dictionary is full at {} names, so new names are no longer added: {}", count,
+              file.getAbsolutePath());
+          }
+          return -1;
+        }
+
+        // write the name before publishing it in the table
+        buffer.putInt(dataStart + end, bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+          buffer.put(dataStart + end + 4 + i, bytes[i]);
+        }
+        int slot = emptySlot(hash);
+        buffer.putInt(slot, hash);
+        buffer.putInt(slot + 4, end + 1);
+        buffer.putInt(DATA_END, end + 4 + bytes.length);
+        buffer.putInt(COUNT, count + 1);
+        return end;
+      } finally {
+        lock.release();
+      }
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  private int emptySlot(int hash) {
+    int i = (hash & Integer.MAX_VALUE) % slots;
+    while (buffer.getInt(HEADER_BYTES + i * SLOT_BYTES + 4) != 0) {
+      i = i + 1 == slots ? 0 : i + 1;
+    }
+    return HEADER_BYTES + i * SLOT_BYTES;
+  }
+
+  /**
+   * @return The id of the name, or -1 if it is not in the table
+   */
+  private int find(byte[] bytes, int hash) {
+    int i = (hash & Integer.MAX_VALUE) % slots;
+    while (true) {
+      int slot = HEADER_BYTES + i * SLOT_BYTES;
+      int idPlusOne = buffer.getInt(slot + 4);
+      if (idPlusOne == 0) {
+        return -1;
+      }
+      if (buffer.getInt(slot) == hash && matches(idPlusOne - 1, bytes)) {
+        return idPlusOne - 1;
+      }
+      i = i + 1 == slots ? 0 : i + 1;
+    }
+  }
+
+  /**
+   * FNV-1a over the UTF-8 bytes, as those are what is stored.
+   */
+  private static int hash(byte[] bytes) {
+    int h = 0x811c9dc5;
+    for (byte b : bytes) {
+      h = (h ^ b) * 0x01000193;
+    }
+    return h;
+  }
+
+  private boolean matches(int id, byte[] bytes) {
+    int at = dataStart + id;
+    if (buffer.getInt(at) != bytes.length) {
+      return false;
+    }
+    for (int i = 0; i < bytes.length; i++) {
+      if (buffer.get(at + 4 + i) != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
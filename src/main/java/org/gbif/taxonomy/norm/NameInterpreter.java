@@ -0,0 +1,309 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.ecat.parser.NameParser;
+import org.gbif.ecat.parser.UnparsableException;
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Throwables;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The name interpretation stage of the pipeline. Names are parsed by the {@link FastNameTokenizer} where possible,
+ * falling back to the NameParser for anything unusual. Records are split into batches which are interpreted across a
+ * pool of workers, each of which uses its own NameParser since a parser instance must never be shared between threads.
+ * A record is only ever touched by a single worker, and the interpretation of a record depends on nothing but the
+ * record itself, so the result is identical to a sequential run.
+ * <p/>
+ * The components of each parse are kept on the record, so that interpreting the scientific name, inferring the species
+ * from the subspecies and inferring the genus from the species parse a record only once between them.
+ * <p/>
+ * Lists no larger than a single batch are interpreted on the calling thread.
+ * <p/>
+ * This class is thread safe.
+ */
+public class NameInterpreter {
+
+  /**
+   * The work done on a single record.
+   */
+  private interface RecordTask {
+
+    void process(int index, DenormClassification d);
+  }
+
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+
+  private static final Logger LOG = LoggerFactory.getLogger(NameInterpreter.class);
+
+  // the parser is not thread safe, so each worker gets its own
+  private static final ThreadLocal<NameParser> PARSER = new ThreadLocal<NameParser>() {
+
+    @Override
+    protected NameParser initialValue() {
+      return new NameParser();
+    }
+  };
+
+  private final ExecutorService executor;
+  private final int batchSize;
+
+  /**
+   * Lazily initialised holder for the shared default interpreter.
+   */
+  private static class DefaultHolder {
+
+    private static final NameInterpreter INSTANCE =
+      new NameInterpreter(Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * @return a shared interpreter using a worker per available processor, whose threads never block JVM shutdown
+   */
+  public static NameInterpreter getDefault() {
+    return DefaultHolder.INSTANCE;
+  }
+
+  /**
+   * @param threads   The number of workers. A value of 1 or less interprets everything on the calling thread
+   * @param batchSize The number of records handed to a worker at a time
+   */
+  public NameInterpreter(int threads, int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+    }
+    this.batchSize = batchSize;
+    executor = threads > 1 ? Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "name-interpreter-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    }) : null;
+  }
+
+  /**
+   * Parses the name, using the {@link FastNameTokenizer} for the common shapes and otherwise the parser confined to
+   * the current thread.
+   *
+   * @param name To parse
+   *
+   * @return The parsed name, or null if it can't be handled
+   */
+  static NameComponents parse(String name) {
+    NameComponents components = FastNameTokenizer.tokenize(name);
+    return components == null ? parseWithParser(name) : components;
+  }
+
+  /**
+   * Parses the name with the parser confined to the current thread, bypassing the fast path.
+   *
+   * @param name To parse
+   *
+   * @return The parsed name, or null if it can't be handled
+   */
+  static NameComponents parseWithParser(String name) {
+    try {
+      return NameComponents.fromParsedName(PARSER.get().<Object>parse(name));
+    } catch (UnparsableException e) {
+      // a name we can't handle
+      return null;
+    }
+  }
+
+  /**
+   * Infer genera where missing.
+   *
+   * @param denorm To iterate and infer over
+   */
+  public void inferGenera(List<DenormClassification> denorm) {
+    LOG.debug("Inferring genera for {} classifications", denorm.size());
+    process(denorm, new RecordTask() {
+
+      @Override
+      public void process(int index, DenormClassification d) {
+        inferGenus(d);
+      }
+    });
+    LOG.debug("Inferred genera for {} classifications", denorm.size());
+  }
+
+  /**
+   * Infer species binomials where missing but a subspecies is known.
+   *
+   * @param denorm To iterate and infer over
+   */
+  public void inferSpecies(List<DenormClassification> denorm) {
+    LOG.debug("Inferring species for {} classifications", denorm.size());
+    process(denorm, new RecordTask() {
+
+      @Override
+      public void process(int index, DenormClassification d) {
+        inferSpecies(d);
+      }
+    });
+    LOG.debug("Inferred species for {} classifications", denorm.size());
+  }
+
+  /**
+   * Uses the scientific names to set species, subspecies and author where missing.
+   *
+   * @param denorm          To interpret into
+   * @param scientificNames The scientific name for the classification at the same index, which may be null
+   */
+  public void interpretScientificNames(List<DenormClassification> denorm, final List<String> scientificNames) {
+    if (denorm.size() != scientificNames.size()) {
+      throw new IllegalArgumentException(
+        "Expected a scientific name for each of the " + denorm.size() + " classifications but got " + scientificNames
+          .size());
+    }
+    LOG.debug("Interpreting scientific names for {} classifications", denorm.size());
+    process(denorm, new RecordTask() {
+
+      @Override
+      public void process(int index, DenormClassification d) {
+        interpretScientificName(d, scientificNames.get(index));
+      }
+    });
+    LOG.debug("Interpreted scientific names for {} classifications", denorm.size());
+  }
+
+  /**
+   * Stops the workers. Only needed for interpreters that are not the default.
+   */
+  public void shutdown() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Gets the components of the name from the record when an earlier step already parsed it, otherwise parses it and
+   * keeps the result on the record for the later steps.
+   */
+  private NameComponents components(DenormClassification d, String name) {
+    NameComponents components = d.getParsedName();
+    if (components == null || !components.describes(name)) {
+      components = parse(name);
+      d.setParsedName(components);
+    }
+    return components;
+  }
+
+  private void inferGenus(DenormClassification d) {
+    if (StringUtils.isBlank(d.getGenus()) && StringUtils.isNotBlank(d.getSpecies())) {
+      NameComponents pn = components(d, d.getSpecies());
+      if (pn != null && pn.getGenus() != null) {
+        // make sure we are not mistaking it as a higher taxa
+        String tentativeGenus = pn.getGenus();
+        if (!StringUtils.equalsIgnoreCase(tentativeGenus, d.getKingdom()) &&
+          !StringUtils.equalsIgnoreCase(tentativeGenus, d.getPhylum()) &&
+          !StringUtils.equalsIgnoreCase(tentativeGenus, d.getKlass()) &&
+          !StringUtils.equalsIgnoreCase(tentativeGenus, d.getOrder()) &&
+          !StringUtils.equalsIgnoreCase(tentativeGenus, d.getFamily())) {
+          // looks like a candidate to be a genus, or we have some very poor data
+          d.setGenus(tentativeGenus);
+        }
+      }
+    }
+  }
+
+  private void inferSpecies(DenormClassification d) {
+    if (StringUtils.isBlank(d.getSpecies()) && StringUtils.isNotBlank(d.getSubspecies())) {
+      NameComponents pn = components(d, d.getSubspecies());
+      if (pn != null && pn.isBinomial()) {
+        // make sure we are not mistaking a monomial as a higher taxa due to bad data
+        String tentativeGenus = pn.getGenus();
+        String tentativeSpecificEpithet = pn.getSpecificEpithet();
+
+        boolean duplicate = false;
+        for (LINNEAN_RANK r : LinneanRank.ranksHigherThan(LINNEAN_RANK.F, true)) {
+          duplicate = StringUtils.equalsIgnoreCase(tentativeGenus, d.get(r)) || StringUtils
+            .equalsIgnoreCase(tentativeSpecificEpithet, d.get(r));
+          if (duplicate) {
+            break;
+          }
+        }
+
+        // neither the specific epithet or generic epithet are repeated in the higher taxa, so
+        // construct a binomial
+        if (!duplicate) {
+          d.setSpecies(tentativeGenus + ' ' + tentativeSpecificEpithet);
+        }
+      }
+    }
+  }
+
+  private void interpretScientificName(DenormClassification d, String scientificName) {
+    if (StringUtils.isNotBlank(scientificName)) {
+      NameComponents p = parse(scientificName);
+      d.setParsedName(p);
+      if (p != null && p.getInfraSpecificEpithet() != null) {
+        d.setSubspecies(p.getFullName());
+        if (StringUtils.isBlank(d.getAuthor())) {
+          d.setAuthor(p.getAuthorship());
+        }
+        d.setSpecies(null);
+      } else if (p != null && p.isBinomial()) {
+        d.setSpecies(p.getFullName());
+        if (StringUtils.isBlank(d.getAuthor())) {
+          d.setAuthor(p.getAuthorship());
+        }
+        d.setSubspecies(null);
+      }
+    }
+  }
+
+  /**
+   * Runs the task over every record, in batches across the workers when there is more than a single batch.
+   */
+  private void process(final List<DenormClassification> denorm, final RecordTask task) {
+    if (executor == null || denorm.size() <= batchSize) {
+      for (int i = 0; i < denorm.size(); i++) {
+        task.process(i, denorm.get(i));
+      }
+      return;
+    }
+
+    List<Future<?>> batches = new ArrayList<Future<?>>();
+    for (int start = 0; start < denorm.size(); start += batchSize) {
+      final int from = start;
+      final int to = Math.min(start + batchSize, denorm.size());
+      batches.add(executor.submit(new Runnable() {
+
+        @Override
+        public void run() {
+          for (int i = from; i < to; i++) {
+            task.process(i, denorm.get(i));
+          }
+        }
+      }));
+    }
+    LOG.debug("Submitted {} batches of up to {} classifications", batches.size(), batchSize);
+
+    try {
+      for (Future<?> batch : batches) {
+        batch.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+}
@@ -0,0 +1,10 @@
+package org.gbif.taxonomy.norm;
+
+/**
+ * Receives the taxa of a normalized tree as they are built, in id order, so that a parent is always received before
+ * its children. A taxon is not changed by the normalizer once it has been received.
+ */
+public interface NormClassificationSink {
+
+  void accept(NormClassification taxon);
+}
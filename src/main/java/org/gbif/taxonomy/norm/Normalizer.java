@@ -2,16 +2,26 @@ package org.gbif.taxonomy.norm;
 
 import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Throwables;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,11 +39,46 @@ import org.slf4j.LoggerFactory;
  * <p/>
  * To understand the process, see the test cases which capture specific examples
  * <p/>
+ * Each rank pass either sorts at the rank to find the groups and sorts again to find the duplicates, or finds both by
+ * hashing. Hashing avoids sorting all classifications twice, but a group must still be put in the order the sort
+ * would have given it, so that the same merges are made. That makes it the faster only where the groups are small, so
+ * unless a {@link MergeStrategy} says otherwise the pass is chosen from the number of distinct values in a sample of
+ * the classifications at the rank.
+ * <p/>
+ * The tree is built with a {@link TreeBuilder}, across several threads if set to.
+ * <p/>
  * This class is not thread safe.
  */
 public class Normalizer {
 
+  /**
+   * The taxa of a run of classifications, built with ids from 1.
+   */
+  private static class Partition {
+
+    private final List<NormClassification> taxa = new ArrayList<NormClassification>();
+    private Integer kingdomId;
+  }
+
+  /**
+   * The smallest group of which the listener is told.
+   */
+  public static final int GROUP_EVENT_SIZE = 1000;
+
   private static final Logger LOG = LoggerFactory.getLogger(Normalizer.class);
+  // the classifications sampled to choose the pass, and the largest groups in the sample for which hashing is used
+  private static final int CARDINALITY_SAMPLE = 4096;
+  private static final int HASH_MAX_GROUP_SIZE = 16;
+  // the fewest classifications in a partition of the tree build, and the partitions built per thread
+  private static final int PARTITION_MIN_SIZE = 1000;
+  private static final int PARTITIONS_PER_THREAD = 8;
+
+  private NameInterpreter nameInterpreter = NameInterpreter.getDefault();
+  private CheckpointWriter checkpointWriter;
+  private NormalizerListener listener;
+  private NormalizerProgress progress = new NormalizerProgress();
+  private MergeStrategy mergeStrategy = MergeStrategy.CHOSEN;
+  private int buildThreads = 1;
 
   /**
    * A homonym cache is used to store known homonyms as we go to ensure no inferences are made at higher taxa in the
@@ -43,16 +88,79 @@ public class Normalizer {
    */
   public Map<LINNEAN_RANK, Set<String>> createHomonymCache() {
     Map<LINNEAN_RANK, Set<String>> homonyms = new EnumMap<LINNEAN_RANK, Set<String>>(LINNEAN_RANK.class);
-    homonyms.put(LINNEAN_RANK.P, new HashSet<String>());
-    homonyms.put(LINNEAN_RANK.C, new HashSet<String>());
-    homonyms.put(LINNEAN_RANK.O, new HashSet<String>());
-    homonyms.put(LINNEAN_RANK.F, new HashSet<String>());
-    homonyms.put(LINNEAN_RANK.G, new HashSet<String>());
-    homonyms.put(LINNEAN_RANK.S, new HashSet<String>());
-    homonyms.put(LINNEAN_RANK.SS, new HashSet<String>());
+    for (LINNEAN_RANK rank : LinneanRank.ranksLowerThan(LINNEAN_RANK.K, false)) {
+      homonyms.put(rank, new HashSet<String>());
+    }
     return homonyms;
   }
 
+  public int getBuildThreads() {
+    return buildThreads;
+  }
+
+  public CheckpointWriter getCheckpointWriter() {
+    return checkpointWriter;
+  }
+
+  public NormalizerListener getListener() {
+    return listener;
+  }
+
+  public MergeStrategy getMergeStrategy() {
+    return mergeStrategy;
+  }
+
+  public NameInterpreter getNameInterpreter() {
+    return nameInterpreter;
+  }
+
+  public NormalizerProgress getProgress() {
+    return progress;
+  }
+
+  /**
+   * As {@link #sortAndMerge}, but groups at the rank and finds the duplicates by hashing rather than sorting. The same
+   * merges are made and the classifications remaining keep their order.
+   *
+   * @param rank To operate at
+   * @param denorm To group and merge
+   */
+  public void hashAndMerge(final LINNEAN_RANK rank, List<DenormClassification> denorm,
+    Map<LINNEAN_RANK, Set<String>> homonyms) {
+    logStart(rank, denorm, homonyms);
+    progress.phaseStarted("merge-" + rank + "-group", denorm.size(), 0);
+    long time = System.nanoTime();
+    LOG.info("Grouping {} classifications", denorm.size());
+    Map<String, List<DenormClassification>> groups = DenormClassificationUtils.groupByRank(rank, denorm);
+    LOG.info("Grouped {} classifications into {} groups in {} sec(s)",
+      new Object[] {denorm.size(), groups.size(), secondsSince(time)});
+    phaseCompleted("merge-" + rank + "-group", denorm.size(), time);
+
+    progress.phaseStarted("merge-" + rank + "-infer", denorm.size(), denorm.size());
+    progress.groupsStarted(groups.size());
+    time = System.nanoTime();
+    LOG.info("Inferring taxa across {} classifications", denorm.size());
+    Comparator<DenormClassification> order = DenormClassificationUtils.groupComparator(rank);
+    for (List<DenormClassification> group : groups.values()) {
+      if (group.size() > 1) {
+        Collections.sort(group, order);
+        inferHigherTaxa(denorm, group, rank, homonyms);
+      }
+      progress.groupProcessed(group.size());
+    }
+    LOG.info("Inferred taxa across {} classifications in {} sec(s)", denorm.size(),
+      secondsSince(time));
+    phaseCompleted("merge-" + rank + "-infer", denorm.size(), time);
+
+    progress.phaseStarted("merge-" + rank + "-duplicates", denorm.size(), 0);
+    time = System.nanoTime();
+    LOG.info("Collapsing duplicates in {} classifications", denorm.size());
+    DenormClassificationUtils.collapseDuplicates(denorm);
+    LOG.info("Collapse of duplicates resulted in {} classifications in {} sec(s)", denorm.size(),
+      secondsSince(time));
+    phaseCompleted("merge-" + rank + "-duplicates", denorm.size(), time);
+  }
+
   /**
    * This will group by the rank, inspect higher taxa and attempt to merge where possible. In simple terms, grouped at
    * rank with common values d: a,-,c,d a,b,-,d -,b,-,d will merge into a,b,c,d where NO CONFLICTS exist. Introducing a
@@ -81,6 +189,7 @@ public class Normalizer {
         if (!StringUtils.equals(curr.get(rank), prev.get(rank))) {
           // there is a change, so perform any necessary merging and copy to merged
           inferHigherTaxa(denorm, workingGroup, rank, homonyms);
+          progress.groupProcessed(workingGroup.size());
 
           // refresh the working group
           workingGroup.clear();
@@ -92,6 +201,9 @@ public class Normalizer {
 
     // ensure the last row is handled
     inferHigherTaxa(denorm, workingGroup, rank, homonyms);
+    if (!workingGroup.isEmpty()) {
+      progress.groupProcessed(workingGroup.size());
+    }
   }
 
   /**
@@ -99,180 +211,415 @@ public class Normalizer {
    * aware merge to fill holes in a classification: a,-,c,d a,b,-,d would merge to a,b,c,d.
    */
   public List<NormClassification> normalize(List<DenormClassification> denorm) {
-    List<NormClassification> result = new ArrayList<NormClassification>();
+    infer(denorm);
+    return normalize(denorm, createHomonymCache(), LINNEAN_RANK.SS);
+  }
 
-    // infer missing values
-    DenormClassificationUtils.inferSpecies(denorm);
-    DenormClassificationUtils.inferGenera(denorm);
+  /**
+   * As {@link #normalize(List)}, but passes each taxon to the sink as soon as it is final rather than returning the
+   * tree once complete. Only the species being built and its subspecies are held back, as a later classification may
+   * still set the author and add payloads of the species, so the tree is never held whole.
+   */
+  public void normalize(List<DenormClassification> denorm, NormClassificationSink sink) {
+    infer(denorm);
+    normalize(denorm, createHomonymCache(), LINNEAN_RANK.SS, sink);
+  }
 
-    Map<LINNEAN_RANK, Set<String>> homonyms = createHomonymCache();
+  /**
+   * Normalizes classifications whose names need no inference, such as the paths of trees already normalized.
+   */
+  public List<NormClassification> normalizeInterpreted(List<DenormClassification> denorm) {
+    return normalize(denorm, createHomonymCache(), LINNEAN_RANK.SS);
+  }
+
+  /**
+   * Continues a normalization from the state after a rank pass, running the remaining passes and building the tree.
+   *
+   * @param checkpoint As written during an earlier run
+   */
+  public List<NormClassification> resume(Checkpoint checkpoint) {
+    LINNEAN_RANK completed = checkpoint.getCompletedRank();
+    LOG.info("Resuming normalization of {} classifications after rank[{}]", checkpoint.getClassifications().size(),
+      completed);
+    LINNEAN_RANK next = completed == LINNEAN_RANK.K ? null : LINNEAN_RANK.values()[completed.ordinal() - 1];
+    return normalize(checkpoint.getClassifications(), checkpoint.getHomonyms(), next);
+  }
+
+  /**
+   * @param buildThreads The threads to build the tree across, by default 1
+   */
+  public void setBuildThreads(int buildThreads) {
+    this.buildThreads = buildThreads;
+  }
 
+  /**
+   * @param checkpointWriter If set, a checkpoint is written after each rank pass
+   */
+  public void setCheckpointWriter(CheckpointWriter checkpointWriter) {
+    this.checkpointWriter = checkpointWriter;
+  }
+
+  /**
+   * @param listener If set, told as each phase completes
+   */
+  public void setListener(NormalizerListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * @param mergeStrategy How each rank pass finds its groups, by default chosen for each pass
+   */
+  public void setMergeStrategy(MergeStrategy mergeStrategy) {
+    this.mergeStrategy = mergeStrategy;
+  }
+
+  /**
+   * @param nameInterpreter Used to infer species and genera from the names before merging
+   */
+  public void setNameInterpreter(NameInterpreter nameInterpreter) {
+    this.nameInterpreter = nameInterpreter;
+  }
+
+  /**
+   * @param progress Kept up to date as the normalization runs, such as one registered over JMX
+   */
+  public void setProgress(NormalizerProgress progress) {
+    this.progress = progress;
+  }
+
+  /**
+   * Utility to perform a sort() and then a merge() and then removeDuplicates().
+   * 
+   * @param rank To operate at
+   * @param denorm To sort and merge.
+   */
+  public void sortAndMerge(final LINNEAN_RANK rank, List<DenormClassification> denorm,
+    Map<LINNEAN_RANK, Set<String>> homonyms) {
+    sortAndMerge(rank, denorm, homonyms, DenormClassificationUtils.rankComparator(rank));
+  }
+
+  /**
+   * @return True if the groups at the rank are small enough in a sample of the classifications to hash rather than sort
+   */
+  private boolean hashGrouping(LINNEAN_RANK rank, List<DenormClassification> denorm) {
+    int step = Math.max(1, denorm.size() / CARDINALITY_SAMPLE);
+    Set<String> distinct = new HashSet<String>();
+    int sampled = 0;
+    for (int i = 0; i < denorm.size(); i += step) {
+      distinct.add(denorm.get(i).get(rank));
+      sampled++;
+    }
+    LOG.debug("Sampled {} distinct values at rank[{}] in {} classifications", new Object[] {distinct.size(), rank,
+      sampled});
+    return distinct.size() * HASH_MAX_GROUP_SIZE >= sampled;
+  }
+
+  /**
+   * Infers missing species and genera from the names.
+   */
+  private void infer(List<DenormClassification> denorm) {
+    progress.phaseStarted("infer", denorm.size(), 0);
+    long time = System.nanoTime();
+    nameInterpreter.inferSpecies(denorm);
+    nameInterpreter.inferGenera(denorm);
+
+    // the parsed names are of no use beyond inference, so release them before merging
+    for (DenormClassification d : denorm) {
+      d.setParsedName(null);
+    }
+    phaseCompleted("infer", denorm.size(), time);
+  }
+
+  private void logStart(LINNEAN_RANK rank, List<DenormClassification> denorm, Map<LINNEAN_RANK, Set<String>> homonyms) {
+    LOG.info("Starting taxonomy[classifications: {}] at rank[{}] with homonyms[p:{},c:{},o:{},f:{},g:{},s:{},ss:{}]",
+      new Object[] {denorm.size(), rank, homonyms.get(LINNEAN_RANK.P).size(), homonyms.get(LINNEAN_RANK.C).size(),
+        homonyms.get(LINNEAN_RANK.O).size(), homonyms.get(LINNEAN_RANK.F).size(), homonyms.get(LINNEAN_RANK.G).size(),
+        homonyms.get(LINNEAN_RANK.S).size(), homonyms.get(LINNEAN_RANK.SS).size()});
+  }
+
+  private void phaseCompleted(String phase, int classifications, long startNanos) {
+    if (listener != null) {
+      listener.phaseCompleted(phase, classifications, (System.nanoTime() - startNanos) / 1000);
+    }
+  }
+
+  /**
+   * Runs the rank passes from the start rank up to the kingdom and builds the tree.
+   *
+   * @param startRank The lowest rank to merge at, or null if all passes are complete
+   */
+  private List<NormClassification> normalize(List<DenormClassification> denorm,
+    Map<LINNEAN_RANK, Set<String>> homonyms, LINNEAN_RANK startRank) {
+    final List<NormClassification> result = new ArrayList<NormClassification>();
+    normalize(denorm, homonyms, startRank, new NormClassificationSink() {
+
+      @Override
+      public void accept(NormClassification taxon) {
+        result.add(taxon);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Runs the rank passes from the start rank up to the kingdom and builds the tree, passing each taxon to the sink in
+   * id order once it is final.
+   *
+   * @param startRank The lowest rank to merge at, or null if all passes are complete
+   */
+  private void normalize(List<DenormClassification> denorm, Map<LINNEAN_RANK, Set<String>> homonyms,
+    LINNEAN_RANK startRank, NormClassificationSink sink) {
     // respecting homonymns, merge higher classification into as few as possible
     // a,-,c,d
     // a,b,-,d
     // would merge to a,b,c,d for example
-    long time = System.currentTimeMillis();
-    sortAndMerge(LINNEAN_RANK.SS, denorm, homonyms);
-    sortAndMerge(LINNEAN_RANK.S, denorm, homonyms);
-    sortAndMerge(LINNEAN_RANK.G, denorm, homonyms);
-    sortAndMerge(LINNEAN_RANK.F, denorm, homonyms);
-    sortAndMerge(LINNEAN_RANK.O, denorm, homonyms);
-    sortAndMerge(LINNEAN_RANK.C, denorm, homonyms);
-    sortAndMerge(LINNEAN_RANK.P, denorm, homonyms);
-    sortAndMerge(LINNEAN_RANK.K, denorm, homonyms);
+    long time = System.nanoTime();
+    if (startRank != null) {
+      // a hashed pass keeps the order it receives, so a sorted pass following it must order the groups itself, as must
+      // one resumed from a checkpoint; the input to the first pass needs no order
+      boolean fullOrder = startRank == LINNEAN_RANK.SS;
+      LINNEAN_RANK[] ranks = LinneanRank.ranksHigherThan(startRank, true);
+      for (int i = ranks.length - 1; i >= 0; i--) {
+        long passTime = System.nanoTime();
+        progress.passStarted(ranks[i]);
+        if (mergeStrategy == MergeStrategy.HASH
+          || mergeStrategy == MergeStrategy.CHOSEN && hashGrouping(ranks[i], denorm)) {
+          hashAndMerge(ranks[i], denorm, homonyms);
+          fullOrder = false;
+        } else {
+          sortAndMerge(ranks[i], denorm, homonyms, fullOrder ? DenormClassificationUtils.rankComparator(ranks[i])
+            : DenormClassificationUtils.groupComparator(ranks[i]));
+          fullOrder = true;
+        }
+        phaseCompleted("merge-" + ranks[i], denorm.size(), passTime);
+        progress.passCompleted();
+        if (checkpointWriter != null) {
+          checkpointWriter.checkpoint(ranks[i], denorm, homonyms);
+        }
+      }
+    }
     LOG.info("Completed classification merging at all ranks in {} sec(s)",
-      (1 + System.currentTimeMillis() - time) / 1000);
+      secondsSince(time));
 
     // now resort to ensure correct ordering from the bottom up
     Collections.sort(denorm, DenormClassificationUtils.FULL_COMPARATOR);
 
-    time = System.currentTimeMillis();
+    progress.phaseStarted("build", denorm.size(), 0);
+    time = System.nanoTime();
     LOG.info("Building normalized tree structure for {} classifications", denorm.size());
-    int id = 1;
-    Map<Integer, NormClassification> norm = new HashMap<Integer, NormClassification>();
-    Map<LINNEAN_RANK, Integer> parentIds = new HashMap<LINNEAN_RANK, Integer>();
-    DenormClassification prev = null;
-    for (DenormClassification curr : denorm) {
-      // capture first row
-      boolean change = prev == null;
+    buildTree(denorm, sink);
+    LOG.info("Built normalized tree structure for {} classifications in {} sec(s)", denorm.size(),
+      secondsSince(time));
+    phaseCompleted("build", denorm.size(), time);
 
-      // find where they differ
-      LINNEAN_RANK deviation = change ? LINNEAN_RANK.K : DenormClassificationUtils.rankOfDeviation(curr, prev);
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("Deviation with previous is at rank[{}] for curr[{}] prev[{}]", new Object[] {deviation, curr, prev});
+    // the last checkpoint is written while the tree is built
+    if (checkpointWriter != null) {
+      checkpointWriter.await();
+    }
+  }
+
+  /**
+   * Sorts at the rank, merges and then merges duplicates.
+   *
+   * @param order Of the sort, which must order by the rank first
+   */
+  private void sortAndMerge(final LINNEAN_RANK rank, List<DenormClassification> denorm,
+    Map<LINNEAN_RANK, Set<String>> homonyms, Comparator<DenormClassification> order) {
+    logStart(rank, denorm, homonyms);
+    progress.phaseStarted("merge-" + rank + "-sort", denorm.size(), 0);
+    long time = System.nanoTime();
+    LOG.info("Sorting {} classifications", denorm.size());
+    Collections.sort(denorm, order);
+    LOG.info("Sorted {} classifications in {} sec(s)", denorm.size(), secondsSince(time));
+    phaseCompleted("merge-" + rank + "-sort", denorm.size(), time);
+
+    progress.phaseStarted("merge-" + rank + "-infer", denorm.size(), denorm.size());
+    progress.groupsStarted(countGroups(rank, denorm));
+    time = System.nanoTime();
+    LOG.info("Inferring taxa across {} classifications", denorm.size());
+    merge(rank, denorm, homonyms);
+    LOG.info("Inferred taxa across {} classifications in {} sec(s)", denorm.size(),
+      secondsSince(time));
+    phaseCompleted("merge-" + rank + "-infer", denorm.size(), time);
+
+    progress.phaseStarted("merge-" + rank + "-duplicates", denorm.size(), 0);
+    time = System.nanoTime();
+    LOG.info("Merging duplicates in {} classifications", denorm.size());
+    DenormClassificationUtils.mergeDuplicates(denorm);
+    LOG.info("Merge of duplicates resulted in {} classifications in {} sec(s)", denorm.size(),
+      secondsSince(time));
+    phaseCompleted("merge-" + rank + "-duplicates", denorm.size(), time);
+  }
+
+  /**
+   * Builds the tree from the fully sorted classifications. With more than one build thread the classifications are
+   * split where the kingdom or phylum changes into partitions that are built concurrently and passed on in order, with
+   * their ids offset by the number of taxa before them, so the tree is the same as built on one thread. Only the
+   * partitions being built are held.
+   */
+  private void buildTree(final List<DenormClassification> denorm, NormClassificationSink sink) {
+    final List<Integer> starts = partitionStarts(denorm);
+    if (starts.size() <= 1) {
+      TreeBuilder builder = new TreeBuilder(sink, 1, null);
+      DenormClassification prev = null;
+      for (DenormClassification curr : denorm) {
+        builder.add(curr, prev);
+        prev = curr;
       }
+      builder.flush();
+      return;
+    }
 
-      for (LINNEAN_RANK r : LinneanRank.ranksLowerThan(deviation, true)) {
-        // clear parentIds not of interest now
-        parentIds.put(r, null);
+    LOG.info("Building the tree in {} partitions across {} threads", starts.size(), buildThreads);
+    ExecutorService executor = Executors.newFixedThreadPool(buildThreads, new ThreadFactory() {
 
-        String name = curr.get(r);
-        if (StringUtils.isNotBlank(name)) {
-          // find the parent id to use for this taxon
-          Integer parentId = null;
-          for (LINNEAN_RANK p : LinneanRank.ranksHigherThan(r, false)) {
-            parentId = parentIds.get(p) == null ? parentId : parentIds.get(p);
-          }
+      private final AtomicInteger count = new AtomicInteger();
 
-          // create the taxon
-          String author = null;
-          if (LINNEAN_RANK.S == r && StringUtils.isBlank(curr.get(LINNEAN_RANK.SS)) || LINNEAN_RANK.SS == r) {
-            author = curr.getAuthor();
-          }
-          NormClassification nc = new NormClassification(id, parentId, name, author, r.toString());
-          norm.put(id, nc);
-          parentIds.put(r, id);
-          id++;
-
-          // we have just created the concept, but if this is the most significant taxa,
-          // then we need to track any payloads on the newly create concept
-          boolean more = false;
-          for (LINNEAN_RANK r2 : LinneanRank.ranksLowerThan(r, false)) {
-            more |= StringUtils.isNotBlank(curr.get(r2));
-          }
-          if (!more) {
-            LOG.debug("Adding payloads from [{}] into [{}]", curr.toString(), nc.toString());
-            nc.getPayloads().addAll(curr.getPayloads());
-          }
-        }
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "tree-builder-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
       }
+    });
+    try {
+      Deque<Future<Partition>> building = new ArrayDeque<Future<Partition>>();
+      int next = 0;
+      int offset = 0;
+      Integer kingdomId = null;
+      while (next < starts.size() || !building.isEmpty()) {
+        // keep a few partitions ahead of the one being passed on
+        while (next < starts.size() && building.size() < buildThreads * 2) {
+          final int from = starts.get(next);
+          final int to = next + 1 < starts.size() ? starts.get(next + 1) : denorm.size();
+          building.add(executor.submit(new Callable<Partition>() {
+
+            @Override
+            public Partition call() {
+              return buildPartition(denorm, from, to);
+            }
+          }));
+          next++;
+        }
 
-      // handle the special case when you have
-      // "a",null,null,null,null,"f","g","h","i"));
-      // "a",null,null,null,null,"f","g","j","i"));
-      // "a",null,null,null,null,"f","g",null,"i"));
-      // on the 3rd row, we have already created the species, but need to apply the author and update the payloads
-      if (LINNEAN_RANK.SS == deviation && prev != null &&
-        StringUtils.isBlank(curr.getSubspecies()) && // we don't want second row to go in here
-        StringUtils.equals(curr.get(LINNEAN_RANK.S), prev.get(LINNEAN_RANK.S))) {
-        NormClassification prevNorm = norm.get(id - 1);
-
-        // iterate back to the species concept
-        while (prevNorm != null && !StringUtils.equals(prevNorm.getRank(), LINNEAN_RANK.S.toString())) {
-          if (prevNorm.getParentId() == null) {
-            prevNorm = null;
-            break;
-          } else {
-            prevNorm = norm.get(prevNorm.getParentId());
+        Partition partition = building.poll().get();
+        for (NormClassification taxon : partition.taxa) {
+          taxon.setId(taxon.getId() + offset);
+          Integer parentId = taxon.getParentId();
+          if (parentId != null) {
+            taxon.setParentId(parentId == TreeBuilder.INHERITED ? kingdomId : Integer.valueOf(parentId + offset));
           }
+          sink.accept(taxon);
         }
-        LOG.debug("Previous species: " + prevNorm);
-        if (prevNorm != null && StringUtils.equals(prevNorm.getRank(), LINNEAN_RANK.S.toString())) {
-          LOG.debug("Updating previous species concept with new author[{}]: {}", curr.getAuthor(), prevNorm);
-          prevNorm.setAuthor(curr.getAuthor());
-          LOG.debug("Updating previous payloads from [{}] into previous [{}]", curr.toString(), prevNorm.toString());
-          prevNorm.getPayloads().addAll(curr.getPayloads());
+        // the kingdom carries over to the next partition unless this one ends in another
+        if (partition.kingdomId == null) {
+          kingdomId = null;
+        } else if (partition.kingdomId != TreeBuilder.INHERITED) {
+          kingdomId = partition.kingdomId + offset;
         }
+        offset += partition.taxa.size();
       }
-
-      prev = curr;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      executor.shutdownNow();
     }
-    result.addAll(norm.values());
-    Collections.sort(result, new Comparator<NormClassification>() {
+  }
+
+  /**
+   * @return The taxa of the classifications from the index inclusive to the index exclusive
+   */
+  private static Partition buildPartition(List<DenormClassification> denorm, int from, int to) {
+    final Partition partition = new Partition();
+    TreeBuilder builder = new TreeBuilder(new NormClassificationSink() {
 
       @Override
-      public int compare(NormClassification o1, NormClassification o2) {
-        return o1.getId().compareTo(o2.getId());
+      public void accept(NormClassification taxon) {
+        partition.taxa.add(taxon);
       }
-
-    });
-    LOG.info("Built normalized tree structure for {} classifications in {} sec(s)", denorm.size(),
-      (1 + System.currentTimeMillis() - time) / 1000);
-
-    return result;
+    }, 1, TreeBuilder.INHERITED);
+    for (int i = from; i < to; i++) {
+      builder.add(denorm.get(i), i == 0 ? null : denorm.get(i - 1));
+    }
+    builder.flush();
+    partition.kingdomId = builder.getKingdomId();
+    return partition;
   }
 
   /**
-   * Utility to perform a sort() and then a merge() and then removeDuplicates().
-   * 
-   * @param rank To operate at
-   * @param denorm To sort and merge.
+   * @return The number of runs of the same value at the rank in the sorted classifications
    */
-  public void sortAndMerge(final LINNEAN_RANK rank, List<DenormClassification> denorm,
-    Map<LINNEAN_RANK, Set<String>> homonyms) {
-    LOG.info("Starting taxonomy[classifications: {}] at rank[{}] with homonyms[p:{},c:{},o:{},f:{},g:{},s:{},ss:{}]",
-      new Object[] {denorm.size(), rank, homonyms.get(LINNEAN_RANK.P).size(), homonyms.get(LINNEAN_RANK.C).size(),
-        homonyms.get(LINNEAN_RANK.O).size(), homonyms.get(LINNEAN_RANK.F).size(), homonyms.get(LINNEAN_RANK.G).size(),
-        homonyms.get(LINNEAN_RANK.S).size(), homonyms.get(LINNEAN_RANK.SS).size()});
-    long time = System.currentTimeMillis();
-    LOG.info("Sorting {} classifications", denorm.size());
-    DenormClassificationUtils.sort(rank, denorm);
-    LOG.info("Sorted {} classifications in {} sec(s)", denorm.size(), (1 + System.currentTimeMillis() - time) / 1000);
+  private static int countGroups(LINNEAN_RANK rank, List<DenormClassification> denorm) {
+    int groups = 0;
+    String prev = null;
+    for (int i = 0; i < denorm.size(); i++) {
+      String value = denorm.get(i).get(rank);
+      if (i == 0 || !StringUtils.equals(value, prev)) {
+        groups++;
+      }
+      prev = value;
+    }
+    return groups;
+  }
 
-    time = System.currentTimeMillis();
-    LOG.info("Inferring taxa across {} classifications", denorm.size());
-    merge(rank, denorm, homonyms);
-    LOG.info("Inferred taxa across {} classifications in {} sec(s)", denorm.size(),
-      (1 + System.currentTimeMillis() - time) / 1000);
+  /**
+   * @return The seconds since the time given by {@link System#nanoTime()}, rounded as the logs have always shown them
+   */
+  private static long secondsSince(long startNanos) {
+    return (1 + (System.nanoTime() - startNanos) / 1000000) / 1000;
+  }
 
-    time = System.currentTimeMillis();
-    LOG.info("Merging duplicates in {} classifications", denorm.size());
-    DenormClassificationUtils.mergeDuplicates(denorm);
-    LOG.info("Merge of duplicates resulted in {} classifications in {} sec(s)", denorm.size(),
-      (1 + System.currentTimeMillis() - time) / 1000);
+  /**
+   * The partitions of the tree build start where the kingdom or phylum changes, at which the classification deviates
+   * from the one before at one of those ranks, and hold at least enough classifications to share the work out.
+   *
+   * @return The index at which each partition starts, which is only 0 if the tree is built on one thread
+   */
+  private List<Integer> partitionStarts(List<DenormClassification> denorm) {
+    List<Integer> starts = new ArrayList<Integer>();
+    starts.add(0);
+    if (buildThreads > 1) {
+      int size = Math.max(PARTITION_MIN_SIZE, denorm.size() / (buildThreads * PARTITIONS_PER_THREAD));
+      for (int i = size; i < denorm.size(); i++) {
+        DenormClassification prev = denorm.get(i - 1);
+        DenormClassification curr = denorm.get(i);
+        if (i - starts.get(starts.size() - 1) >= size
+          && (!StringUtils.equals(curr.getKingdom(), prev.getKingdom())
+          || !StringUtils.equals(curr.getPhylum(), prev.getPhylum()))) {
+          starts.add(i);
+        }
+      }
+    }
+    return starts;
   }
 
   /**
    * @param group To extract from
    * @param rank The rank at which we are working. Pass Genus and anything higher than Genus will be extracted
-   * @return The distinct classifications
+   * @return The distinct classifications, keyed by their fingerprints above the rank
    */
-  private Map<String, DenormClassification> distinctClassifications(List<DenormClassification> group,
+  private List<DenormClassification> distinctClassifications(List<DenormClassification> group,
     final LINNEAN_RANK rank) {
-    Map<String, DenormClassification> distinctClassifications = new HashMap<String, DenormClassification>();
+    Map<Long, List<DenormClassification>> byFingerprint = new HashMap<Long, List<DenormClassification>>();
+    List<DenormClassification> distinctClassifications = new ArrayList<DenormClassification>();
     for (DenormClassification d : group) {
-      // build a string key to use in the distinct
-      StringBuilder key = new StringBuilder();
-      for (LINNEAN_RANK r : LinneanRank.ranksHigherThan(rank, false)) {
-        if (StringUtils.isBlank(d.get(r))) {
-          key.append("|--");
-        } else {
-          key.append('|').append(d.get(r));
-        }
+      Long fingerprint = d.higherFingerprint(rank);
+      List<DenormClassification> same = byFingerprint.get(fingerprint);
+      if (same == null) {
+        same = new ArrayList<DenormClassification>(1);
+        byFingerprint.put(fingerprint, same);
+      }
+      // only add a single representative sample, verifying the match in case the fingerprints collide
+      boolean found = false;
+      for (int i = 0; i < same.size() && !found; i++) {
+        found = sameHigherTaxa(rank, same.get(i), d);
       }
-      // only add a single representative sample
-      if (!distinctClassifications.containsKey(key.toString())) {
-        distinctClassifications.put(key.toString(), d);
+      if (!found) {
+        same.add(d);
+        distinctClassifications.add(d);
       }
     }
     LOG.debug("Group of {} provided {} distinct higher classifications at rank[{}] for: {}",
@@ -336,8 +683,14 @@ public class Normalizer {
         DenormClassificationUtils.debug(group);
       }
 
+      // only the large groups are timed, so the small ones that make up most of a pass cost nothing more
+      boolean timed = listener != null && group.size() >= GROUP_EVENT_SIZE;
+      long time = timed ? System.nanoTime() : 0;
+      int sparse = 0;
+      int candidateCount = 0;
+
       // we know we will receive a lot of duplicates, so extract them for performance
-      Map<String, DenormClassification> distinctClassifications = distinctClassifications(group, rank);
+      List<DenormClassification> distinctClassifications = distinctClassifications(group, rank);
 
       // inspect from the highest rank to the working rank in order, inferring as we go
       for (LINNEAN_RANK r : LinneanRank.ranksHigherThan(rank, false)) {
@@ -349,6 +702,7 @@ public class Normalizer {
             sparseRecords.add(d);
           }
         }
+        sparse += sparseRecords.size();
 
         // don't continue if there are no sparse records
         if (sparseRecords.size() < 1) {
@@ -365,42 +719,30 @@ public class Normalizer {
 
           // a classification with a value is a candidate
           List<DenormClassification> candidates = new ArrayList<DenormClassification>();
-          for (DenormClassification dc : distinctClassifications.values()) {
+          for (DenormClassification dc : distinctClassifications) {
             if (StringUtils.isNotBlank(dc.get(r))) {
               candidates.add(dc);
             }
           }
           LOG.debug("{} classification(s) is/are potential candidate(s) from which rank[{}] might be inferred",
             candidates.size(), r);
+          candidateCount += candidates.size();
 
           // for each, check against those with values at the rank
           if (!candidates.isEmpty()) {
+            CandidateBlock block = new CandidateBlock(r, candidates);
             for (DenormClassification d : sparseRecords) {
               LOG.debug("Attempting to infer rank[{}] for: {}", r, d);
 
-              // Check each candidate, and add it to the options
-              Set<String> potentials = new HashSet<String>();
-              for (DenormClassification candidate : candidates) {
-
-                // if they conflict in higher taxonomy, remove it from the candidate list
-                if (DenormClassificationUtils.haveConflict(d, candidate, r)) {
-                  LOG.debug("Ignoring candidate from potential options due to a conflict: {}", candidate);
-
-                } else if (DenormClassificationUtils.shareHigherTaxonomy(d, candidate, r)) {
-                  LOG.debug("Adding option[{}] for rank[{}] from candidate: {}",
-                    new Object[] {candidate.get(r), r, candidate});
-                  potentials.add(candidate.get(r));
-                } else {
-                  // since we are doing ranks in order, the higher taxa must be identical, or
-                  // we have ambiguity. Consider:
-                  // a,b,c
-                  // -,-,c
-                  // d,-,c
-                  // If we are on the middle rank and the second row, we see no conflict to
-                  // a,b,c but cannot assume b
-                  LOG.debug("Ignoring candidate from potential options due to ambiguity: {}", candidate);
-                }
-              }
+              // the options are the values of the candidates not in conflict with the higher taxonomy. Since we are
+              // doing ranks in order, the higher taxa must be identical, or we have ambiguity. Consider:
+              // a,b,c
+              // -,-,c
+              // d,-,c
+              // If we are on the middle rank and the second row, we see no conflict to
+              // a,b,c but cannot assume b
+              Set<String> potentials = block.potentials(d);
+              LOG.debug("Options{} for rank[{}] from {} candidate(s)", new Object[] {potentials, r, block.size()});
 
               // within this rank we have now the candidates, but consider working at the 3rd column in:
               // a - c d -> this row could be "b" but not definitely because:
@@ -422,6 +764,7 @@ public class Normalizer {
                 LOG.debug("{} classification(s) unanimously provided option[{}] at rank[{}] for: {}",
                   new Object[] {candidates.size(), value, r, d});
                 d.set(r, value);
+                progress.inferred();
               } else {
                 LOG.debug("{} classification(s) provided {} options at rank[{}], so cannot be inferred for: {}",
                   new Object[] {candidates.size(), potentials.size(), r, d});
@@ -429,13 +772,33 @@ public class Normalizer {
                 // higher taxa
                 if (StringUtils.isNotBlank(d.get(rank))) {
                   LOG.debug("Adding homonym[{}] to rank[{}]", d.get(rank), rank);
-                  homonyms.get(rank).add(d.get(rank));
+                  if (homonyms.get(rank).add(d.get(rank))) {
+                    progress.homonymFound();
+                  }
                 }
               }
             }
           }
         }
       }
+      if (timed) {
+        listener.groupInferred(rank, group.get(0).get(rank), group.size(), sparse, candidateCount,
+          (System.nanoTime() - time) / 1000);
+      }
+    }
+  }
+
+  /**
+   * @return True if the classifications are the same above the rank, where blank values are all the same
+   */
+  private boolean sameHigherTaxa(final LINNEAN_RANK rank, DenormClassification d1, DenormClassification d2) {
+    for (LINNEAN_RANK r : LinneanRank.ranksHigherThan(rank, false)) {
+      String v1 = d1.get(r);
+      String v2 = d2.get(r);
+      if (StringUtils.isBlank(v1) ? StringUtils.isNotBlank(v2) : !v1.equals(v2)) {
+        return false;
+      }
     }
+    return true;
   }
 }
@@ -0,0 +1,80 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records what a {@link NormalizerListener} is told as tab separated rows, one per event, so that a run in production
+ * can show which phases and which groups took the time. Each row has the time the event started in ms since the log
+ * was opened, its duration in µs, the kind of event, its name, the number of classifications and, for a group, the
+ * sparse and candidate counts. A group is named for its rank and value, such as G:Aus.
+ * <p/>
+ * The rows are written by the normalizer rather than recorded as Flight Recorder events, as the jdk.jfr API needs
+ * JDK 11 to build against and nothing else in the project requires a JDK that recent.
+ * <p/>
+ * The log is a diagnostic aid, so a failed write is logged and ends the recording rather than failing the
+ * normalization.
+ * <p/>
+ * This class is not thread safe.
+ */
+public class NormalizerEventLog implements NormalizerListener {
+
+  private static final Logger LOG = LoggerFactory.getLogger(NormalizerEventLog.class);
+
+  private final File file;
+  private final long opened = System.nanoTime();
+  private Writer writer;
+
+  /**
+   * @param file To write, replacing any existing file
+   */
+  public NormalizerEventLog(File file) throws IOException {
+    this.file = file;
+    writer = new BufferedWriter(new FileWriter(file));
+    writer.write("startMillis\tmicros\tevent\tname\tclassifications\tsparse\tcandidates\n");
+  }
+
+  /**
+   * Flushes and closes the file.
+   */
+  public void close() {
+    if (writer != null) {
+      try {
+        writer.close();
+      } catch (IOException e) {
+        LOG.error("Unable to write event log " + file.getAbsolutePath(), e);
+      }
+      writer = null;
+    }
+  }
+
+  @Override
+  public void groupInferred(LINNEAN_RANK rank, String group, int size, int sparse, int candidates, long micros) {
+    write(micros, "group", rank + ":" + group.replaceAll("\\s", " "), size + "\t" + sparse + "\t" + candidates);
+  }
+
+  @Override
+  public void phaseCompleted(String phase, int classifications, long micros) {
+    write(micros, "phase", phase, classifications + "\t\t");
+  }
+
+  private void write(long micros, String event, String name, String counts) {
+    if (writer != null) {
+      long startMillis = ((System.nanoTime() - opened) / 1000 - micros) / 1000;
+      try {
+        writer.write(startMillis + "\t" + micros + "\t" + event + "\t" + name + "\t" + counts + "\n");
+      } catch (IOException e) {
+        LOG.error("Unable to write event log " + file.getAbsolutePath() + ", so no more events are recorded", e);
+        close();
+      }
+    }
+  }
+}
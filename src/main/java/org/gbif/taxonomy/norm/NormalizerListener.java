@@ -0,0 +1,33 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+
+/**
+ * Told as each phase of a normalization completes, for measuring where the time goes. The phases are infer, a merge
+ * pass for each rank as merge-SS through merge-K, and build, which includes the time taken by the sink the tree is
+ * passed to. Each merge pass is preceded by its own parts, named for the pass as merge-G-sort or merge-G-group,
+ * merge-G-infer and merge-G-duplicates. The {@link DwcaNormalizer} adds read, which includes interpreting the names of
+ * a text file, and write.
+ */
+public interface NormalizerListener {
+
+  /**
+   * Told of the groups of at least {@link Normalizer#GROUP_EVENT_SIZE} classifications once their higher taxa are
+   * inferred, as those are where a pass may spend most of its time.
+   *
+   * @param rank The rank of the pass
+   * @param group The value at the rank shared by the group
+   * @param size The number of classifications in the group
+   * @param sparse The number of times a classification had no value at a higher rank, summed over the ranks
+   * @param candidates The number of distinct classifications that might provide a value, summed over the ranks
+   * @param micros The wall time spent on the group
+   */
+  void groupInferred(LINNEAN_RANK rank, String group, int size, int sparse, int candidates, long micros);
+
+  /**
+   * @param phase The name of the phase
+   * @param classifications Held once the phase completed
+   * @param micros The wall time of the phase
+   */
+  void phaseCompleted(String phase, int classifications, long micros);
+}
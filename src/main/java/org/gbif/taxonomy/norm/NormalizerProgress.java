@@ -0,0 +1,215 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the progress of a normalization as the {@link Normalizer} and {@link DwcaNormalizer} report it, and can be
+ * registered as an MBean to be watched with standard JMX tooling.
+ * <p/>
+ * The rate and the estimate of the time remaining are of the current phase, from the records or classifications
+ * processed since it started. Only reading and the inference within a pass report what they process, so the other
+ * phases have neither.
+ * <p/>
+ * Progress is reported by one thread at a time and may be read from any, so the fields are volatile and updated
+ * without locking.
+ */
+public class NormalizerProgress implements NormalizerProgressMBean {
+
+  private static final Logger LOG = LoggerFactory.getLogger(NormalizerProgress.class);
+
+  private volatile String phase;
+  private volatile LINNEAN_RANK rank;
+  private volatile int classifications;
+  private volatile int passesCompleted;
+  private volatile int groupsProcessed;
+  private volatile int groupsTotal;
+  private volatile long recordsRead;
+  private volatile long inferences;
+  private volatile long homonyms;
+  // the records or classifications to process in the phase, if known, and those processed
+  private volatile long units;
+  private volatile long unitsProcessed;
+  private volatile long phaseStarted = System.currentTimeMillis();
+  private volatile long lastProgress = phaseStarted;
+  private ObjectName name;
+
+  @Override
+  public int getClassifications() {
+    return classifications;
+  }
+
+  @Override
+  public int getGroupsProcessed() {
+    return groupsProcessed;
+  }
+
+  @Override
+  public int getGroupsTotal() {
+    return groupsTotal;
+  }
+
+  @Override
+  public long getHomonyms() {
+    return homonyms;
+  }
+
+  @Override
+  public long getInferences() {
+    return inferences;
+  }
+
+  @Override
+  public int getPassesCompleted() {
+    return passesCompleted;
+  }
+
+  @Override
+  public String getPhase() {
+    return phase;
+  }
+
+  @Override
+  public long getPhaseSecondsRemaining() {
+    double rate = getRecordsPerSecond();
+    long remaining = units - unitsProcessed;
+    return rate > 0 && units > 0 ? (long) Math.ceil(Math.max(0, remaining) / rate) : -1;
+  }
+
+  @Override
+  public String getRank() {
+    LINNEAN_RANK r = rank;
+    return r == null ? null : r.toString();
+  }
+
+  @Override
+  public double getRecordsPerSecond() {
+    long millis = System.currentTimeMillis() - phaseStarted;
+    return millis > 0 ? unitsProcessed * 1000d / millis : 0;
+  }
+
+  @Override
+  public long getRecordsRead() {
+    return recordsRead;
+  }
+
+  @Override
+  public long getSecondsSinceProgress() {
+    return (System.currentTimeMillis() - lastProgress) / 1000;
+  }
+
+  /**
+   * Called once the classifications of a group have been inferred from each other.
+   *
+   * @param size The number of classifications in the group
+   */
+  public void groupProcessed(int size) {
+    groupsProcessed++;
+    unitsProcessed += size;
+    lastProgress = System.currentTimeMillis();
+  }
+
+  /**
+   * Called as the groups of a pass are about to be processed.
+   *
+   * @param total The number of groups
+   */
+  public void groupsStarted(int total) {
+    groupsTotal = total;
+    groupsProcessed = 0;
+  }
+
+  /**
+   * Called when a homonym not known before is found.
+   */
+  public void homonymFound() {
+    homonyms++;
+  }
+
+  /**
+   * Called when a value is inferred.
+   */
+  public void inferred() {
+    inferences++;
+  }
+
+  /**
+   * Called once a rank pass completes.
+   */
+  public void passCompleted() {
+    passesCompleted++;
+    rank = null;
+  }
+
+  /**
+   * Called as a rank pass starts.
+   */
+  public void passStarted(LINNEAN_RANK rank) {
+    this.rank = rank;
+    groupsTotal = 0;
+    groupsProcessed = 0;
+  }
+
+  /**
+   * Called as a phase starts.
+   *
+   * @param phase The name of the phase
+   * @param classifications Held at the start of the phase
+   * @param units The records or classifications the phase will process, or 0 if not known
+   */
+  public void phaseStarted(String phase, int classifications, long units) {
+    this.phase = phase;
+    this.classifications = classifications;
+    this.units = units;
+    unitsProcessed = 0;
+    phaseStarted = System.currentTimeMillis();
+    lastProgress = phaseStarted;
+  }
+
+  /**
+   * Called as each record is read.
+   */
+  public void recordRead() {
+    recordsRead++;
+    unitsProcessed++;
+    lastProgress = System.currentTimeMillis();
+  }
+
+  /**
+   * Registers with the platform MBean server. Progress is a diagnostic aid, so failing to register is logged rather
+   * than thrown.
+   *
+   * @param source Of the normalization, to tell it apart from others in the same JVM
+   */
+  public void register(String source) {
+    try {
+      ObjectName objectName = new ObjectName(getClass().getPackage().getName() + ":type="
+        + getClass().getSimpleName() + ",name=" + ObjectName.quote(source));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+      name = objectName;
+    } catch (JMException e) {
+      LOG.warn("Unable to register progress of " + source + " over JMX", e);
+    }
+  }
+
+  /**
+   * Unregisters from the platform MBean server, if registered.
+   */
+  public void unregister() {
+    if (name != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+      } catch (JMException e) {
+        LOG.warn("Unable to unregister " + name + " from JMX", e);
+      }
+      name = null;
+    }
+  }
+}
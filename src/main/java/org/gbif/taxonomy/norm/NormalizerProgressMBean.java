@@ -0,0 +1,69 @@
+package org.gbif.taxonomy.norm;
+
+/**
+ * The progress of a normalization as seen over JMX, for watching long runs and alerting on those that stall.
+ */
+public interface NormalizerProgressMBean {
+
+  /**
+   * @return The number of classifications held, as of the start of the phase
+   */
+  int getClassifications();
+
+  /**
+   * @return The number of groups processed in the current rank pass
+   */
+  int getGroupsProcessed();
+
+  /**
+   * @return The number of groups in the current rank pass, or 0 before the first
+   */
+  int getGroupsTotal();
+
+  /**
+   * @return The number of homonyms found so far
+   */
+  long getHomonyms();
+
+  /**
+   * @return The number of values inferred so far
+   */
+  long getInferences();
+
+  /**
+   * @return The number of rank passes completed
+   */
+  int getPassesCompleted();
+
+  /**
+   * @return The current phase, named as for the {@link NormalizerListener}, or null before the first
+   */
+  String getPhase();
+
+  /**
+   * @return An estimate of the seconds until the current phase completes, or -1 if it can't be estimated
+   */
+  long getPhaseSecondsRemaining();
+
+  /**
+   * @return The rank of the current pass, or null outside the passes
+   */
+  String getRank();
+
+  /**
+   * @return The number of records read from the source
+   */
+  long getRecordsRead();
+
+  /**
+   * @return The records read per second while reading, or the classifications passed through their groups per second
+   *         while inferring within a pass, and otherwise 0
+   */
+  double getRecordsPerSecond();
+
+  /**
+   * @return The seconds since the phase started or a record or group was last processed, which grows while a run is
+   *         stuck
+   */
+  long getSecondsSinceProgress();
+}
@@ -0,0 +1,577 @@
+package org.gbif.taxonomy.norm;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import com.google.common.base.Throwables;
+
+/**
+ * Decompresses a gzip stream, inflating its members on several threads where it has more than one, such as the
+ * block gzip (BGZF) written by bgzip or the concatenated members written by many export tools.
+ * <p/>
+ * A reader thread cuts the compressed input into segments of about {@link #SEGMENT_SIZE} bytes, each ending where the
+ * next member starts. The start of each block gzip block is found from the size in the header of the block before,
+ * and the start of any other member is guessed at the next bytes that read as a gzip header. Each segment is inflated
+ * on a worker as soon as it is cut, a bounded number ahead of the caller, and the output is handed on in order. A
+ * segment can only be inflated on its own if it holds whole members, so where a guess was wrong, or a member is
+ * larger than a segment as in a file gzip wrote in one member, the member is instead inflated on the calling thread,
+ * reading on through the segments after it as far as it goes. A single member file is therefore read much as by
+ * {@link java.util.zip.GZIPInputStream}, with the reading of the compressed input done ahead on another thread.
+ * <p/>
+ * The checksum and length of every member are verified. The output is the concatenated members, so the lines of text
+ * are split across them as they were written, and a reader above sees them whole. As with
+ * {@link java.util.zip.GZIPInputStream}, anything after the last member that does not read as a member, such as the
+ * zero padding some tools write to fill a block, ends the stream.
+ * <p/>
+ * This class is not thread safe.
+ */
+public class ParallelGzipInputStream extends InputStream {
+
+  /**
+   * The compressed bytes of a segment, and their output if they start with what reads as a gzip header.
+   */
+  private static class Segment {
+
+    private final byte[] data;
+    private Future<Inflated> inflated;
+
+    private Segment(byte[] data) {
+      this.data = data;
+    }
+  }
+
+  /**
+   * The output of the whole members at the start of a segment.
+   */
+  private static class Inflated {
+
+    private final byte[] output;
+    private final int length;
+    // where the first member not inflated starts in the segment, or -1 if all were
+    private final int resume;
+
+    private Inflated(byte[] output, int length, int resume) {
+      this.output = output;
+      this.length = length;
+      this.resume = resume;
+    }
+  }
+
+  /**
+   * A position in the compressed input, from which a member may run on into the segments after, if there are any to
+   * take.
+   */
+  private static class Cursor {
+
+    private final SpscRingBuffer<Segment> segments;
+    private final Future<?> reader;
+    private Segment segment;
+    private int position;
+
+    /**
+     * @param segments To take the segments after from, or null if members must end within the segment
+     * @param reader That puts the segments, whose failure is thrown should they end, or null with no segments
+     */
+    private Cursor(SpscRingBuffer<Segment> segments, Future<?> reader, Segment segment, int position) {
+      this.segments = segments;
+      this.reader = reader;
+      this.segment = segment;
+      this.position = position;
+    }
+
+    /**
+     * @return true if the position is the end of the segment
+     */
+    private boolean atSegmentEnd() {
+      return position == segment.data.length;
+    }
+
+    /**
+     * Inflates the member being read into the buffer, giving the inflater more input as it needs it.
+     *
+     * @return The number of bytes inflated, or -1 if the member's compressed data has ended
+     */
+    private int inflate(Inflater inflater, byte[] b, int off, int len) throws IOException {
+      try {
+        while (true) {
+          int n = inflater.inflate(b, off, len);
+          if (n > 0) {
+            return n;
+          }
+          if (inflater.finished()) {
+            position = segment.data.length - inflater.getRemaining();
+            return -1;
+          }
+          if (inflater.needsDictionary()) {
+            throw new ZipException("Unexpected preset dictionary in GZIP input");
+          }
+          if (inflater.needsInput()) {
+            while (atSegmentEnd()) {
+              next();
+            }
+            inflater.setInput(segment.data, position, segment.data.length - position);
+            position = segment.data.length;
+          }
+        }
+      } catch (DataFormatException e) {
+        throw new ZipException(e.getMessage());
+      }
+    }
+
+    private int read() throws IOException {
+      while (atSegmentEnd()) {
+        next();
+      }
+      return segment.data[position++] & 0xff;
+    }
+
+    private void skip(int n) throws IOException {
+      for (int i = 0; i < n; i++) {
+        read();
+      }
+    }
+
+    private void next() throws IOException {
+      if (segments == null) {
+        throw new EOFException("Member continues past the segment");
+      }
+      try {
+        segment = segments.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted reading GZIP input");
+      }
+      if (segment == null) {
+        // the reader closes the buffer should it fail, so its failure is thrown rather than taken for the end
+        get(reader);
+        throw new EOFException("Unexpected end of GZIP input");
+      }
+      // the segment starts within the member, so anything inflated from it is of no use
+      if (segment.inflated != null) {
+        segment.inflated.cancel(false);
+      }
+      position = 0;
+    }
+  }
+
+  public static final int SEGMENT_SIZE = 1 << 20;
+
+  private static final int FHCRC = 2;
+  private static final int FEXTRA = 4;
+  private static final int FNAME = 8;
+  private static final int FCOMMENT = 16;
+  private static final int RESERVED = 0xe0;
+  // enough to read the size from a block gzip header, of which the extra field holds only the block size
+  private static final int BLOCK_HEADER_SIZE = 18;
+  private static final int MAX_BLOCK_SIZE = 65536;
+  private static final int READ_SIZE = 65536;
+
+  private final InputStream in;
+  private final int segmentSize;
+  private final ExecutorService executor;
+  private final SpscRingBuffer<Segment> segments;
+  private final Future<?> reader;
+  private final Inflater inflater = new Inflater(true);
+  private final CRC32 crc = new CRC32();
+  private final byte[] single = new byte[1];
+
+  // the output of the segment being read
+  private byte[] output;
+  private int outputLength;
+  private int outputPosition;
+  // set while members are inflated here rather than by the workers
+  private Cursor cursor;
+  private boolean inMember;
+  // set once a member has been read whole, after which input that isn't a member ends the stream
+  private boolean memberRead;
+  private boolean finished;
+  private boolean closed;
+
+  // the compressed input read but not yet cut into segments, used only by the reader thread
+  private final byte[] buffer;
+  private int buffered;
+  private boolean ended;
+
+  /**
+   * @param in To decompress, which is closed with this
+   * @param threads The number of workers to inflate with
+   */
+  public ParallelGzipInputStream(InputStream in, int threads) {
+    this(in, threads, SEGMENT_SIZE);
+  }
+
+  /**
+   * @param segmentSize The size of the segments to cut, of which 4 times is the most a segment is allowed to grow to
+   * before it is cut whether or not a member looks to start there
+   */
+  ParallelGzipInputStream(InputStream in, int threads, int segmentSize) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("At least one thread is needed: " + threads);
+    }
+    this.in = in;
+    this.segmentSize = segmentSize;
+    buffer = new byte[segmentSize * 4 + MAX_BLOCK_SIZE + READ_SIZE];
+    // room for the segments being inflated, and as many again inflated and waiting to be read
+    segments = new SpscRingBuffer<Segment>(Integer.highestOneBit(threads * 2 - 1) << 1);
+    executor = Executors.newFixedThreadPool(threads + 1, new ThreadFactory() {
+
+      private int count;
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, count++ == 0 ? "gunzip-reader" : "gunzip-" + count);
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    reader = executor.submit(new Callable<Void>() {
+
+      @Override
+      public Void call() throws IOException, InterruptedException {
+        cut();
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Reads the first bytes of a stream to see if it is gzip, leaving them to be read again.
+   *
+   * @return true if the stream starts with the gzip magic number
+   */
+  public static boolean isGzip(PushbackInputStream in) throws IOException {
+    byte[] magic = new byte[2];
+    int n = 0;
+    while (n < magic.length) {
+      int b = in.read();
+      if (b < 0) {
+        break;
+      }
+      magic[n++] = (byte) b;
+    }
+    in.unread(magic, 0, n);
+    return n == 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      // stops the reader should it be waiting on a full buffer, and any workers still inflating
+      executor.shutdownNow();
+      inflater.end();
+      in.close();
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    int n = read(single, 0, 1);
+    return n < 0 ? -1 : single[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    if (len == 0) {
+      return 0;
+    }
+    if (finished) {
+      return -1;
+    }
+    while (true) {
+      if (outputPosition < outputLength) {
+        int n = Math.min(len, outputLength - outputPosition);
+        System.arraycopy(output, outputPosition, b, off, n);
+        outputPosition += n;
+        return n;
+      }
+
+      if (cursor != null) {
+        if (!inMember) {
+          if (cursor.atSegmentEnd()) {
+            // the last member ended with its segment, so the next segment starts a member and the workers take over
+            cursor = null;
+            continue;
+          }
+          try {
+            readHeader(cursor);
+          } catch (IOException e) {
+            if (!memberRead || e instanceof InterruptedIOException) {
+              throw e;
+            }
+            // input that ended because it could not be read is not the end of the stream
+            if (reader.isDone()) {
+              get(reader);
+            }
+            finished = true;
+            cursor = null;
+            return -1;
+          }
+          inflater.reset();
+          crc.reset();
+          inMember = true;
+        }
+        int n = cursor.inflate(inflater, b, off, len);
+        if (n > 0) {
+          crc.update(b, off, n);
+          return n;
+        }
+        readTrailer(cursor, inflater, crc);
+        inMember = false;
+        memberRead = true;
+        continue;
+      }
+
+      Segment segment = take();
+      if (segment == null) {
+        return -1;
+      }
+      if (segment.inflated == null) {
+        cursor = new Cursor(segments, reader, segment, 0);
+      } else {
+        Inflated inflated = get(segment.inflated);
+        output = inflated.output;
+        outputLength = inflated.length;
+        outputPosition = 0;
+        // the workers inflate only whole members, so unless the first was left there was at least one
+        if (inflated.resume != 0) {
+          memberRead = true;
+        }
+        if (inflated.resume >= 0) {
+          cursor = new Cursor(segments, reader, segment, inflated.resume);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return The size of the block gzip block starting at the position, or -1 if there isn't one
+   */
+  private static int blockSize(byte[] data, int position, int length) {
+    if (position + BLOCK_HEADER_SIZE > length || !isHeader(data, position, length)
+        || (data[position + 3] & FEXTRA) == 0) {
+      return -1;
+    }
+    // the extra field must hold the BC subfield with the size of the block less one
+    int p = position + 12;
+    if (data[p] != 'B' || data[p + 1] != 'C' || data[p + 2] != 2 || data[p + 3] != 0) {
+      return -1;
+    }
+    return ((data[p + 4] & 0xff) | (data[p + 5] & 0xff) << 8) + 1;
+  }
+
+  /**
+   * Inflates the members of a segment, stopping at the first that does not end within it.
+   */
+  private static Inflated inflate(Segment segment) {
+    Cursor cursor = new Cursor(null, null, segment, 0);
+    Inflater inflater = new Inflater(true);
+    CRC32 crc = new CRC32();
+    byte[] output = new byte[Math.max(segment.data.length * 4, READ_SIZE)];
+    int length = 0;
+    int memberStart = 0;
+    int memberOutput = 0;
+    try {
+      while (!cursor.atSegmentEnd()) {
+        memberStart = cursor.position;
+        memberOutput = length;
+        readHeader(cursor);
+        inflater.reset();
+        crc.reset();
+        while (true) {
+          if (length == output.length) {
+            output = Arrays.copyOf(output, output.length * 2);
+          }
+          int n = cursor.inflate(inflater, output, length, output.length - length);
+          if (n < 0) {
+            break;
+          }
+          crc.update(output, length, n);
+          length += n;
+        }
+        readTrailer(cursor, inflater, crc);
+      }
+      return new Inflated(output, length, -1);
+    } catch (IOException e) {
+      // the member is left to be read on from its start, which will report it should it be corrupt
+      return new Inflated(output, memberOutput, memberStart);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * @return true if the bytes at the position read as the start of a gzip header
+   */
+  private static boolean isHeader(byte[] data, int position, int length) {
+    return position + 4 <= length && (data[position] & 0xff) == 0x1f && (data[position + 1] & 0xff) == 0x8b
+           && data[position + 2] == 8 && (data[position + 3] & RESERVED) == 0;
+  }
+
+  private static void readHeader(Cursor cursor) throws IOException {
+    if (cursor.read() != 0x1f || cursor.read() != 0x8b || cursor.read() != 8) {
+      throw new ZipException("Not in GZIP format");
+    }
+    int flags = cursor.read();
+    // modification time, extra flags and operating system
+    cursor.skip(6);
+    if ((flags & FEXTRA) != 0) {
+      cursor.skip(cursor.read() | cursor.read() << 8);
+    }
+    if ((flags & FNAME) != 0) {
+      while (cursor.read() != 0) {
+        // skipping the file name
+      }
+    }
+    if ((flags & FCOMMENT) != 0) {
+      while (cursor.read() != 0) {
+        // skipping the comment
+      }
+    }
+    if ((flags & FHCRC) != 0) {
+      cursor.skip(2);
+    }
+  }
+
+  private static void readTrailer(Cursor cursor, Inflater inflater, CRC32 crc) throws IOException {
+    long checksum = readInt(cursor);
+    long size = readInt(cursor);
+    if (checksum != crc.getValue() || size != (inflater.getBytesWritten() & 0xffffffffL)) {
+      throw new ZipException("Corrupt GZIP trailer");
+    }
+  }
+
+  private static long readInt(Cursor cursor) throws IOException {
+    long value = 0;
+    for (int i = 0; i < 4; i++) {
+      value |= (long) cursor.read() << (i * 8);
+    }
+    return value;
+  }
+
+  /**
+   * Cuts the compressed input into segments for the workers to inflate, until it ends.
+   */
+  private void cut() throws IOException, InterruptedException {
+    try {
+      while (true) {
+        fill(1);
+        if (buffered == 0) {
+          break;
+        }
+        int end = segmentEnd();
+        final Segment segment = new Segment(Arrays.copyOf(buffer, end));
+        System.arraycopy(buffer, end, buffer, 0, buffered - end);
+        buffered -= end;
+        if (isHeader(segment.data, 0, segment.data.length)) {
+          segment.inflated = executor.submit(new Callable<Inflated>() {
+
+            @Override
+            public Inflated call() {
+              return inflate(segment);
+            }
+          });
+        }
+        segments.put(segment);
+      }
+    } finally {
+      segments.close();
+    }
+  }
+
+  /**
+   * Reads the input until the given number of bytes is buffered or it ends.
+   */
+  private void fill(int length) throws IOException {
+    while (!ended && buffered < length) {
+      int n = in.read(buffer, buffered, Math.min(READ_SIZE, buffer.length - buffered));
+      if (n < 0) {
+        ended = true;
+      } else {
+        buffered += n;
+      }
+    }
+  }
+
+  /**
+   * @return Where the segment at the start of the buffer ends
+   */
+  private int segmentEnd() throws IOException {
+    // block gzip blocks are followed from one to the next, as their headers give their sizes
+    int position = 0;
+    while (position < segmentSize) {
+      fill(position + BLOCK_HEADER_SIZE);
+      int size = blockSize(buffer, position, buffered);
+      if (size < 0) {
+        break;
+      }
+      position += size;
+    }
+    if (position >= segmentSize) {
+      fill(position + 4);
+      if (position == buffered && ended || isHeader(buffer, position, buffered)) {
+        return position;
+      }
+    }
+
+    // otherwise the next member is guessed to start at the next bytes that read as a header
+    int limit = segmentSize * 4;
+    int i = segmentSize;
+    while (true) {
+      fill(Math.min(i + READ_SIZE, limit) + 4);
+      for (int end = Math.min(buffered - 3, limit); i < end; i++) {
+        if (isHeader(buffer, i, buffered)) {
+          return i;
+        }
+      }
+      if (i >= limit) {
+        return limit;
+      } else if (ended) {
+        return buffered;
+      }
+    }
+  }
+
+  private Segment take() throws IOException {
+    try {
+      Segment segment = segments.take();
+      if (segment == null) {
+        // the reader closes the buffer should it fail, which is only seen here
+        get(reader);
+      }
+      return segment;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted reading GZIP input");
+    }
+  }
+
+  private static <T> T get(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted reading GZIP input");
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package org.gbif.taxonomy.norm;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded queue between one producing and one consuming thread, held in a ring of slots. The positions are only
+ * ever advanced by their own thread, so neither side takes a lock. A producer finding the ring full, or a consumer
+ * finding it empty, parks briefly and looks again, which holds back a producer that is ahead of its consumer. Items
+ * are meant to be batches, so waits are rare and short next to the work on each item.
+ * <p/>
+ * The producer closes the buffer once it has put its last item, after which the consumer drains what remains. Either
+ * side may be stopped by interrupting its thread.
+ * <p/>
+ * The buffer is safe for exactly one producing thread and one consuming thread.
+ */
+public class SpscRingBuffer<T> {
+
+  private static final long WAIT_NANOS = 50000;
+
+  private final Object[] slots;
+  private final int mask;
+  // the position of the next item to take and of the next to put, each only advanced by its own side
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+  private volatile boolean closed;
+
+  /**
+   * @param capacity The number of items held at most, which must be a power of two
+   */
+  public SpscRingBuffer(int capacity) {
+    if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a positive power of two: " + capacity);
+    }
+    slots = new Object[capacity];
+    mask = capacity - 1;
+  }
+
+  /**
+   * Called by the producer once it has put its last item.
+   */
+  public void close() {
+    closed = true;
+  }
+
+  /**
+   * Called by the producer to add an item, waiting while the buffer is full.
+   *
+   * @param item To add, which must not be null
+   *
+   * @throws InterruptedException If the thread is interrupted while waiting
+   */
+  public void put(T item) throws InterruptedException {
+    if (item == null) {
+      throw new NullPointerException("Items can't be null");
+    }
+    if (closed) {
+      throw new IllegalStateException("Buffer is closed");
+    }
+    long t = tail.get();
+    while (t - head.get() == slots.length) {
+      await();
+    }
+    slots[(int) t & mask] = item;
+    // publishes the item to the consumer
+    tail.lazySet(t + 1);
+  }
+
+  /**
+   * @return The number of items held
+   */
+  public int size() {
+    return (int) (tail.get() - head.get());
+  }
+
+  /**
+   * Called by the consumer to remove the oldest item, waiting while the buffer is empty.
+   *
+   * @return The item, or null if the buffer is closed and has no more
+   *
+   * @throws InterruptedException If the thread is interrupted while waiting
+   */
+  @SuppressWarnings("unchecked")
+  public T take() throws InterruptedException {
+    long h = head.get();
+    while (h == tail.get()) {
+      // the last item is published before the buffer is closed, so look once more after seeing it closed
+      if (closed && h == tail.get()) {
+        return null;
+      }
+      await();
+    }
+    int slot = (int) h & mask;
+    T item = (T) slots[slot];
+    slots[slot] = null;
+    // frees the slot for the producer
+    head.lazySet(h + 1);
+    return item;
+  }
+
+  private static void await() throws InterruptedException {
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    LockSupport.parkNanos(WAIT_NANOS);
+  }
+}
@@ -0,0 +1,472 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * A compact, read only encoding of a normalized tree, for services holding several trees in memory at once. The
+ * topology is a LOUDS bit string of about 2 bits per taxon with rank and select directories, and the names and authors
+ * are front coded in buckets, so a taxon takes around 20 bytes plus the unshared part of its name, rather than the
+ * hundred or more of a {@link NormClassification} and its strings.
+ * <p/>
+ * Taxa are numbered as nodes in breadth first order from a virtual root, {@link #root()}, which has the kingdoms as its
+ * children. The children of a node are sorted by name, so a child is found by name with a binary search. Parent and
+ * child navigation take constant time, and name access decodes at most one bucket of names.
+ * <p/>
+ * This class is immutable and thread safe.
+ */
+public class SuccinctTree {
+
+  public static final int NO_NODE = -1;
+
+  private static final LINNEAN_RANK[] RANKS = LINNEAN_RANK.values();
+
+  private final Bits topology;
+  private final FrontCodedStrings names;
+  private final FrontCodedStrings authors;
+  private final byte[] ranks;
+  private final int[] ids;
+  // open addressing table of node by id, holding node + 1
+  private final int[] byId;
+
+  private SuccinctTree(Bits topology, FrontCodedStrings names, FrontCodedStrings authors, byte[] ranks, int[] ids) {
+    this.topology = topology;
+    this.names = names;
+    this.authors = authors;
+    this.ranks = ranks;
+    this.ids = ids;
+    byId = new int[Integer.highestOneBit(Math.max(2, ids.length) * 2) * 2];
+    for (int node = 1; node < ids.length; node++) {
+      int slot = mix(ids[node]) & (byId.length - 1);
+      while (byId[slot] != 0) {
+        slot = (slot + 1) & (byId.length - 1);
+      }
+      byId[slot] = node + 1;
+    }
+  }
+
+  /**
+   * @return The author of the taxon, or null
+   */
+  public String author(int node) {
+    return authors.get(node);
+  }
+
+  /**
+   * @param taxa As returned by the normalizer, in which every parent is present
+   *
+   * @return The encoded tree
+   */
+  public static SuccinctTree build(List<NormClassification> taxa) {
+    Map<Integer, List<NormClassification>> children = new HashMap<Integer, List<NormClassification>>();
+    for (NormClassification taxon : taxa) {
+      List<NormClassification> siblings = children.get(taxon.getParentId());
+      if (siblings == null) {
+        siblings = new ArrayList<NormClassification>();
+        children.put(taxon.getParentId(), siblings);
+      }
+      siblings.add(taxon);
+    }
+    Comparator<NormClassification> byName = new Comparator<NormClassification>() {
+
+      @Override
+      public int compare(NormClassification o1, NormClassification o2) {
+        int c = o1.getScientificName().compareTo(o2.getScientificName());
+        return c != 0 ? c : StringUtils.defaultString(o1.getAuthor()).compareTo(
+          StringUtils.defaultString(o2.getAuthor()));
+      }
+    };
+
+    // breadth first from the virtual root, which holds the kingdoms
+    int size = taxa.size() + 1;
+    Bits.Builder topology = new Bits.Builder(2 * size - 1);
+    FrontCodedStrings.Builder names = new FrontCodedStrings.Builder();
+    FrontCodedStrings.Builder authors = new FrontCodedStrings.Builder();
+    byte[] ranks = new byte[size];
+    int[] ids = new int[size];
+    List<NormClassification> order = new ArrayList<NormClassification>(size);
+    order.add(null);
+    names.add(null);
+    authors.add(null);
+    for (int node = 0; node < order.size(); node++) {
+      NormClassification taxon = order.get(node);
+      List<NormClassification> below = children.get(taxon == null ? null : taxon.getId());
+      if (below != null) {
+        Collections.sort(below, byName);
+        for (NormClassification child : below) {
+          topology.add(true);
+          order.add(child);
+          names.add(child.getScientificName());
+          authors.add(child.getAuthor());
+          ranks[order.size() - 1] = (byte) LINNEAN_RANK.valueOf(child.getRank()).ordinal();
+          ids[order.size() - 1] = child.getId();
+        }
+      }
+      topology.add(false);
+    }
+    if (order.size() != size) {
+      throw new IllegalArgumentException("Only " + (order.size() - 1) + " of " + taxa.size()
+        + " taxa are reachable from a kingdom, so some parents are missing");
+    }
+    return new SuccinctTree(topology.build(), names.build(), authors.build(), ranks, ids);
+  }
+
+  /**
+   * @param i Of the child, from 0
+   *
+   * @return The ith child of the node
+   */
+  public int child(int node, int i) {
+    if (i < 0 || i >= childCount(node)) {
+      throw new IndexOutOfBoundsException("Node " + node + " has no child " + i);
+    }
+    return firstChild(node) + i;
+  }
+
+  /**
+   * @return The first child of the node with the name, or {@link #NO_NODE}
+   */
+  public int child(int node, String name) {
+    int low = firstChild(node);
+    int high = low + childCount(node) - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int c = names.get(mid).compareTo(name);
+      if (c < 0) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low < firstChild(node) + childCount(node) && names.get(low).equals(name) ? low : NO_NODE;
+  }
+
+  /**
+   * @return The number of children of the node
+   */
+  public int childCount(int node) {
+    int start = node == 0 ? 0 : topology.select0(node - 1) + 1;
+    return topology.select0(node) - start;
+  }
+
+  /**
+   * @param names Of the taxa on the path, kingdom first, skipping no level of the tree
+   *
+   * @return The node at the end of the path, or {@link #NO_NODE}
+   */
+  public int find(String... names) {
+    int node = root();
+    for (int i = 0; i < names.length && node != NO_NODE; i++) {
+      node = child(node, names[i]);
+    }
+    return node;
+  }
+
+  /**
+   * @return The taxon of a node other than the root, as output by the normalizer
+   */
+  public NormClassification get(int node) {
+    int parent = parent(node);
+    if (parent == NO_NODE) {
+      throw new IllegalArgumentException("The root is not a taxon");
+    }
+    return new NormClassification(ids[node], parent == 0 ? null : ids[parent], name(node), author(node),
+      rank(node).toString());
+  }
+
+  /**
+   * @return The id of the taxon in the normalizer output
+   */
+  public int id(int node) {
+    return ids[node];
+  }
+
+  /**
+   * @return The name of the taxon, or null for the root
+   */
+  public String name(int node) {
+    return names.get(node);
+  }
+
+  /**
+   * @return The node of the taxon with the id, or {@link #NO_NODE}
+   */
+  public int node(int id) {
+    int slot = mix(id) & (byId.length - 1);
+    while (byId[slot] != 0) {
+      if (ids[byId[slot] - 1] == id) {
+        return byId[slot] - 1;
+      }
+      slot = (slot + 1) & (byId.length - 1);
+    }
+    return NO_NODE;
+  }
+
+  /**
+   * @return The parent of the node, which is the root for a kingdom, or {@link #NO_NODE} for the root
+   */
+  public int parent(int node) {
+    if (node == 0) {
+      return NO_NODE;
+    }
+    // the node is the (node - 1)th one, in the run of ones following the zero ending its parent's predecessor
+    return topology.rank0(topology.select1(node - 1));
+  }
+
+  /**
+   * @return The rank of the taxon
+   */
+  public LINNEAN_RANK rank(int node) {
+    if (node == 0) {
+      throw new IllegalArgumentException("The root has no rank");
+    }
+    return RANKS[ranks[node]];
+  }
+
+  /**
+   * @return The virtual root, whose children are the kingdoms
+   */
+  public int root() {
+    return 0;
+  }
+
+  /**
+   * @return The number of taxa, excluding the root
+   */
+  public int size() {
+    return ids.length - 1;
+  }
+
+  private int firstChild(int node) {
+    int start = node == 0 ? 0 : topology.select0(node - 1) + 1;
+    // nodes are numbered by the ones before them, plus the root
+    return topology.rank1(start) + 1;
+  }
+
+  private static int mix(int h) {
+    h *= 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * A bit string with directories for rank and select, taking about a quarter again of the bits.
+   */
+  private static final class Bits {
+
+    private static final int SAMPLE = 256;
+
+    private final long[] words;
+    // the ones before each word
+    private final int[] ranks;
+    // the word holding every SAMPLEth one and zero
+    private final int[] ones;
+    private final int[] zeros;
+
+    private Bits(long[] words, int length) {
+      this.words = words;
+      ranks = new int[words.length + 1];
+      for (int w = 0; w < words.length; w++) {
+        ranks[w + 1] = ranks[w] + Long.bitCount(words[w]);
+      }
+      int totalOnes = ranks[words.length];
+      int totalZeros = length - totalOnes;
+      ones = new int[totalOnes / SAMPLE + 1];
+      zeros = new int[totalZeros / SAMPLE + 1];
+      for (int w = 0; w < words.length; w++) {
+        for (int k = (ranks[w] + SAMPLE - 1) / SAMPLE; k * SAMPLE < ranks[w + 1]; k++) {
+          ones[k] = w;
+        }
+        int zerosBefore = w * 64 - ranks[w];
+        int zerosTo = Math.min(length, (w + 1) * 64) - ranks[w + 1];
+        for (int k = (zerosBefore + SAMPLE - 1) / SAMPLE; k * SAMPLE < zerosTo; k++) {
+          zeros[k] = w;
+        }
+      }
+    }
+
+    /**
+     * @return The ones before the position
+     */
+    int rank1(int position) {
+      int w = position >>> 6;
+      int bit = position & 63;
+      return ranks[w] + (bit == 0 ? 0 : Long.bitCount(words[w] & (-1L >>> (64 - bit))));
+    }
+
+    /**
+     * @return The zeros before the position
+     */
+    int rank0(int position) {
+      return position - rank1(position);
+    }
+
+    /**
+     * @return The position of the ith one, from 0
+     */
+    int select1(int i) {
+      // find the last word with at most i ones before it, searching from the sample
+      int low = ones[i / SAMPLE];
+      int high = i / SAMPLE + 1 < ones.length ? ones[i / SAMPLE + 1] : words.length - 1;
+      while (low < high) {
+        int mid = (low + high + 1) >>> 1;
+        if (ranks[mid] <= i) {
+          low = mid;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return low * 64 + nthSetBit(words[low], i - ranks[low]);
+    }
+
+    /**
+     * @return The position of the ith zero, from 0
+     */
+    int select0(int i) {
+      int low = zeros[i / SAMPLE];
+      int high = i / SAMPLE + 1 < zeros.length ? zeros[i / SAMPLE + 1] : words.length - 1;
+      while (low < high) {
+        int mid = (low + high + 1) >>> 1;
+        if (mid * 64 - ranks[mid] <= i) {
+          low = mid;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return low * 64 + nthSetBit(~words[low], i - (low * 64 - ranks[low]));
+    }
+
+    private static int nthSetBit(long word, int n) {
+      for (int k = 0; k < n; k++) {
+        word &= word - 1;
+      }
+      return Long.numberOfTrailingZeros(word);
+    }
+
+    static final class Builder {
+
+      private final long[] words;
+      private int length;
+
+      Builder(int capacity) {
+        words = new long[capacity / 64 + 1];
+      }
+
+      void add(boolean bit) {
+        if (bit) {
+          words[length >>> 6] |= 1L << (length & 63);
+        }
+        length++;
+      }
+
+      Bits build() {
+        return new Bits(words, length);
+      }
+    }
+  }
+
+  /**
+   * Strings held as UTF-8 in buckets, each string after the first of a bucket being stored as the length of the prefix
+   * it shares with the one before plus the remaining bytes. Null is stored as a zero length.
+   */
+  private static final class FrontCodedStrings {
+
+    private static final int BUCKET = 16;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final byte[] data;
+    private final int[] buckets;
+    private final int maxLength;
+
+    private FrontCodedStrings(byte[] data, int[] buckets, int maxLength) {
+      this.data = data;
+      this.buckets = buckets;
+      this.maxLength = maxLength;
+    }
+
+    String get(int i) {
+      byte[] value = new byte[maxLength];
+      int length = 0;
+      boolean isNull = true;
+      int[] at = {buckets[i / BUCKET]};
+      for (int k = i - i % BUCKET; k <= i; k++) {
+        int prefix = readVarint(at);
+        int suffix = readVarint(at) - 1;
+        isNull = suffix < 0;
+        if (!isNull) {
+          System.arraycopy(data, at[0], value, prefix, suffix);
+          at[0] += suffix;
+          length = prefix + suffix;
+        } else {
+          length = 0;
+        }
+      }
+      return isNull ? null : new String(value, 0, length, UTF8);
+    }
+
+    private int readVarint(int[] at) {
+      int value = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = data[at[0]++];
+        value |= (b & 0x7f) << shift;
+        shift += 7;
+      } while (b < 0);
+      return value;
+    }
+
+    static final class Builder {
+
+      private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+      private final List<Integer> buckets = new ArrayList<Integer>();
+      private byte[] previous = new byte[0];
+      private int count;
+      private int maxLength;
+
+      void add(String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(UTF8);
+        int prefix = 0;
+        if (count % BUCKET == 0) {
+          buckets.add(data.size());
+        } else {
+          int max = Math.min(previous.length, bytes.length);
+          while (prefix < max && previous[prefix] == bytes[prefix]) {
+            prefix++;
+          }
+        }
+        writeVarint(prefix);
+        writeVarint(value == null ? 0 : bytes.length - prefix + 1);
+        data.write(bytes, prefix, bytes.length - prefix);
+        previous = bytes;
+        maxLength = Math.max(maxLength, bytes.length);
+        count++;
+      }
+
+      FrontCodedStrings build() {
+        int[] offsets = new int[buckets.size()];
+        for (int i = 0; i < offsets.length; i++) {
+          offsets[i] = buckets.get(i);
+        }
+        return new FrontCodedStrings(data.toByteArray(), offsets, maxLength);
+      }
+
+      private void writeVarint(int value) {
+        while ((value & ~0x7f) != 0) {
+          data.write((value & 0x7f) | 0x80);
+          value >>>= 7;
+        }
+        data.write(value);
+      }
+    }
+  }
+}
@@ -0,0 +1,258 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * An index from a denormalized classification to the id of the taxon it ends in, built from the result of {@link
+ * Normalizer#normalize(List)}. This allows occurrences to be matched against the tree after normalization, rather than
+ * carrying their ids through it as payloads.
+ * <p/>
+ * Each taxon is keyed by the names on its path from the root, plus its author. A classification is matched:
+ * <ol>
+ * <li>exactly, on its names and author</li>
+ * <li>exactly on its names, ignoring the author if no taxon has it</li>
+ * <li>by the name at its lowest rank, if exactly one taxon has that name at that rank without conflicting with any
+ * of the higher names given. This matches the records the normalizer filled holes in, in the same way as it did.</li>
+ * </ol>
+ * Blank values are treated as null, as by the normalizer.
+ * <p/>
+ * The index is a set of arrays probed by open addressing, which are never modified once built.
+ * <p/>
+ * This class is immutable and thread safe.
+ */
+public class TaxonLookup {
+
+  public static final int NO_MATCH = -1;
+
+  private static final int RANKS = LINNEAN_RANK.values().length;
+
+  // the names on the path of each taxon, RANKS per taxon, and the taxon details
+  private final String[] paths;
+  private final String[] authors;
+  private final int[] ids;
+  private final int[] ranks;
+  // open addressing tables holding taxon index + 1, by path and by lowest name
+  private final int[] byPath;
+  private final int[] byName;
+  // the next taxon with the same lowest rank and name, or -1
+  private final int[] nextWithName;
+  private final int mask;
+
+  private TaxonLookup(int size) {
+    paths = new String[size * RANKS];
+    authors = new String[size];
+    ids = new int[size];
+    ranks = new int[size];
+    nextWithName = new int[size];
+    int capacity = Integer.highestOneBit(Math.max(2, size) * 2) * 2; // at most half full
+    byPath = new int[capacity];
+    byName = new int[capacity];
+    mask = capacity - 1;
+  }
+
+  /**
+   * @param taxa As returned by the normalizer, in which a parent always precedes its children
+   *
+   * @return The index
+   */
+  public static TaxonLookup build(List<NormClassification> taxa) {
+    TaxonLookup lookup = new TaxonLookup(taxa.size());
+    Map<Integer, Integer> indexes = new HashMap<Integer, Integer>();
+    for (int i = 0; i < taxa.size(); i++) {
+      NormClassification taxon = taxa.get(i);
+      LINNEAN_RANK rank = LINNEAN_RANK.valueOf(taxon.getRank());
+      if (taxon.getParentId() != null) {
+        Integer parent = indexes.get(taxon.getParentId());
+        if (parent == null) {
+          throw new IllegalArgumentException("Parent of taxon must precede it: " + taxon);
+        }
+        System.arraycopy(lookup.paths, parent * RANKS, lookup.paths, i * RANKS, RANKS);
+      }
+      lookup.paths[i * RANKS + rank.ordinal()] = taxon.getScientificName();
+      lookup.authors[i] = taxon.getAuthor();
+      lookup.ids[i] = taxon.getId();
+      lookup.ranks[i] = rank.ordinal();
+      indexes.put(taxon.getId(), i);
+      lookup.index(i);
+    }
+    return lookup;
+  }
+
+  /**
+   * @return The id of the taxon the classification ends in, or {@link #NO_MATCH}
+   */
+  public int lookup(DenormClassification d) {
+    String[] names = new String[RANKS];
+    for (LINNEAN_RANK r : LINNEAN_RANK.values()) {
+      names[r.ordinal()] = d.get(r);
+    }
+    return lookup(names, d.getAuthor());
+  }
+
+  /**
+   * @param names  By rank ordinal, kingdom first
+   * @param author Of the lowest rank, or null
+   *
+   * @return The id of the taxon the classification ends in, or {@link #NO_MATCH}
+   */
+  public int lookup(String[] names, String author) {
+    if (names.length != RANKS) {
+      throw new IllegalArgumentException("Expected a name for each of " + RANKS + " ranks");
+    }
+    String[] query = new String[RANKS];
+    int lowest = -1;
+    for (int r = 0; r < RANKS; r++) {
+      query[r] = StringUtils.isBlank(names[r]) ? null : names[r];
+      lowest = query[r] == null ? lowest : r;
+    }
+    if (lowest < 0) {
+      return NO_MATCH;
+    }
+    author = StringUtils.isBlank(author) ? null : author;
+
+    int found = findPath(query, author);
+    if (found < 0 && author != null) {
+      found = findPath(query, null);
+    }
+    if (found < 0) {
+      found = findByName(query, lowest);
+    }
+    return found < 0 ? NO_MATCH : ids[found];
+  }
+
+  /**
+   * @return The number of taxa indexed
+   */
+  public int size() {
+    return ids.length;
+  }
+
+  /**
+   * @return true if no higher name given in the query differs from the taxon's path
+   */
+  private boolean agrees(int i, String[] query, int lowest) {
+    for (int r = 0; r < lowest; r++) {
+      if (query[r] != null && !query[r].equals(paths[i * RANKS + r])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return The index of the only taxon with the lowest name that agrees with the query, or -1
+   */
+  private int findByName(String[] query, int lowest) {
+    int found = -1;
+    int slot = hashName(lowest, query[lowest]) & mask;
+    while (byName[slot] != 0) {
+      int i = byName[slot] - 1;
+      if (ranks[i] == lowest && query[lowest].equals(paths[i * RANKS + lowest])) {
+        // walk every taxon with this name
+        for (; i >= 0; i = nextWithName[i]) {
+          if (agrees(i, query, lowest)) {
+            if (found >= 0 && !samePath(found, i)) {
+              return -1; // ambiguous
+            }
+            found = i; // taxa differing only by author resolve to the first
+          }
+        }
+        return found;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  private int findPath(String[] query, String author) {
+    int slot = hashPath(query, 0, author) & mask;
+    while (byPath[slot] != 0) {
+      int i = byPath[slot] - 1;
+      if (StringUtils.equals(author, authors[i]) && matches(i, query)) {
+        return i;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  private static int hashName(int rank, String name) {
+    return mix(31 * rank + name.hashCode());
+  }
+
+  private static int hashPath(String[] names, int offset, String author) {
+    int h = author == null ? 0 : author.hashCode();
+    for (int r = 0; r < RANKS; r++) {
+      String name = names[offset + r];
+      h = 31 * h + (name == null ? 0 : name.hashCode());
+    }
+    return mix(h);
+  }
+
+  /**
+   * Adds the taxon to both tables. The first of any taxa with the same path and author is kept.
+   */
+  private void index(int i) {
+    int slot = hashPath(paths, i * RANKS, authors[i]) & mask;
+    boolean duplicate = false;
+    while (byPath[slot] != 0) {
+      int j = byPath[slot] - 1;
+      if (StringUtils.equals(authors[i], authors[j]) && samePath(i, j)) {
+        duplicate = true;
+        break;
+      }
+      slot = (slot + 1) & mask;
+    }
+    if (!duplicate) {
+      byPath[slot] = i + 1;
+    }
+
+    // chain to any existing taxa of the same name
+    String name = paths[i * RANKS + ranks[i]];
+    nextWithName[i] = -1;
+    slot = hashName(ranks[i], name) & mask;
+    while (byName[slot] != 0) {
+      int j = byName[slot] - 1;
+      if (ranks[j] == ranks[i] && name.equals(paths[j * RANKS + ranks[j]])) {
+        nextWithName[i] = j;
+        break;
+      }
+      slot = (slot + 1) & mask;
+    }
+    byName[slot] = i + 1;
+  }
+
+  private boolean matches(int i, String[] query) {
+    for (int r = 0; r < RANKS; r++) {
+      if (!StringUtils.equals(query[r], paths[i * RANKS + r])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Spreads the bits of a hash, as masking keeps only the low ones.
+   */
+  private static int mix(int h) {
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    return h;
+  }
+
+  private boolean samePath(int i, int j) {
+    for (int r = 0; r < RANKS; r++) {
+      if (!StringUtils.equals(paths[i * RANKS + r], paths[j * RANKS + r])) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
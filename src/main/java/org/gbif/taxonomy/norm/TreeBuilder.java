@@ -0,0 +1,153 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds the tree from classifications sorted with {@link DenormClassificationUtils#FULL_COMPARATOR}, one at a time,
+ * creating the taxa from the rank at which each deviates from the one before. Each taxon is passed to the sink in id
+ * order once it is final. Only the species being built and its subspecies are held back, as a later classification
+ * may still set the author and add payloads of the species.
+ * <p/>
+ * A run of classifications that starts where the kingdom or phylum changes can be built on its own, as nothing above
+ * the phylum carries over into it but the id of the kingdom. Such a run is started with ids from 1 and
+ * {@link #INHERITED} as the kingdom, and its ids are offset once the taxa before it are counted.
+ * <p/>
+ * This class is not thread safe.
+ */
+public class TreeBuilder {
+
+  /**
+   * Stands in for the id of the kingdom in effect where a run of classifications starts, as the parent of any of its
+   * taxa below that kingdom.
+   */
+  public static final int INHERITED = -1;
+
+  private static final Logger LOG = LoggerFactory.getLogger(TreeBuilder.class);
+
+  private final NormClassificationSink sink;
+  // the ids of the latest taxa by rank ordinal, cleared below the rank at which a classification deviates
+  private final Integer[] parentIds = new Integer[LINNEAN_RANK.values().length];
+  // the taxa built but not yet passed on, in id order, and the species a later classification may still change
+  private final Deque<NormClassification> pending = new ArrayDeque<NormClassification>();
+  private NormClassification openSpecies;
+  private int id;
+
+  /**
+   * @param sink To pass the taxa to
+   * @param firstId The id of the first taxon
+   * @param kingdomId The id of the kingdom in effect before the first classification, if any
+   */
+  public TreeBuilder(NormClassificationSink sink, int firstId, Integer kingdomId) {
+    this.sink = sink;
+    id = firstId;
+    parentIds[LINNEAN_RANK.K.ordinal()] = kingdomId;
+  }
+
+  /**
+   * Creates the taxa of the classification that differ from those of the one before.
+   *
+   * @param curr To add
+   * @param prev The classification before it in the sorted list, or null for the first
+   */
+  public void add(DenormClassification curr, DenormClassification prev) {
+    // find where they differ
+    LINNEAN_RANK deviation = prev == null ? LINNEAN_RANK.K : DenormClassificationUtils.rankOfDeviation(curr, prev);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Deviation with previous is at rank[{}] for curr[{}] prev[{}]", new Object[] {deviation, curr, prev});
+    }
+
+    for (LINNEAN_RANK r : LinneanRank.ranksLowerThan(deviation, true)) {
+      // clear parentIds not of interest now
+      parentIds[r.ordinal()] = null;
+
+      String name = curr.get(r);
+      if (StringUtils.isNotBlank(name)) {
+        // find the parent id to use for this taxon
+        Integer parentId = null;
+        for (LINNEAN_RANK p : LinneanRank.ranksHigherThan(r, false)) {
+          parentId = parentIds[p.ordinal()] == null ? parentId : parentIds[p.ordinal()];
+        }
+
+        // create the taxon
+        String author = null;
+        if (LINNEAN_RANK.S == r && StringUtils.isBlank(curr.get(LINNEAN_RANK.SS)) || LINNEAN_RANK.SS == r) {
+          author = curr.getAuthor();
+        }
+        NormClassification nc = new NormClassification(id, parentId, name, author, r.toString());
+        pending.add(nc);
+        // the species of the latest taxon, as found by the special case below
+        if (LINNEAN_RANK.S == r) {
+          openSpecies = nc;
+        } else if (LINNEAN_RANK.SS != r || parentIds[LINNEAN_RANK.S.ordinal()] == null) {
+          openSpecies = null;
+        }
+        parentIds[r.ordinal()] = id;
+        id++;
+
+        // we have just created the concept, but if this is the most significant taxa,
+        // then we need to track any payloads on the newly create concept
+        boolean more = false;
+        for (LINNEAN_RANK r2 : LinneanRank.ranksLowerThan(r, false)) {
+          more |= StringUtils.isNotBlank(curr.get(r2));
+        }
+        if (!more) {
+          LOG.debug("Adding payloads from [{}] into [{}]", curr.toString(), nc.toString());
+          nc.getPayloads().addAll(curr.getPayloads());
+        }
+      }
+    }
+
+    // handle the special case when you have
+    // "a",null,null,null,null,"f","g","h","i"));
+    // "a",null,null,null,null,"f","g","j","i"));
+    // "a",null,null,null,null,"f","g",null,"i"));
+    // on the 3rd row, we have already created the species, but need to apply the author and update the payloads
+    if (LINNEAN_RANK.SS == deviation && prev != null &&
+      StringUtils.isBlank(curr.getSubspecies()) && // we don't want second row to go in here
+      StringUtils.equals(curr.get(LINNEAN_RANK.S), prev.get(LINNEAN_RANK.S))) {
+      // the species concept above the previous taxon
+      NormClassification prevNorm = openSpecies;
+      LOG.debug("Previous species: " + prevNorm);
+      if (prevNorm != null && StringUtils.equals(prevNorm.getRank(), LINNEAN_RANK.S.toString())) {
+        LOG.debug("Updating previous species concept with new author[{}]: {}", curr.getAuthor(), prevNorm);
+        prevNorm.setAuthor(curr.getAuthor());
+        LOG.debug("Updating previous payloads from [{}] into previous [{}]", curr.toString(), prevNorm.toString());
+        prevNorm.getPayloads().addAll(curr.getPayloads());
+      }
+    }
+
+    while (!pending.isEmpty() && pending.peek() != openSpecies) {
+      sink.accept(pending.poll());
+    }
+  }
+
+  /**
+   * Passes on the taxa held back, once there are no more classifications.
+   */
+  public void flush() {
+    while (!pending.isEmpty()) {
+      sink.accept(pending.poll());
+    }
+  }
+
+  /**
+   * @return The id of the kingdom in effect after the latest classification, which may be {@link #INHERITED} or null
+   */
+  public Integer getKingdomId() {
+    return parentIds[LINNEAN_RANK.K.ordinal()];
+  }
+
+  /**
+   * @return The id the next taxon will be given
+   */
+  public int getNextId() {
+    return id;
+  }
+}
@@ -0,0 +1,57 @@
+package org.gbif.taxonomy.norm;
+
+/**
+ * A difference between two normalized trees, as found by {@link TreeDiff}. Taxa are the same if they have the same
+ * rank, name and author, as ids are not stable across runs.
+ * <p/>
+ * This class is immutable, although the taxa it holds are not copied.
+ */
+public class TreeChange {
+
+  public enum Type {ADD, REMOVE, MOVE}
+
+  private final Type type;
+  private final NormClassification oldTaxon;
+  private final NormClassification newTaxon;
+
+  /**
+   * @param oldTaxon The taxon in the old tree, or null if added
+   * @param newTaxon The taxon in the new tree, or null if removed
+   */
+  public TreeChange(Type type, NormClassification oldTaxon, NormClassification newTaxon) {
+    this.type = type;
+    this.oldTaxon = oldTaxon;
+    this.newTaxon = newTaxon;
+  }
+
+  @Override
+  public String toString() {
+    NormClassification taxon = newTaxon == null ? oldTaxon : newTaxon;
+    return type + "|" +
+      (oldTaxon == null ? null : oldTaxon.getId()) + "|" +
+      (oldTaxon == null ? null : oldTaxon.getParentId()) + "|" +
+      (newTaxon == null ? null : newTaxon.getId()) + "|" +
+      (newTaxon == null ? null : newTaxon.getParentId()) + "|" +
+      taxon.getRank() + "|" +
+      taxon.getScientificName() + "|" +
+      taxon.getAuthor() + "|";
+  }
+
+  /**
+   * @return The taxon in the new tree, or null if removed
+   */
+  public NormClassification getNewTaxon() {
+    return newTaxon;
+  }
+
+  /**
+   * @return The taxon in the old tree, or null if added
+   */
+  public NormClassification getOldTaxon() {
+    return oldTaxon;
+  }
+
+  public Type getType() {
+    return type;
+  }
+}
@@ -0,0 +1,279 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.DwcaNormalizer.FileConverter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import org.apache.commons.lang.ObjectUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the changes between two normalized trees, such as the outputs of two runs over a dataset, so that a
+ * downstream copy can be brought up to date by applying only those.
+ * <p/>
+ * Each taxon is given a Merkle hash over its rank, name and author and the hashes of its children, so equal hashes
+ * mean equal subtrees. Ids are not stable across runs, so the trees are walked together from the root matching
+ * children on rank, name and author, and only the pairs whose hashes differ are descended into. The subtrees found
+ * in only one tree are then paired up by rank, name and author again, which finds the taxa that moved. The cost is
+ * that of hashing the trees and walking the changed subtrees.
+ * <p/>
+ * The changes are listed with additions and moves in the order the taxa appear from the root of the new tree,
+ * followed by the removals, so a parent is always added before its children and children are moved before their old
+ * parent is removed.
+ */
+public class TreeDiff {
+
+  /**
+   * A tree indexed by parent, with the hash of each taxon.
+   */
+  private static final class Tree {
+
+    private final Map<Integer, List<NormClassification>> children = new HashMap<Integer, List<NormClassification>>();
+    private final Map<Integer, Long> hashes = new HashMap<Integer, Long>();
+    private final long rootHash;
+
+    Tree(List<NormClassification> taxa) {
+      for (NormClassification taxon : taxa) {
+        List<NormClassification> siblings = children.get(taxon.getParentId());
+        if (siblings == null) {
+          siblings = new ArrayList<NormClassification>();
+          children.put(taxon.getParentId(), siblings);
+        }
+        siblings.add(taxon);
+      }
+      rootHash = combine(FNV_OFFSET, children(null));
+      if (hashes.size() != taxa.size()) {
+        throw new IllegalArgumentException("Only " + hashes.size() + " of " + taxa.size()
+          + " taxa are reachable from a root, so some parents are missing");
+      }
+    }
+
+    List<NormClassification> children(Integer id) {
+      List<NormClassification> below = children.get(id);
+      return below == null ? Collections.<NormClassification>emptyList() : below;
+    }
+
+    long hash(NormClassification taxon) {
+      return hashes.get(taxon.getId());
+    }
+
+    /**
+     * Hashes the children, in an order independent of their ids, into the hash given.
+     */
+    private long combine(long h, List<NormClassification> below) {
+      long[] childHashes = new long[below.size()];
+      for (int i = 0; i < childHashes.length; i++) {
+        NormClassification child = below.get(i);
+        long childHash = combine(fnv(FNV_OFFSET, key(child)), children(child.getId()));
+        hashes.put(child.getId(), childHash);
+        childHashes[i] = childHash;
+      }
+      Arrays.sort(childHashes);
+      for (long childHash : childHashes) {
+        for (int shift = 0; shift < 64; shift += 8) {
+          h = (h ^ ((childHash >>> shift) & 0xff)) * FNV_PRIME;
+        }
+      }
+      return h;
+    }
+  }
+
+  private static final Logger LOG = LoggerFactory.getLogger(TreeDiff.class);
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  @Parameter(names = "-old", description = "Path of the earlier normalized output", converter = FileConverter.class)
+  public File oldFile;
+
+  @Parameter(names = "-new", description = "Path of the later normalized output", converter = FileConverter.class)
+  public File newFile;
+
+  @Parameter(names = "-output", description = "File to write the changes to (default = standard out)",
+    converter = FileConverter.class)
+  public File outFile;
+
+  public static void main(String[] args) throws Exception {
+    TreeDiff app = new TreeDiff();
+    new JCommander(app, args);
+    if (app.oldFile == null || app.newFile == null) {
+      System.out.println("Both old and new must be supplied");
+    } else {
+      app.run();
+    }
+  }
+
+  /**
+   * @param oldTaxa As returned by the normalizer
+   * @param newTaxa As returned by the normalizer
+   *
+   * @return The changes to make to the old tree to give the new one
+   */
+  public static List<TreeChange> diff(List<NormClassification> oldTaxa, List<NormClassification> newTaxa) {
+    Tree oldTree = new Tree(oldTaxa);
+    Tree newTree = new Tree(newTaxa);
+    List<NormClassification> removed = new ArrayList<NormClassification>();
+    List<NormClassification> added = new ArrayList<NormClassification>();
+    if (oldTree.rootHash != newTree.rootHash) {
+      walk(oldTree, null, newTree, null, removed, added);
+    }
+
+    // pair the taxa found in only one tree, preferring those whose parents are also paired
+    Map<String, List<NormClassification>> removedByKey = new HashMap<String, List<NormClassification>>();
+    for (NormClassification taxon : removed) {
+      List<NormClassification> same = removedByKey.get(key(taxon));
+      if (same == null) {
+        same = new ArrayList<NormClassification>();
+        removedByKey.put(key(taxon), same);
+      }
+      same.add(taxon);
+    }
+    List<TreeChange> changes = new ArrayList<TreeChange>();
+    Map<Integer, NormClassification> partners = new HashMap<Integer, NormClassification>();
+    Set<Integer> moved = new HashSet<Integer>();
+    for (NormClassification taxon : added) {
+      List<NormClassification> same = removedByKey.get(key(taxon));
+      NormClassification parentPartner = partners.get(taxon.getParentId());
+      if (same == null || same.isEmpty()) {
+        changes.add(new TreeChange(TreeChange.Type.ADD, null, taxon));
+      } else {
+        NormClassification partner = same.get(0);
+        for (NormClassification candidate : same) {
+          if (parentPartner != null && ObjectUtils.equals(parentPartner.getId(), candidate.getParentId())) {
+            partner = candidate;
+            break;
+          }
+        }
+        same.remove(partner);
+        partners.put(taxon.getId(), partner);
+        moved.add(partner.getId());
+        // a taxon carried along with its parent has not moved itself
+        if (parentPartner == null || !ObjectUtils.equals(parentPartner.getId(), partner.getParentId())) {
+          changes.add(new TreeChange(TreeChange.Type.MOVE, partner, taxon));
+        }
+      }
+    }
+    for (NormClassification taxon : removed) {
+      if (!moved.contains(taxon.getId())) {
+        changes.add(new TreeChange(TreeChange.Type.REMOVE, taxon, null));
+      }
+    }
+    LOG.info("Found {} changes between trees of {} and {} taxa, walking {} removed and {} added",
+      new Object[] {changes.size(), oldTaxa.size(), newTaxa.size(), removed.size(), added.size()});
+    return changes;
+  }
+
+  /**
+   * @param taxa As returned by the normalizer
+   *
+   * @return The Merkle hash of each taxon by id
+   */
+  public static Map<Integer, Long> hashes(List<NormClassification> taxa) {
+    return new Tree(taxa).hashes;
+  }
+
+  /**
+   * Adds the taxon and everything below it to the list, parents first.
+   */
+  private static void collect(Tree tree, NormClassification taxon, List<NormClassification> taxa) {
+    taxa.add(taxon);
+    for (NormClassification child : tree.children(taxon.getId())) {
+      collect(tree, child, taxa);
+    }
+  }
+
+  /**
+   * FNV-1a over the characters of the string.
+   */
+  private static long fnv(long h, String s) {
+    for (int i = 0; i < s.length(); i++) {
+      h = (h ^ s.charAt(i)) * FNV_PRIME;
+    }
+    return h;
+  }
+
+  /**
+   * @return What identifies the taxon across runs
+   */
+  private static String key(NormClassification taxon) {
+    return taxon.getRank() + '|' + taxon.getScientificName() + '|' + taxon.getAuthor();
+  }
+
+  private void run() throws IOException {
+    List<TreeChange> changes = diff(DwcaNormalizer.readNormalized(oldFile), DwcaNormalizer.readNormalized(newFile));
+    Writer writer = new BufferedWriter(
+      new OutputStreamWriter(outFile == null ? System.out : new FileOutputStream(outFile), "UTF-8"));
+    try {
+      for (TreeChange change : changes) {
+        writer.write(change + "\n");
+      }
+    } finally {
+      if (outFile == null) {
+        writer.flush();
+      } else {
+        writer.close();
+      }
+    }
+  }
+
+  /**
+   * Matches the children of two taxa that differ, descending into the pairs that differ, and collects the subtrees
+   * found under only one of them.
+   *
+   * @param oldId Of the taxon in the old tree, or null for the roots
+   * @param newId Of the taxon in the new tree, or null for the roots
+   */
+  private static void walk(Tree oldTree, Integer oldId, Tree newTree, Integer newId, List<NormClassification> removed,
+    List<NormClassification> added) {
+    Map<String, List<NormClassification>> oldByKey = new HashMap<String, List<NormClassification>>();
+    Set<Integer> matched = new HashSet<Integer>();
+    for (NormClassification child : oldTree.children(oldId)) {
+      List<NormClassification> same = oldByKey.get(key(child));
+      if (same == null) {
+        same = new ArrayList<NormClassification>();
+        oldByKey.put(key(child), same);
+      }
+      same.add(child);
+    }
+    for (NormClassification child : newTree.children(newId)) {
+      List<NormClassification> same = oldByKey.get(key(child));
+      if (same == null || same.isEmpty()) {
+        collect(newTree, child, added);
+      } else {
+        // homonyms under one parent are paired on their content where possible
+        NormClassification match = same.get(0);
+        for (NormClassification candidate : same) {
+          if (oldTree.hash(candidate) == newTree.hash(child)) {
+            match = candidate;
+            break;
+          }
+        }
+        same.remove(match);
+        matched.add(match.getId());
+        if (oldTree.hash(match) != newTree.hash(child)) {
+          walk(oldTree, match.getId(), newTree, child.getId(), removed, added);
+        }
+      }
+    }
+    for (NormClassification child : oldTree.children(oldId)) {
+      if (!matched.contains(child.getId())) {
+        collect(oldTree, child, removed);
+      }
+    }
+  }
+}
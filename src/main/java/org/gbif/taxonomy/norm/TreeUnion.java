@@ -0,0 +1,130 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The union of trees normalized separately, such as one per dataset, into a single tree.
+ * <p/>
+ * Each input taxon that ends a path is turned back into a denormalized classification of the names on its path, and
+ * these are normalized together, so taxa are matched on rank, name, author and parent path, and holes are filled and
+ * homonyms kept apart by the same rules as a single run. As each tree holds one classification per distinct path, the
+ * cost is that of normalizing the trees, rather than every record behind them. Names are not interpreted again, as
+ * they were when each tree was normalized.
+ * <p/>
+ * Every input taxon is then matched to the combined tree with a {@link TaxonLookup}, to give an id remap for each
+ * input, and its payloads are added to the taxon it maps to. A taxon that cannot be matched unambiguously, which can
+ * only happen among homonyms, is left out of the remap.
+ * <p/>
+ * This class is immutable, although the taxa it holds are not copied.
+ */
+public class TreeUnion {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TreeUnion.class);
+
+  private final List<NormClassification> taxa;
+  private final List<Map<Integer, Integer>> idRemaps;
+
+  private TreeUnion(List<NormClassification> taxa, List<Map<Integer, Integer>> idRemaps) {
+    this.taxa = taxa;
+    this.idRemaps = idRemaps;
+  }
+
+  /**
+   * @param trees As returned by the normalizer, whose ids need not be distinct across trees
+   *
+   * @return The union of the trees
+   */
+  public static TreeUnion of(List<List<NormClassification>> trees) {
+    List<DenormClassification> denorm = new ArrayList<DenormClassification>();
+    List<Map<Integer, DenormClassification>> paths = new ArrayList<Map<Integer, DenormClassification>>();
+    for (List<NormClassification> tree : trees) {
+      Map<Integer, DenormClassification> treePaths = paths(tree);
+      Set<Integer> parents = new HashSet<Integer>();
+      for (NormClassification taxon : tree) {
+        parents.add(taxon.getParentId());
+      }
+      for (NormClassification taxon : tree) {
+        // a species with subspecies is needed alone too if it has an author, as the subspecies carry their own
+        boolean authoredSpecies = LINNEAN_RANK.S.toString().equals(taxon.getRank()) && taxon.getAuthor() != null;
+        if (!parents.contains(taxon.getId()) || authoredSpecies) {
+          denorm.add(treePaths.get(taxon.getId()));
+        }
+      }
+      paths.add(treePaths);
+    }
+    LOG.info("Combining {} trees from {} classifications", trees.size(), denorm.size());
+    List<NormClassification> taxa = new Normalizer().normalizeInterpreted(denorm);
+
+    TaxonLookup lookup = TaxonLookup.build(taxa);
+    Map<Integer, NormClassification> byId = new HashMap<Integer, NormClassification>();
+    for (NormClassification taxon : taxa) {
+      byId.put(taxon.getId(), taxon);
+    }
+    List<Map<Integer, Integer>> idRemaps = new ArrayList<Map<Integer, Integer>>();
+    for (int i = 0; i < trees.size(); i++) {
+      Map<Integer, Integer> idRemap = new HashMap<Integer, Integer>();
+      for (NormClassification taxon : trees.get(i)) {
+        int id = lookup.lookup(paths.get(i).get(taxon.getId()));
+        if (id == TaxonLookup.NO_MATCH) {
+          LOG.warn("Unable to match taxon of tree {} to the combined tree: {}", i, taxon);
+        } else {
+          idRemap.put(taxon.getId(), id);
+          byId.get(id).getPayloads().addAll(taxon.getPayloads());
+        }
+      }
+      idRemaps.add(Collections.unmodifiableMap(idRemap));
+    }
+    LOG.info("Combined {} trees into {} taxa", trees.size(), taxa.size());
+    return new TreeUnion(taxa, Collections.unmodifiableList(idRemaps));
+  }
+
+  /**
+   * @param input The index of the tree given
+   *
+   * @return The id in the combined tree of each taxon of the input tree, by its id in the input
+   */
+  public Map<Integer, Integer> getIdRemap(int input) {
+    return idRemaps.get(input);
+  }
+
+  /**
+   * @return The combined tree, as returned by the normalizer
+   */
+  public List<NormClassification> getTaxa() {
+    return taxa;
+  }
+
+  /**
+   * @return The names on the path to each taxon of the tree with its author, by id
+   */
+  private static Map<Integer, DenormClassification> paths(List<NormClassification> tree) {
+    Map<Integer, NormClassification> byId = new HashMap<Integer, NormClassification>();
+    for (NormClassification taxon : tree) {
+      byId.put(taxon.getId(), taxon);
+    }
+    Map<Integer, DenormClassification> paths = new HashMap<Integer, DenormClassification>();
+    for (NormClassification taxon : tree) {
+      DenormClassification path = new DenormClassification();
+      path.setAuthor(taxon.getAuthor());
+      for (NormClassification t = taxon; t != null; t = t.getParentId() == null ? null : byId.get(t.getParentId())) {
+        path.set(LINNEAN_RANK.valueOf(t.getRank()), t.getScientificName());
+        if (t.getParentId() != null && !byId.containsKey(t.getParentId())) {
+          throw new IllegalArgumentException("Parent of taxon is missing: " + t);
+        }
+      }
+      paths.put(taxon.getId(), path);
+    }
+    return paths;
+  }
+}
@@ -0,0 +1,124 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.util.TestDataFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchNormalizerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File in;
+  private File out;
+
+  @Before
+  public void setUp() throws IOException {
+    in = folder.newFolder("in");
+    out = folder.newFolder("out");
+    copy("/data/taxonomy/norm/1_denorm.txt", new File(in, "small.txt"));
+    copy("/data/taxonomy/norm/2_denorm.txt", new File(in, "medium.txt"));
+    copy("/data/taxonomy/merge/8_denorm.txt", new File(in, "other.txt"));
+  }
+
+  @Test
+  public void testLargestFirst() throws IOException {
+    BatchNormalizer batch = new BatchNormalizer();
+    batch.sourceDir = in;
+    List<File> archives = batch.archives();
+    assertEquals(3, archives.size());
+    for (int i = 1; i < archives.size(); i++) {
+      assertFalse(archives.get(i).length() > archives.get(i - 1).length());
+    }
+  }
+
+  /**
+   * Every output must be identical to normalizing the file alone.
+   */
+  @Test
+  public void testMatchesSingleRuns() throws IOException {
+    // a bad input must not stop the others
+    Files.write("", new File(in, "empty.txt"), Charsets.UTF_8);
+
+    BatchNormalizer batch = new BatchNormalizer();
+    batch.sourceDir = in;
+    batch.outDir = out;
+    batch.text = true;
+    batch.threads = 2;
+    batch.readers = 2;
+    assertEquals(1, batch.run());
+
+    assertSameAsSingleRun("/data/taxonomy/norm/1_denorm.txt", new File(out, "small-normalized.txt"));
+    assertSameAsSingleRun("/data/taxonomy/norm/2_denorm.txt", new File(out, "medium-normalized.txt"));
+    assertSameAsSingleRun("/data/taxonomy/merge/8_denorm.txt", new File(out, "other-normalized.txt"));
+    assertFalse(new File(out, "empty-normalized.txt").exists());
+  }
+
+  @Test
+  public void testManifest() throws IOException {
+    File manifest = folder.newFile("manifest.txt");
+    Files.write("# archives to normalize\n" + new File(in, "small.txt").getAbsolutePath() + "\n\n",
+      manifest, Charsets.UTF_8);
+
+    BatchNormalizer batch = new BatchNormalizer();
+    batch.manifest = manifest;
+    batch.outDir = out;
+    batch.text = true;
+    assertEquals(0, batch.run());
+    assertEquals(1, out.list().length);
+    assertSameAsSingleRun("/data/taxonomy/norm/1_denorm.txt", new File(out, "small-normalized.txt"));
+
+    // archives of the same name in different dirs, or differing only in extension, would share an output
+    File elsewhere = folder.newFolder("elsewhere");
+    copy("/data/taxonomy/norm/2_denorm.txt", new File(elsewhere, "small.txt"));
+    copy("/data/taxonomy/norm/2_denorm.txt", new File(in, "medium.csv"));
+    File[] duplicates = {new File(elsewhere, "small.txt"), new File(in, "medium.csv")};
+    for (File duplicate : duplicates) {
+      Files.write(new File(in, "small.txt").getAbsolutePath() + "\n" + new File(in, "medium.txt").getAbsolutePath()
+        + "\n" + duplicate.getAbsolutePath() + "\n", manifest, Charsets.UTF_8);
+      try {
+        batch.run();
+        fail("Two archives must not be written to the same output");
+      } catch (IOException e) {
+        assertTrue(e.getMessage().endsWith("-normalized.txt"));
+      }
+    }
+    // no job started
+    assertEquals(1, out.list().length);
+  }
+
+  private void assertSameAsSingleRun(String source, File output) throws IOException {
+    List<NormClassification> norm = new Normalizer().normalize(TestDataFactory.build(source, false));
+    File expected = folder.newFile();
+    DwcaNormalizer.write(norm, expected);
+    assertEquals(Files.toString(expected, Charsets.UTF_8), Files.toString(output, Charsets.UTF_8));
+  }
+
+  private void copy(String resource, File target) throws IOException {
+    InputStream is = getClass().getResourceAsStream(resource);
+    OutputStream os = new FileOutputStream(target);
+    try {
+      ByteStreams.copy(is, os);
+    } finally {
+      is.close();
+      os.close();
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+import org.gbif.taxonomy.norm.util.TestDataFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A utility to time the inference checks over the largest genus groups of a file, comparing each candidate in turn
+ * against checking a {@link CandidateBlock}.
+ */
+public class CandidateBlockBenchmark {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CandidateBlockBenchmark.class);
+
+  /**
+   * @param args input [groups] [repeats]
+   */
+  public static void main(String[] args) throws IOException {
+    String source = args[0];
+    int groupCount = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    int repeats = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+    LOG.info("Loading data");
+    List<DenormClassification> denorm = TestDataFactory.build(source, true);
+    NameInterpreter.getDefault().inferSpecies(denorm);
+    NameInterpreter.getDefault().inferGenera(denorm);
+    List<List<DenormClassification>> groups = new ArrayList<List<DenormClassification>>(
+      DenormClassificationUtils.groupByRank(LINNEAN_RANK.G, denorm).values());
+    Collections.sort(groups, new Comparator<List<DenormClassification>>() {
+
+      @Override
+      public int compare(List<DenormClassification> o1, List<DenormClassification> o2) {
+        return o2.size() - o1.size();
+      }
+    });
+    groups = groups.subList(0, Math.min(groupCount, groups.size()));
+    LOG.info("Timing the {} largest of the genus groups in {} classifications", groups.size(), denorm.size());
+
+    for (int repeat = 0; repeat < repeats; repeat++) {
+      long comparisons = 0;
+      long time = System.nanoTime();
+      int scalarOptions = 0;
+      for (List<DenormClassification> group : groups) {
+        for (LINNEAN_RANK r : LinneanRank.ranksHigherThan(LINNEAN_RANK.G, false)) {
+          List<DenormClassification> candidates = candidates(group, r);
+          for (DenormClassification d : group) {
+            if (StringUtils.isBlank(d.get(r))) {
+              Set<String> potentials = new HashSet<String>();
+              for (DenormClassification candidate : candidates) {
+                if (!DenormClassificationUtils.haveConflict(d, candidate, r)
+                  && DenormClassificationUtils.shareHigherTaxonomy(d, candidate, r)) {
+                  potentials.add(candidate.get(r));
+                }
+              }
+              scalarOptions += potentials.size();
+              comparisons += candidates.size();
+            }
+          }
+        }
+      }
+      long scalar = System.nanoTime() - time;
+
+      time = System.nanoTime();
+      int blockOptions = 0;
+      for (List<DenormClassification> group : groups) {
+        for (LINNEAN_RANK r : LinneanRank.ranksHigherThan(LINNEAN_RANK.G, false)) {
+          CandidateBlock block = new CandidateBlock(r, candidates(group, r));
+          for (DenormClassification d : group) {
+            if (StringUtils.isBlank(d.get(r))) {
+              blockOptions += block.potentials(d).size();
+            }
+          }
+        }
+      }
+      long blocked = System.nanoTime() - time;
+      LOG.info("Run {}: {} comparisons took {} ms one by one and {} ms in blocks, with {} and {} options",
+        new Object[] {repeat + 1, comparisons, scalar / 1000000, blocked / 1000000, scalarOptions, blockOptions});
+    }
+  }
+
+  // the classifications with a value at the rank, one for each higher classification as the normalizer takes them
+  private static List<DenormClassification> candidates(List<DenormClassification> group, LINNEAN_RANK rank) {
+    Set<Long> seen = new HashSet<Long>();
+    List<DenormClassification> candidates = new ArrayList<DenormClassification>();
+    for (DenormClassification d : group) {
+      if (StringUtils.isNotBlank(d.get(rank)) && seen.add(d.higherFingerprint(LINNEAN_RANK.G))) {
+        candidates.add(d);
+      }
+    }
+    return candidates;
+  }
+}
@@ -0,0 +1,78 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+public class CandidateBlockTest {
+
+  @Test
+  public void testPotentials() {
+    List<DenormClassification> candidates = new ArrayList<DenormClassification>();
+    candidates.add(new DenormClassification("a", "b", "c", null, null, null, null, null, null));
+    candidates.add(new DenormClassification("a", null, "c", null, null, null, null, null, null));
+    candidates.add(new DenormClassification("a", "b", "e", null, null, null, null, null, null));
+    candidates.add(new DenormClassification("", "b", "f", null, null, null, null, null, null));
+    CandidateBlock block = new CandidateBlock(LINNEAN_RANK.C, candidates);
+    assertEquals(4, block.size());
+
+    Set<String> expected = new HashSet<String>();
+    expected.add("c");
+    expected.add("e");
+    assertEquals(expected, block.potentials(new DenormClassification("a", "b", null, "x", null, null, null, null,
+      null)));
+    // a blank value at the rank conflicts with nothing, but the higher taxa must match exactly
+    assertEquals(expected, block.potentials(new DenormClassification("a", "b", " ", null, null, null, null, null,
+      null)));
+    expected.clear();
+    expected.add("f");
+    assertEquals(expected, block.potentials(new DenormClassification("", "b", null, null, null, null, null, null,
+      null)));
+    assertEquals(0, block.potentials(new DenormClassification("z", "b", null, null, null, null, null, null, null))
+      .size());
+    assertEquals(0, block.potentials(new DenormClassification("a", "b", "z", null, null, null, null, null, null))
+      .size());
+  }
+
+  /**
+   * The block must agree with comparing each candidate in turn.
+   */
+  @Test
+  public void testAgreesWithComparisons() {
+    String[] pool = {null, "", " ", "a", "b", "c"};
+    Random random = new Random(7);
+    for (LINNEAN_RANK rank : LINNEAN_RANK.values()) {
+      List<DenormClassification> candidates = new ArrayList<DenormClassification>();
+      for (int i = 0; i < 200; i++) {
+        candidates.add(random(pool, random));
+      }
+      CandidateBlock block = new CandidateBlock(rank, candidates);
+      for (int i = 0; i < 200; i++) {
+        DenormClassification d = random(pool, random);
+        Set<String> expected = new HashSet<String>();
+        for (DenormClassification candidate : candidates) {
+          if (!DenormClassificationUtils.haveConflict(d, candidate, rank)
+            && DenormClassificationUtils.shareHigherTaxonomy(d, candidate, rank)) {
+            expected.add(candidate.get(rank));
+          }
+        }
+        assertEquals(expected, block.potentials(d));
+      }
+    }
+  }
+
+  private static DenormClassification random(String[] pool, Random random) {
+    String[] v = new String[9];
+    for (int i = 0; i < v.length; i++) {
+      v[i] = pool[random.nextInt(pool.length)];
+    }
+    return new DenormClassification(v[0], v[1], v[2], v[3], v[4], v[5], v[6], v[7], v[8]);
+  }
+}
@@ -0,0 +1,127 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+import org.gbif.taxonomy.norm.util.TestDataFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CheckpointTest {
+
+  private static final String SOURCE = "/data/taxonomy/norm/2_denorm.txt";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    List<DenormClassification> denorm = new ArrayList<DenormClassification>();
+    DenormClassification<String> d = new DenormClassification<String>("Animalia", "Chordata", "Aves", null, null,
+      "Puma", "Puma concolor", null, "Linneaus, 1771");
+    d.getPayloads().add("occ1");
+    d.getPayloads().add("occ2");
+    denorm.add(d);
+    denorm.add(new DenormClassification("Animalia", null, "Aves", null, null, null, null, null, null));
+    Normalizer n = new Normalizer();
+    Map<LINNEAN_RANK, Set<String>> homonyms = n.createHomonymCache();
+    homonyms.get(LINNEAN_RANK.G).add("Puma");
+
+    CheckpointWriter writer = new CheckpointWriter(folder.getRoot());
+    writer.checkpoint(LINNEAN_RANK.F, denorm, homonyms);
+    // later passes modifying the state must not affect what is written
+    d.setOrder("Passeriformes");
+    homonyms.get(LINNEAN_RANK.G).add("Aves");
+    writer.close();
+
+    Checkpoint checkpoint = Checkpoint.latest(folder.getRoot());
+    assertEquals(LINNEAN_RANK.F, checkpoint.getCompletedRank());
+    assertEquals(2, checkpoint.getClassifications().size());
+    DenormClassification found = checkpoint.getClassifications().get(0);
+    assertEquals("Animalia", found.getKingdom());
+    assertNull(found.getOrder());
+    assertEquals("Puma concolor", found.getSpecies());
+    assertEquals("Linneaus, 1771", found.getAuthor());
+    assertEquals(2, found.getPayloads().size());
+    assertEquals("occ2", found.getPayloads().get(1));
+    assertTrue(checkpoint.getHomonyms().get(LINNEAN_RANK.G).contains("Puma"));
+    assertFalse(checkpoint.getHomonyms().get(LINNEAN_RANK.G).contains("Aves"));
+    assertTrue(checkpoint.getHomonyms().get(LINNEAN_RANK.S).isEmpty());
+  }
+
+  /**
+   * A checkpoint must not be resumed against another source, or against its source once changed.
+   */
+  @Test
+  public void testSource() throws IOException {
+    File source = folder.newFile("source.txt");
+    Files.write("kingdom\nAnimalia\n", source, Charsets.UTF_8);
+    String written = Checkpoint.source(source);
+    List<DenormClassification> denorm = TestDataFactory.build(SOURCE, false);
+    Normalizer n = new Normalizer();
+    CheckpointWriter writer = new CheckpointWriter(folder.getRoot(), written);
+    writer.checkpoint(LINNEAN_RANK.SS, denorm, n.createHomonymCache());
+    writer.close();
+
+    assertEquals(written, Checkpoint.latest(folder.getRoot(), written).getSource());
+    assertEquals(written, Checkpoint.latest(folder.getRoot()).getSource());
+    Files.append("Plantae\n", source, Charsets.UTF_8);
+    String[] others = {Checkpoint.source(source), Checkpoint.source(folder.newFile("other.txt"))};
+    for (String other : others) {
+      try {
+        Checkpoint.latest(folder.getRoot(), other);
+        fail("A checkpoint of another source must not be resumed");
+      } catch (IOException e) {
+        assertTrue(e.getMessage().contains(written));
+      }
+    }
+  }
+
+  @Test
+  public void testNoCheckpoint() throws IOException {
+    assertNull(Checkpoint.latest(folder.getRoot()));
+  }
+
+  /**
+   * Resuming after any pass must give the same tree as an uninterrupted run.
+   */
+  @Test
+  public void testResume() throws IOException {
+    List<NormClassification> expected = new Normalizer().normalize(TestDataFactory.build(SOURCE, false));
+
+    for (LINNEAN_RANK completed : LINNEAN_RANK.values()) {
+      File dir = folder.newFolder(completed.name());
+      Normalizer n = new Normalizer();
+      List<DenormClassification> denorm = TestDataFactory.build(SOURCE, false);
+      n.getNameInterpreter().inferSpecies(denorm);
+      n.getNameInterpreter().inferGenera(denorm);
+      Map<LINNEAN_RANK, Set<String>> homonyms = n.createHomonymCache();
+
+      // run the passes up to and including the completed one, as if the run then crashed
+      LINNEAN_RANK[] ranks = LinneanRank.ranksLowerThan(completed, true);
+      CheckpointWriter writer = new CheckpointWriter(dir);
+      for (int i = ranks.length - 1; i >= 0; i--) {
+        n.sortAndMerge(ranks[i], denorm, homonyms);
+        writer.checkpoint(ranks[i], denorm, homonyms);
+      }
+      writer.close();
+
+      List<NormClassification> found = new Normalizer().resume(Checkpoint.latest(dir));
+      assertEquals("Resuming after rank " + completed, expected.toString(), found.toString());
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CostEstimatorTest {
+
+  private static final long GB = 1024L * 1024 * 1024;
+
+  /**
+   * Small datasets fit in the sample, so the counts are exact and the sample is the dataset.
+   */
+  @Test
+  public void testCompleteSample() {
+    List<DenormClassification> records = build(100, 10);
+    CostEstimate estimate = new CostEstimator(1000, 0).estimate(records.iterator());
+
+    assertTrue(estimate.isComplete());
+    assertEquals(100, estimate.getRecords());
+    assertEquals(10, estimate.getDistinctClassifications());
+    assertEquals(ExecutionMode.IN_MEMORY, estimate.getMode());
+    assertEquals(0.5d, estimate.getSparsity().get(LINNEAN_RANK.SS), 0.0001d);
+    assertEquals(0d, estimate.getSparsity().get(LINNEAN_RANK.K), 0.0001d);
+    for (int i = 0; i < records.size(); i++) {
+      assertSame(records.get(i), estimate.getSample().get(i));
+    }
+  }
+
+  @Test
+  public void testPartialSample() {
+    CostEstimate estimate = new CostEstimator(100, 0).estimate(build(10000, 10).iterator());
+
+    assertFalse(estimate.isComplete());
+    assertEquals(10000, estimate.getRecords());
+    assertEquals(100, estimate.getSample().size());
+    // every classification is seen many times in the sample, so none are projected to be unseen
+    assertEquals(10, estimate.getDistinctClassifications());
+  }
+
+  @Test
+  public void testModeProjection() {
+    CostEstimator estimator = new CostEstimator();
+    List<DenormClassification> sample = build(1000, 1000);
+
+    assertEquals(ExecutionMode.IN_MEMORY, estimator.estimate(sample, 50000, 4 * GB, 8).getMode());
+    assertEquals(ExecutionMode.IN_MEMORY, estimator.estimate(sample, 500000, 4 * GB, 1).getMode());
+    assertEquals(ExecutionMode.PARALLEL, estimator.estimate(sample, 500000, 4 * GB, 8).getMode());
+    assertEquals(ExecutionMode.DEDUPLICATED, estimator.estimate(sample, 50000000, 4 * GB, 8).getMode());
+  }
+
+  /**
+   * @return records cycling through the given number of distinct classifications, half of them without subspecies
+   */
+  private List<DenormClassification> build(int records, int distinct) {
+    List<DenormClassification> list = new ArrayList<DenormClassification>();
+    for (int i = 0; i < records; i++) {
+      int c = i % distinct;
+      list.add(new DenormClassification("Animalia", "Chordata", "Aves", "Passeriformes", "Fam" + c % 3,
+        "Gen" + c % 5, "Gen" + c % 5 + " sp" + c, i % 2 == 0 ? null : "Gen" + c % 5 + " sp" + c + " ssp", null));
+    }
+    return list;
+  }
+}
@@ -0,0 +1,158 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.util.CSVReader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.io.Files;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DelimitedTextReaderTest {
+
+  @Test
+  public void testHeaderResolution() throws IOException {
+    DelimitedTextReader reader = new DelimitedTextReader(new StringReader(
+      "id\tKingdom\tGENUS\tscientificName\tscientificNameAuthorship\tkingdom\n" +
+        "1\tAnimalia\tPuma\tPuma concolor\tLinnaeus, 1771\tPlantae\n"), '\t', false);
+    assertTrue(reader.hasScientificName());
+    DenormClassification d = reader.next();
+    assertEquals("Animalia", d.getKingdom());
+    assertEquals("Puma", d.getGenus());
+    assertNull(d.getSpecies());
+    assertEquals("Linnaeus, 1771", d.getAuthor());
+    assertEquals("Puma concolor", reader.getScientificName());
+    assertFalse(reader.hasNext());
+    reader.close();
+  }
+
+  @Test
+  public void testNullsAndShortLines() throws IOException {
+    DelimitedTextReader reader = new DelimitedTextReader(new StringReader(
+      "kingdom\tphylum\tclass\tfamily\tgenus\n" +
+        "Animalia\tNULL\t\\N\t  \tPuma\n" +
+        "\n" +
+        "Animalia\tChordata\n" +
+        "Animalia\tChordata\tAves\tNULLA\tPuma\tsurplus\n"), '\t', false);
+    assertFalse(reader.hasScientificName());
+    DenormClassification d = reader.next();
+    assertEquals("Animalia", d.getKingdom());
+    assertNull(d.getPhylum());
+    assertNull(d.getKlass());
+    assertNull(d.getFamily());
+    assertEquals("Puma", d.getGenus());
+
+    d = reader.next();
+    assertEquals("Chordata", d.getPhylum());
+    assertNull(d.getKlass());
+    assertNull(d.getGenus());
+
+    d = reader.next();
+    assertEquals("NULLA", d.getFamily());
+    assertEquals("Puma", d.getGenus());
+    assertFalse(reader.hasNext());
+    reader.close();
+  }
+
+  @Test
+  public void testQuoted() throws IOException {
+    DelimitedTextReader reader = new DelimitedTextReader(new StringReader(
+      "\"kingdom\",genus,scientificName,author\n" +
+        "Animalia,\"Puma\",\"Puma concolor (Linnaeus, 1771)\",\"O'Brien \"\"the elder\"\"\"\n"), ',', true);
+    DenormClassification d = reader.next();
+    assertEquals("Animalia", d.getKingdom());
+    assertEquals("Puma", d.getGenus());
+    assertEquals("O'Brien \"the elder\"", d.getAuthor());
+    assertEquals("Puma concolor (Linnaeus, 1771)", reader.getScientificName());
+    reader.close();
+  }
+
+  /**
+   * The reader must agree with the test CSVReader, other than in reading NULL as null.
+   */
+  @Test
+  public void testAgreesWithCSVReader() throws IOException {
+    File sample = new File("sample/passeriformes.csv");
+    if (!sample.exists()) {
+      return;
+    }
+    List<Map<String, String>> rows = CSVReader.parse(new InputStreamReader(new FileInputStream(sample), "UTF-8"));
+    DelimitedTextReader reader = DelimitedTextReader.open(sample, '\t', false);
+    try {
+      for (Map<String, String> row : rows) {
+        DenormClassification d = reader.next();
+        assertEquals(value(row.get("kingdom")), d.getKingdom());
+        assertEquals(value(row.get("phylum")), d.getPhylum());
+        assertEquals(value(row.get("class")), d.getKlass());
+        assertEquals(value(row.get("order")), d.getOrder());
+        assertEquals(value(row.get("family")), d.getFamily());
+        assertEquals(value(row.get("genus")), d.getGenus());
+        assertEquals(value(row.get("scientificname")), reader.getScientificName());
+      }
+      assertFalse(reader.hasNext());
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * A gzip compressed file is read as it would be uncompressed.
+   */
+  @Test
+  public void testGzip() throws IOException {
+    File sample = new File("sample/passeriformes.csv");
+    if (!sample.exists()) {
+      return;
+    }
+    File compressed = File.createTempFile("passeriformes", ".csv.gz");
+    compressed.deleteOnExit();
+    OutputStream out = new GZIPOutputStream(new FileOutputStream(compressed));
+    try {
+      Files.copy(sample, out);
+    } finally {
+      out.close();
+    }
+
+    DelimitedTextReader expected = DelimitedTextReader.open(sample, '\t', false);
+    DelimitedTextReader reader = DelimitedTextReader.open(compressed, '\t', false);
+    try {
+      while (expected.hasNext()) {
+        assertEquals(expected.next().toString(), reader.next().toString());
+        assertEquals(expected.getScientificName(), reader.getScientificName());
+      }
+      assertFalse(reader.hasNext());
+    } finally {
+      expected.close();
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testBuild() throws IOException {
+    DelimitedTextReader reader = new DelimitedTextReader(
+      new InputStreamReader(getClass().getResourceAsStream("/data/taxonomy/utils/bootstrap2.txt"), "UTF-8"), '\t',
+      false);
+    List<DenormClassification> data = DenormClassificationFactory.build(reader, NameInterpreter.getDefault());
+    reader.close();
+    assertEquals(1, data.size());
+    assertEquals("Puma", data.get(0).getGenus());
+    assertEquals("Puma concolor Linneaus, 1771", data.get(0).getSpecies());
+    assertEquals("Linneaus, 1771", data.get(0).getAuthor());
+  }
+
+  private static String value(String csvValue) {
+    return csvValue == null || "NULL".equals(csvValue) ? null : csvValue;
+  }
+}
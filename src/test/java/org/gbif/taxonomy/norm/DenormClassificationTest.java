@@ -0,0 +1,37 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DenormClassificationTest {
+
+  @Test
+  public void testFingerprints() {
+    DenormClassification d1 = new DenormClassification("a", "b", null, "d", "e", "f", "g", "h", "i");
+    DenormClassification d2 = new DenormClassification("a", "b", " ", "d", "e", "f", "g", "h", "i");
+    DenormClassification d3 = new DenormClassification("a", "b", "c", "d", "e", "F1", "g", "h", null);
+
+    // blank and null are fingerprinted alike
+    assertEquals(d1.fingerprint(), d2.fingerprint());
+    assertEquals(d1.higherFingerprint(LINNEAN_RANK.K), d3.higherFingerprint(LINNEAN_RANK.K));
+    assertEquals(d1.higherFingerprint(LINNEAN_RANK.C), d3.higherFingerprint(LINNEAN_RANK.C));
+    assertFalse(d1.higherFingerprint(LINNEAN_RANK.O) == d3.higherFingerprint(LINNEAN_RANK.O));
+    // the values are not simply concatenated
+    assertFalse(new DenormClassification("ab", null, null, null, null, null, null, null, null).fingerprint()
+      == new DenormClassification("a", "b", null, null, null, null, null, null, null).fingerprint());
+
+    // a change clears the fingerprints
+    long before = d1.fingerprint();
+    d1.set(LINNEAN_RANK.C, "c");
+    d1.setGenus("F1");
+    d1.setAuthor(null);
+    assertFalse(before == d1.fingerprint());
+    assertEquals(d3.fingerprint(), d1.fingerprint());
+    assertTrue(DenormClassificationUtils.equalClassifications(d1, d3));
+    assertFalse(DenormClassificationUtils.equalClassifications(d1, d2));
+  }
+}
@@ -104,6 +104,29 @@ public class DenormClassificationUtilsTest {
 
   }
 
+  @Test
+  public void testCollapseDuplicates() {
+    List<DenormClassification> list = new ArrayList<DenormClassification>();
+    list.add(new DenormClassification("a", "b", "c", "d", "e", "f", "g", "h", "i"));
+    list.add(new DenormClassification("a", "b", "c", "d", "e", "f", "G1", "H1", "i"));
+    list.add(new DenormClassification("a", "b", "c", "d", "e", "f", "g", "h", "i"));
+    list.add(new DenormClassification("a", "b", "c", "d", "e", "f", "g", "h", null));
+    list.add(new DenormClassification("a", "b", "c", "d", "e", "f", "g", "h", "i"));
+    for (int i = 0; i < list.size(); i++) {
+      list.get(i).getPayloads().add(i);
+    }
+    DenormClassificationUtils.collapseDuplicates(list);
+    // the first of the duplicates is kept, in place
+    assertEquals(3, list.size());
+    assertEquals("g", list.get(0).getSpecies());
+    assertEquals("G1", list.get(1).getSpecies());
+    assertNull(list.get(2).getAuthor());
+    assertEquals(3, list.get(0).getPayloads().size());
+    assertEquals(0, list.get(0).getPayloads().get(0));
+    assertEquals(2, list.get(0).getPayloads().get(1));
+    assertEquals(4, list.get(0).getPayloads().get(2));
+  }
+
   @Test
   public void testHaveConflict() {
     DenormClassification d1 = new DenormClassification("a", "b", "c", "d", "e", "f", "g", "h", "i");
@@ -0,0 +1,161 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+import org.gbif.taxonomy.norm.util.TestDataFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+public class DwcaNormalizerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Reads a list as occurrences with ids by position.
+   */
+  private static class ListSource implements DwcaNormalizer.OccurrenceSource {
+
+    private final List<DenormClassification> classifications;
+    private int index;
+
+    private ListSource(List<DenormClassification> classifications) {
+      this.classifications = classifications;
+    }
+
+    @Override
+    public String getOccurrenceId() {
+      return "occ-" + (index - 1);
+    }
+
+    @Override
+    public String getScientificName() {
+      return null;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return index < classifications.size();
+    }
+
+    @Override
+    public DenormClassification next() {
+      return classifications.get(index++);
+    }
+  }
+
+  /**
+   * Every occurrence must be joined to the taxon of its lowest rank, under taxa named as its higher ranks, including
+   * where names are homonyms, and occurrences of classifications that were not normalized must be left out.
+   */
+  @Test
+  public void testJoin() throws IOException {
+    for (int i = 1; i <= 8; i++) {
+      String source = "/data/taxonomy/merge/" + i + "_denorm.txt";
+      List<DenormClassification> occurrences = TestDataFactory.build(source, false);
+      occurrences.add(new DenormClassification("Zus", null, null, null, null, null, null, null, null));
+      StringWriter out = new StringWriter();
+      List<NormClassification> norm =
+        new DwcaNormalizer().join(TestDataFactory.build(source, false), new ListSource(occurrences), out);
+
+      Map<Integer, NormClassification> byId = new HashMap<Integer, NormClassification>();
+      for (NormClassification taxon : norm) {
+        byId.put(taxon.getId(), taxon);
+      }
+      String[] rows = out.toString().split("\n");
+      assertEquals(source, occurrences.size() - 1, rows.length);
+      for (int o = 0; o < rows.length; o++) {
+        String[] values = rows[o].split("\\|");
+        assertEquals("occ-" + o, values[0]);
+        DenormClassification d = occurrences.get(o);
+
+        // the names of the taxon and its ancestors by rank
+        Map<String, String> names = new HashMap<String, String>();
+        NormClassification leaf = byId.get(Integer.valueOf(values[1]));
+        assertNotNull(source + " " + d, leaf);
+        for (NormClassification taxon = leaf; taxon != null; taxon = byId.get(taxon.getParentId())) {
+          names.put(taxon.getRank(), taxon.getScientificName());
+        }
+        LINNEAN_RANK lowest = null;
+        for (LINNEAN_RANK r : LINNEAN_RANK.values()) {
+          if (d.get(r) != null) {
+            assertEquals(source + " " + d, d.get(r), names.get(r.toString()));
+            lowest = r;
+          }
+        }
+        assertEquals(source + " " + d, lowest.toString(), leaf.getRank());
+      }
+    }
+  }
+
+  /**
+   * The sample of an archive read whole by the estimate is canonicalized in the dictionary as the archive would be.
+   */
+  @Test
+  public void testReadSampleDictionary() throws IOException {
+    DwcaNormalizer app = new DwcaNormalizer();
+    app.dictionaryFile = new File(folder.getRoot(), "names");
+    List<DenormClassification> denorm = app.read(sample(), ExecutionMode.IN_MEMORY);
+    NameDictionary dictionary = NameDictionary.open(app.dictionaryFile);
+    String kingdom = denorm.get(0).getKingdom();
+    assertEquals(denorm.get(0).getKingdom(), dictionary.name(dictionary.lookup(kingdom)));
+    assertSame(dictionary.canonical(new String(kingdom)), kingdom);
+  }
+
+  /**
+   * The records of the sample are counted as read, and collapsed in DEDUPLICATED mode.
+   */
+  @Test
+  public void testReadSampleProgress() throws IOException {
+    DwcaNormalizer app = new DwcaNormalizer();
+    List<DenormClassification> sample = sample();
+    List<DenormClassification> denorm = app.read(sample, ExecutionMode.DEDUPLICATED);
+    assertEquals(sample.size(), app.progress.getRecordsRead());
+    assertEquals(sample.size() / 2, denorm.size());
+  }
+
+  /**
+   * The listener is told of the read of the sample as of any other.
+   */
+  @Test
+  public void testReadSampleListener() throws IOException {
+    DwcaNormalizer app = new DwcaNormalizer();
+    final List<String> phases = new ArrayList<String>();
+    app.listener = new NormalizerListener() {
+
+      @Override
+      public void groupInferred(LINNEAN_RANK rank, String group, int size, int sparse, int candidates, long micros) {
+      }
+
+      @Override
+      public void phaseCompleted(String phase, int classifications, long micros) {
+        phases.add(phase + " " + classifications);
+      }
+    };
+    List<DenormClassification> sample = sample();
+    app.read(sample, ExecutionMode.IN_MEMORY);
+    assertEquals(1, phases.size());
+    assertEquals("read " + sample.size(), phases.get(0));
+  }
+
+  /**
+   * @return The classifications of a merge fixture, each twice
+   */
+  private static List<DenormClassification> sample() throws IOException {
+    List<DenormClassification> sample = TestDataFactory.build("/data/taxonomy/merge/5_denorm.txt", false);
+    sample.addAll(TestDataFactory.build("/data/taxonomy/merge/5_denorm.txt", false));
+    return sample;
+  }
+}
@@ -0,0 +1,111 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.util.CSVReader;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FastNameTokenizerTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FastNameTokenizerTest.class);
+
+  @Test
+  public void testSimpleShapes() {
+    NameComponents nc = FastNameTokenizer.tokenize("Puma concolor");
+    assertEquals("Puma", nc.getGenus());
+    assertEquals("concolor", nc.getSpecificEpithet());
+    assertNull(nc.getInfraSpecificEpithet());
+    assertNull(nc.getAuthorship());
+    assertEquals("Puma concolor", nc.getFullName());
+
+    nc = FastNameTokenizer.tokenize("Aegithina tiphia subsp. cambodiana");
+    assertEquals("Aegithina", nc.getGenus());
+    assertEquals("tiphia", nc.getSpecificEpithet());
+    assertEquals("subsp.", nc.getRankMarker());
+    assertEquals("cambodiana", nc.getInfraSpecificEpithet());
+    assertNull(nc.getAuthorship());
+
+    nc = FastNameTokenizer.tokenize("Ochthoeca fumicolor ferruginea Zimmer, 1937");
+    assertEquals("ferruginea", nc.getInfraSpecificEpithet());
+    assertNull(nc.getRankMarker());
+    assertEquals("Zimmer, 1937", nc.getAuthorship());
+
+    nc = FastNameTokenizer.tokenize("Saltator maximus (Statius Muller, 1776)");
+    assertNull(nc.getInfraSpecificEpithet());
+    assertEquals("(Statius Muller, 1776)", nc.getAuthorship());
+
+    nc = FastNameTokenizer.tokenize("Serinus koliensis Grant & Mackworth-Praed, 1952");
+    assertEquals("Grant & Mackworth-Praed, 1952", nc.getAuthorship());
+    assertEquals("Serinus koliensis Grant & Mackworth-Praed, 1952", nc.getFullName());
+  }
+
+  @Test
+  public void testUnusualShapesFallBack() {
+    assertNull(FastNameTokenizer.tokenize(null));
+    assertNull(FastNameTokenizer.tokenize("Passeriformes"));
+    assertNull(FastNameTokenizer.tokenize("Cyanolanius Bonaparte, 1854"));
+    assertNull(FastNameTokenizer.tokenize("Puma  concolor"));
+    assertNull(FastNameTokenizer.tokenize("Puma concolor "));
+    assertNull(FastNameTokenizer.tokenize("Puma concolor L."));
+    assertNull(FastNameTokenizer.tokenize("Falcunculus whitei A.J. Campbell, 1910"));
+    assertNull(FastNameTokenizer.tokenize("Abies alba ssp. alba"));
+    assertNull(FastNameTokenizer.tokenize("Abies sp."));
+    assertNull(FastNameTokenizer.tokenize("Abies alba de Candolle"));
+    assertNull(FastNameTokenizer.tokenize("Abies alba Mill., 1768"));
+    assertNull(FastNameTokenizer.tokenize("Abies alba Miller, 17680"));
+    assertNull(FastNameTokenizer.tokenize("Salix ×rubens"));
+    assertNull(FastNameTokenizer.tokenize("RUBBISHICA-SUBSPECIES"));
+  }
+
+  /**
+   * Every name the fast path accepts must give exactly the same components as the NameParser.
+   */
+  @Test
+  public void testAgreesWithNameParser() throws IOException {
+    List<String> corpus = new ArrayList<String>();
+    File sample = new File("sample/passeriformes.csv");
+    if (sample.exists()) {
+      corpus.addAll(scientificNames(CSVReader.parse(new FileReader(sample))));
+    }
+    corpus.addAll(scientificNames(
+      CSVReader.parse(new InputStreamReader(getClass().getResourceAsStream("/data/resource167.txt"), "UTF-8"))));
+    assertTrue(corpus.size() > 1000);
+
+    int tokenized = 0;
+    for (String name : corpus) {
+      NameComponents fast = FastNameTokenizer.tokenize(name);
+      if (fast != null) {
+        tokenized++;
+        NameComponents parsed = NameInterpreter.parseWithParser(name);
+        assertNotNull("Parser could not handle: " + name, parsed);
+        assertEquals("Disagreement for: " + name, parsed, fast);
+      }
+    }
+    LOG.info("Fast path handled {} of {} names", tokenized, corpus.size());
+    assertTrue(tokenized > corpus.size() / 2);
+  }
+
+  private List<String> scientificNames(List<Map<String, String>> rows) {
+    List<String> names = new ArrayList<String>();
+    for (Map<String, String> row : rows) {
+      String name = row.containsKey("scientificName") ? row.get("scientificName") : row.get("scientificname");
+      if (name != null) {
+        names.add(name);
+      }
+    }
+    return names;
+  }
+}
@@ -0,0 +1,211 @@
+package org.gbif.taxonomy.norm;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class IngestPipelineTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Reads from lists, or fails after the given number of records.
+   */
+  private static class ListSource implements IngestPipeline.Source {
+
+    private final List<DenormClassification> classifications;
+    private final List<String> scientificNames;
+    private final int failAfter;
+    private int index;
+
+    private ListSource(List<DenormClassification> classifications, List<String> scientificNames, int failAfter) {
+      this.classifications = classifications;
+      this.scientificNames = scientificNames;
+      this.failAfter = failAfter;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return index < classifications.size();
+    }
+
+    @Override
+    public DenormClassification next() {
+      if (index == failAfter) {
+        throw new IllegalStateException("Unreadable record " + index);
+      }
+      return classifications.get(index++);
+    }
+
+    @Override
+    public String getScientificName() {
+      return scientificNames.get(index - 1);
+    }
+  }
+
+  /**
+   * Duplicates across batches are collapsed into the first with their payloads, and only the names of those kept are
+   * interpreted.
+   */
+  @Test
+  public void testDeduplicate() {
+    List<DenormClassification> classifications = new ArrayList<DenormClassification>();
+    List<String> scientificNames = new ArrayList<String>();
+    int records = IngestPipeline.BATCH_SIZE * 5 + 7;
+    for (int i = 0; i < records; i++) {
+      DenormClassification<Object> d =
+        new DenormClassification<Object>("Animalia", null, null, null, "Corvidae", null, null, null, null);
+      d.getPayloads().add(i);
+      classifications.add(d);
+      scientificNames.add("Corvus " + epithet(i % 100) + " L.");
+    }
+
+    IngestPipeline pipeline = new IngestPipeline(null, true, new NameInterpreter(2, 10), new NormalizerProgress());
+    List<DenormClassification> denorm = pipeline.run(new ListSource(classifications, scientificNames, -1));
+    assertEquals(records, pipeline.getRecords());
+    assertEquals(100, denorm.size());
+    for (int i = 0; i < denorm.size(); i++) {
+      DenormClassification d = denorm.get(i);
+      assertEquals("Corvus " + epithet(i) + " L.", d.getSpecies());
+      assertEquals("L.", d.getAuthor());
+      assertEquals(i, d.getPayloads().get(0));
+      assertEquals(records / 100 + (i < records % 100 ? 1 : 0), d.getPayloads().size());
+    }
+  }
+
+  /**
+   * Classifications are only collapsed if every value is the same, whatever the values hold.
+   */
+  @Test
+  public void testDeduplicateDistinct() {
+    List<DenormClassification> classifications = new ArrayList<DenormClassification>();
+    List<String> scientificNames = new ArrayList<String>();
+    // each pair alike when written out as text, and the pairs read twice, the second time collapsed
+    for (int i = 0; i < 2; i++) {
+      classifications.add(new DenormClassification("Animalia", "--", null, null, null, "Aus", null, null, null));
+      classifications.add(new DenormClassification("Animalia", null, null, null, null, "Aus", null, null, null));
+      classifications.add(new DenormClassification("Plantae", null, null, null, null, "Bus", null, "a|b", "c"));
+      classifications.add(new DenormClassification("Plantae", null, null, null, null, "Bus", null, "a", "b|c"));
+      classifications.add(new DenormClassification("Fungi", null, null, null, null, "Cus", null, null, "L.|Aus"));
+      classifications.add(new DenormClassification("Fungi", null, null, null, null, "Cus", null, null, "L."));
+      scientificNames.addAll(Arrays.asList(null, null, null, null, "x", "Aus|x"));
+    }
+
+    List<DenormClassification> denorm = new IngestPipeline(null, true, null, new NormalizerProgress())
+      .run(new ListSource(classifications, scientificNames, -1));
+    assertEquals(classifications.subList(0, 6), denorm);
+  }
+
+  /**
+   * Without deduplication or an interpreter every classification is kept as read, in order.
+   */
+  @Test
+  public void testPassThrough() {
+    List<DenormClassification> classifications = new ArrayList<DenormClassification>();
+    List<String> scientificNames = new ArrayList<String>();
+    for (int i = 0; i < 2500; i++) {
+      classifications.add(new DenormClassification("Plantae", null, null, null, null, "Rosa", null, null, null));
+      scientificNames.add(null);
+    }
+    NormalizerProgress progress = new NormalizerProgress();
+    List<DenormClassification> denorm =
+      new IngestPipeline(null, false, null, progress).run(new ListSource(classifications, scientificNames, -1));
+    assertEquals(classifications.size(), denorm.size());
+    for (int i = 0; i < denorm.size(); i++) {
+      assertEquals(classifications.get(i), denorm.get(i));
+      assertNull(denorm.get(i).getSpecies());
+    }
+    assertEquals(2500, progress.getRecordsRead());
+  }
+
+  /**
+   * A failure reading the source is thrown by the run rather than ending it early.
+   */
+  @Test
+  public void testFailure() {
+    List<DenormClassification> classifications = new ArrayList<DenormClassification>();
+    List<String> scientificNames = new ArrayList<String>();
+    for (int i = 0; i < 5000; i++) {
+      classifications.add(new DenormClassification("Plantae", null, null, null, null, "Rosa", null, null, null));
+      scientificNames.add(null);
+    }
+    try {
+      new IngestPipeline(null, true, null, new NormalizerProgress())
+        .run(new ListSource(classifications, scientificNames, 3210));
+      fail("The failure reading should be thrown");
+    } catch (IllegalStateException e) {
+      assertEquals("Unreadable record 3210", e.getMessage());
+    }
+  }
+
+  /**
+   * A failure in the deduplicating stage is thrown by the run, rather than leaving it waiting on a reader that is held
+   * back by the full buffer between them.
+   */
+  @Test(timeout = 60000)
+  public void testDeduplicatorFailure() throws IOException {
+    List<DenormClassification> classifications = new ArrayList<DenormClassification>();
+    List<String> scientificNames = new ArrayList<String>();
+    int records = IngestPipeline.BUFFER_CAPACITY * IngestPipeline.BATCH_SIZE * 3;
+    for (int i = 0; i < records; i++) {
+      classifications.add(new DenormClassification("Plantae", null, null, null, null, "Rosa" + i, null, null, null));
+      scientificNames.add(null);
+    }
+    // fails early, so the reader is soon held back by the buffer filling up behind it
+    NameDictionary dictionary = new NameDictionary(new File(folder.getRoot(), "names"), 64, 4096) {
+
+      private int count;
+
+      @Override
+      public void canonicalize(DenormClassification d) {
+        if (++count == 100) {
+          throw new IllegalStateException("Unusable dictionary");
+        }
+        super.canonicalize(d);
+      }
+    };
+    try {
+      new IngestPipeline(dictionary, true, null, new NormalizerProgress())
+        .run(new ListSource(classifications, scientificNames, -1));
+      fail("The failed dictionary should be thrown");
+    } catch (IllegalStateException e) {
+      assertEquals("Unusable dictionary", e.getMessage());
+    }
+  }
+
+  /**
+   * A dictionary too small to hold the names leaves the names not held as they are, rather than failing the read.
+   */
+  @Test
+  public void testFullDictionary() throws IOException {
+    List<DenormClassification> classifications = new ArrayList<DenormClassification>();
+    List<String> scientificNames = new ArrayList<String>();
+    for (int i = 0; i < 5000; i++) {
+      classifications.add(new DenormClassification("Plantae", null, null, null, null, "Rosa" + i, null, null, null));
+      scientificNames.add(null);
+    }
+    NameDictionary dictionary = new NameDictionary(new File(folder.getRoot(), "names"), 64, 4096);
+    List<DenormClassification> denorm = new IngestPipeline(dictionary, true, null, new NormalizerProgress())
+      .run(new ListSource(classifications, scientificNames, -1));
+    assertEquals(classifications.size(), denorm.size());
+    assertEquals(48, dictionary.size());
+    for (int i = 0; i < denorm.size(); i++) {
+      assertEquals("Rosa" + i, denorm.get(i).getGenus());
+    }
+  }
+
+  private static String epithet(int i) {
+    return "" + (char) ('a' + i / 10) + (char) ('a' + i % 10) + "ensis";
+  }
+}
@@ -0,0 +1,30 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LinneanRankTest {
+
+  @Test
+  public void testRanks() {
+    assertArrayEquals(new LINNEAN_RANK[] {}, LinneanRank.ranksHigherThan(LINNEAN_RANK.K, false));
+    assertArrayEquals(new LINNEAN_RANK[] {LINNEAN_RANK.K}, LinneanRank.ranksHigherThan(LINNEAN_RANK.K, true));
+    assertArrayEquals(new LINNEAN_RANK[] {LINNEAN_RANK.K, LINNEAN_RANK.P, LINNEAN_RANK.C, LINNEAN_RANK.O,
+      LINNEAN_RANK.F}, LinneanRank.ranksHigherThan(LINNEAN_RANK.G, false));
+    assertArrayEquals(LINNEAN_RANK.values(), LinneanRank.ranksHigherThan(LINNEAN_RANK.SS, true));
+
+    assertArrayEquals(LINNEAN_RANK.values(), LinneanRank.ranksLowerThan(LINNEAN_RANK.K, true));
+    assertArrayEquals(new LINNEAN_RANK[] {LINNEAN_RANK.S, LINNEAN_RANK.SS},
+      LinneanRank.ranksLowerThan(LINNEAN_RANK.G, false));
+    assertArrayEquals(new LINNEAN_RANK[] {LINNEAN_RANK.SS}, LinneanRank.ranksLowerThan(LINNEAN_RANK.SS, true));
+    assertArrayEquals(new LINNEAN_RANK[] {}, LinneanRank.ranksLowerThan(LINNEAN_RANK.SS, false));
+
+    assertTrue(LinneanRank.isHigherOrEqual(LINNEAN_RANK.K, LINNEAN_RANK.SS));
+    assertTrue(LinneanRank.isHigherOrEqual(LINNEAN_RANK.F, LINNEAN_RANK.F));
+    assertFalse(LinneanRank.isHigherOrEqual(LINNEAN_RANK.S, LINNEAN_RANK.G));
+  }
+}
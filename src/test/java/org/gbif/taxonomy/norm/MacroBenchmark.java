@@ -0,0 +1,368 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.DwcaNormalizer.FileConverter;
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.google.common.base.Throwables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Normalizes generated text files across a ladder of sizes and a set of data shapes, as the {@link DwcaNormalizer}
+ * does, recording for each run the wall time of each phase, the peak heap, the time spent in GC and the size of the
+ * output. The results are written as JSON, together with the slope of time and peak heap against the number of rows
+ * between neighbouring sizes on a log-log scale, so that a change in how a shape scales stands out when two result
+ * files are compared.
+ * <p/>
+ * The shapes are:
+ * <ul>
+ * <li>clean: every rank is given</li>
+ * <li>sparse: the ranks above the species are often missing</li>
+ * <li>homonyms: as sparse, with each genus name shared by genera of several families</li>
+ * <li>giant-genus: as clean, but half of the rows belong to one sparsely classified genus</li>
+ * </ul>
+ * The inputs are generated from a seed, and are kept in the work dir to be reused by later runs. The peak heap is the
+ * sum of the peaks of the heap pools, so may overstate the true peak slightly. A run that exhausts the heap is
+ * recorded as failed, and larger sizes of the shape are then skipped.
+ */
+public class MacroBenchmark {
+
+  /**
+   * The measures of one run.
+   */
+  private static final class Run {
+
+    private final String shape;
+    private final int rows;
+    private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+    private long wallMillis;
+    private long peakHeapBytes;
+    private long gcMillis;
+    private long gcCount;
+    private long outputBytes;
+    private int taxa;
+    private String error;
+
+    Run(String shape, int rows) {
+      this.shape = shape;
+      this.rows = rows;
+    }
+  }
+
+  public static final String[] SHAPES = {"clean", "sparse", "homonyms", "giant-genus"};
+
+  private static final Logger LOG = LoggerFactory.getLogger(MacroBenchmark.class);
+  private static final String HEADER = "kingdom\tphylum\tclass\torder\tfamily\tgenus\tspecies\tsubspecies\tauthor\n";
+  // the shape of the generated tree: the rows per species, and the children of a taxon of each rank from the kingdom
+  // down to the genus
+  private static final int ROWS_PER_SPECIES = 10;
+  private static final int[] CHILDREN = {6, 5, 5, 5, 6, 8};
+  private static final String GIANT_GENUS = "Giganteia";
+  private static final String[] SUFFIXES = {"ae", "phyta", "opsida", "ales", "idae", "ia"};
+  // the chance of a rank above the species missing in the sparse shapes, and of a subspecies
+  private static final double MISSING = 0.4;
+  private static final double SUBSPECIES = 0.1;
+  // the number of genera sharing each genus name in the homonyms shape
+  private static final int GENERA_PER_NAME = 10;
+
+  @Parameter(names = "-sizes", description = "Comma separated numbers of rows to normalize")
+  public String sizes = "1000000,10000000,100000000";
+
+  @Parameter(names = "-shapes", description = "Comma separated shapes of data: clean, sparse, homonyms, giant-genus")
+  public String shapes = "clean,sparse,homonyms,giant-genus";
+
+  @Parameter(names = "-mode", description = "Execution mode: IN_MEMORY, PARALLEL or DEDUPLICATED")
+  public String mode = ExecutionMode.DEDUPLICATED.name();
+
+  @Parameter(names = "-seed", description = "Seed of the generated data")
+  public long seed = 1;
+
+  @Parameter(names = "-workdir",
+    description = "Dir for the generated inputs and outputs (default = java.io.tmpdir/taxonomy-benchmark)",
+    converter = FileConverter.class)
+  public File workDir = new File(System.getProperty("java.io.tmpdir"), "taxonomy-benchmark");
+
+  @Parameter(names = "-output", description = "File to write the results to as JSON", converter = FileConverter.class)
+  public File outFile = new File("benchmark.json");
+
+  public static void main(String[] args) throws Exception {
+    MacroBenchmark app = new MacroBenchmark();
+    new JCommander(app, args);
+    app.run();
+  }
+
+  /**
+   * Writes a text file of generated classifications with a header row, as read by {@link DelimitedTextReader}.
+   *
+   * @param shape One of {@link #SHAPES}
+   * @param rows To write
+   * @param seed Of the generated values, so the same file is written again for the same arguments
+   * @param file To write
+   */
+  public static void generate(String shape, int rows, long seed, File file) throws IOException {
+    if (!Arrays.asList(SHAPES).contains(shape)) {
+      throw new IllegalArgumentException("Unknown shape: " + shape);
+    }
+    boolean sparse = "sparse".equals(shape) || "homonyms".equals(shape);
+    boolean homonyms = "homonyms".equals(shape);
+    boolean giant = "giant-genus".equals(shape);
+    int genusRank = CHILDREN.length - 1;
+    Random random = new Random(seed);
+    int species = Math.max(1, rows / ROWS_PER_SPECIES);
+    // genera far apart in the tree share a name in the homonyms shape
+    int genusNames = Math.max(1, species / CHILDREN[genusRank] / GENERA_PER_NAME);
+    Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    try {
+      writer.write(HEADER);
+      String[] values = new String[9];
+      int[] ids = new int[CHILDREN.length];
+      for (int i = 0; i < rows; i++) {
+        boolean inGiant = giant && random.nextBoolean();
+        // species are numbered so that consecutive ones share a genus, and consecutive genera a family and so on
+        int s = random.nextInt(species);
+        int id = inGiant ? 0 : s / CHILDREN[genusRank];
+        for (int r = genusRank; r >= 0; r--) {
+          ids[r] = id;
+          id = r > 0 ? id / CHILDREN[r - 1] : id;
+        }
+        String genus = inGiant ? GIANT_GENUS
+          : word(homonyms ? ids[genusRank] % genusNames : ids[genusRank], true) + SUFFIXES[genusRank];
+        for (int r = 0; r < genusRank; r++) {
+          values[r] = (sparse || inGiant) && random.nextDouble() < MISSING ? null : word(ids[r], true) + SUFFIXES[r];
+        }
+        // the genus is still in the species name when missing, from which it is inferred
+        values[genusRank] = (sparse || inGiant) && random.nextDouble() < MISSING ? null : genus;
+        values[6] = genus + ' ' + word(s, false) + "us";
+        values[7] = random.nextDouble() < SUBSPECIES ? values[6] + ' ' + word(random.nextInt(4), false) + "a" : null;
+        values[8] = random.nextInt(3) == 0 ? null : word(s % 50, true) + ", " + (1750 + s % 250);
+        for (int v = 0; v < values.length; v++) {
+          if (v > 0) {
+            writer.write('\t');
+          }
+          if (values[v] != null) {
+            writer.write(values[v]);
+          }
+        }
+        writer.write('\n');
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Runs the benchmarks and writes the results.
+   *
+   * @return The number of runs that failed
+   */
+  public int run() throws IOException {
+    workDir.mkdirs();
+    ExecutionMode executionMode = ExecutionMode.valueOf(mode.toUpperCase());
+    List<Run> runs = new ArrayList<Run>();
+    int failed = 0;
+    for (String shape : shapes.split(",")) {
+      shape = shape.trim();
+      for (String size : sizes.split(",")) {
+        Run run = new Run(shape, Integer.parseInt(size.trim()));
+        File input = new File(workDir, shape + '-' + run.rows + '-' + seed + ".txt");
+        if (!input.exists()) {
+          LOG.info("Generating {} rows of shape {} into {}", new Object[] {run.rows, shape, input});
+          generate(shape, run.rows, seed, input);
+        }
+        measure(run, input, new File(workDir, shape + '-' + run.rows + "-normalized.txt"), executionMode);
+        runs.add(run);
+        if (run.error != null) {
+          failed++;
+          LOG.warn("Skipping larger sizes of shape {} after a failed run", shape);
+          break;
+        }
+      }
+    }
+    write(runs, executionMode);
+    LOG.info("Wrote the results of {} runs to {}", runs.size(), outFile.getAbsolutePath());
+    return failed;
+  }
+
+  private static long gcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0, gc.getCollectionCount());
+    }
+    return count;
+  }
+
+  private static long gcMillis() {
+    long millis = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      millis += Math.max(0, gc.getCollectionTime());
+    }
+    return millis;
+  }
+
+  private static String json(String value) {
+    return value == null ? "null" : '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+  }
+
+  /**
+   * Normalizes the input as the {@link DwcaNormalizer} does for a text file in the mode, recording the measures.
+   */
+  private static void measure(final Run run, File input, File output, ExecutionMode executionMode) {
+    LOG.info("Normalizing {} rows of shape {}", run.rows, run.shape);
+    System.gc();
+    List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+        pool.resetPeakUsage();
+        pools.add(pool);
+      }
+    }
+    long gcMillis = gcMillis();
+    long gcCount = gcCount();
+    long start = System.currentTimeMillis();
+
+    DwcaNormalizer app = new DwcaNormalizer();
+    app.textFile = input;
+    app.listener = new NormalizerListener() {
+
+      @Override
+      public void groupInferred(LINNEAN_RANK rank, String group, int size, int sparse, int candidates, long micros) {
+        // the phases are enough to compare runs
+      }
+
+      @Override
+      public void phaseCompleted(String phase, int classifications, long micros) {
+        run.phases.put(phase, micros / 1000);
+      }
+    };
+    try {
+      List<DenormClassification> denorm = app.read(executionMode);
+      final DwcaNormalizer.TaxonWriter writer = new DwcaNormalizer.TaxonWriter(output);
+      try {
+        app.normalize(denorm, executionMode, new NormClassificationSink() {
+
+          @Override
+          public void accept(NormClassification taxon) {
+            writer.accept(taxon);
+            run.taxa++;
+          }
+        });
+      } finally {
+        writer.close();
+      }
+    } catch (OutOfMemoryError e) {
+      run.error = "OutOfMemoryError";
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+
+    run.wallMillis = System.currentTimeMillis() - start;
+    for (MemoryPoolMXBean pool : pools) {
+      run.peakHeapBytes += pool.getPeakUsage().getUsed();
+    }
+    run.gcMillis = gcMillis() - gcMillis;
+    run.gcCount = gcCount() - gcCount;
+    run.outputBytes = output.length();
+    LOG.info("Normalized {} rows of shape {} into {} taxa in {} ms with a peak heap of {} MB", new Object[] {run.rows,
+      run.shape, run.taxa, run.wallMillis, run.peakHeapBytes / (1024 * 1024)});
+  }
+
+  /**
+   * @return The exponent b in y = a * x^b through both points
+   */
+  private static double slope(double x1, double y1, double x2, double y2) {
+    return Math.log(Math.max(1, y2) / Math.max(1, y1)) / Math.log(x2 / x1);
+  }
+
+  /**
+   * @return A pronounceable word unique to the number, capitalized if asked
+   */
+  private static String word(int n, boolean capital) {
+    String consonants = "bcdfglmnprstv";
+    String vowels = "aeiou";
+    StringBuilder sb = new StringBuilder();
+    do {
+      sb.append(consonants.charAt(n % consonants.length()));
+      n /= consonants.length();
+      sb.append(vowels.charAt(n % vowels.length()));
+      n /= vowels.length();
+    } while (n > 0);
+    if (capital) {
+      sb.setCharAt(0, Character.toUpperCase(sb.charAt(0)));
+    }
+    return sb.toString();
+  }
+
+  private void write(List<Run> runs, ExecutionMode executionMode) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    sb.append("{\n");
+    sb.append("  \"java\": ").append(json(System.getProperty("java.version"))).append(",\n");
+    sb.append("  \"maxHeapBytes\": ").append(Runtime.getRuntime().maxMemory()).append(",\n");
+    sb.append("  \"processors\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+    sb.append("  \"mode\": ").append(json(executionMode.name())).append(",\n");
+    sb.append("  \"seed\": ").append(seed).append(",\n");
+    sb.append("  \"runs\": [");
+    for (int i = 0; i < runs.size(); i++) {
+      Run run = runs.get(i);
+      sb.append(i == 0 ? "\n" : ",\n");
+      sb.append("    {\"shape\": ").append(json(run.shape)).append(", \"rows\": ").append(run.rows);
+      sb.append(", \"error\": ").append(json(run.error));
+      sb.append(", \"taxa\": ").append(run.taxa).append(", \"outputBytes\": ").append(run.outputBytes);
+      sb.append(", \"wallMillis\": ").append(run.wallMillis).append(", \"peakHeapBytes\": ").append(run.peakHeapBytes);
+      sb.append(", \"gcMillis\": ").append(run.gcMillis).append(", \"gcCount\": ").append(run.gcCount);
+      sb.append(", \"phases\": {");
+      boolean first = true;
+      for (Map.Entry<String, Long> phase : run.phases.entrySet()) {
+        sb.append(first ? "" : ", ").append(json(phase.getKey())).append(": ").append(phase.getValue());
+        first = false;
+      }
+      sb.append("}}");
+    }
+    sb.append("\n  ],\n");
+
+    // the slopes between neighbouring sizes of each shape that both completed
+    sb.append("  \"slopes\": [");
+    boolean first = true;
+    for (int i = 1; i < runs.size(); i++) {
+      Run from = runs.get(i - 1);
+      Run to = runs.get(i);
+      if (from.shape.equals(to.shape) && from.error == null && to.error == null && from.rows != to.rows) {
+        sb.append(first ? "\n" : ",\n");
+        sb.append("    {\"shape\": ").append(json(to.shape)).append(", \"fromRows\": ").append(from.rows);
+        sb.append(", \"toRows\": ").append(to.rows);
+        sb.append(String.format(Locale.ENGLISH, ", \"wallSlope\": %.3f",
+          slope(from.rows, from.wallMillis, to.rows, to.wallMillis)));
+        sb.append(String.format(Locale.ENGLISH, ", \"peakHeapSlope\": %.3f}",
+          slope(from.rows, from.peakHeapBytes, to.rows, to.peakHeapBytes)));
+        first = false;
+      }
+    }
+    sb.append("\n  ]\n}\n");
+
+    Writer writer = new OutputStreamWriter(new FileOutputStream(outFile), "UTF-8");
+    try {
+      writer.write(sb.toString());
+    } finally {
+      writer.close();
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package org.gbif.taxonomy.norm;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MacroBenchmarkTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testGenerate() throws IOException {
+    for (String shape : MacroBenchmark.SHAPES) {
+      File first = folder.newFile();
+      File second = folder.newFile();
+      MacroBenchmark.generate(shape, 500, 3, first);
+      MacroBenchmark.generate(shape, 500, 3, second);
+      assertEquals(501, Files.readLines(first, Charsets.UTF_8).size());
+      assertTrue(Files.equal(first, second));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownShape() throws IOException {
+    MacroBenchmark.generate("tidy", 10, 1, folder.newFile());
+  }
+
+  @Test
+  public void testRun() throws IOException {
+    MacroBenchmark benchmark = new MacroBenchmark();
+    benchmark.sizes = "200,400";
+    benchmark.shapes = "sparse,giant-genus";
+    benchmark.mode = "in_memory";
+    benchmark.workDir = folder.newFolder("work");
+    benchmark.outFile = new File(folder.getRoot(), "results.json");
+    assertEquals(0, benchmark.run());
+
+    String json = Files.toString(benchmark.outFile, Charsets.UTF_8);
+    assertTrue(json.contains("\"shape\": \"giant-genus\", \"rows\": 400, \"error\": null"));
+    assertTrue(json.contains("\"merge-SS\": "));
+    assertTrue(json.contains("\"build\": "));
+    assertTrue(json.contains("{\"shape\": \"sparse\", \"fromRows\": 200, \"toRows\": 400, \"wallSlope\": "));
+  }
+}
@@ -0,0 +1,135 @@
+package org.gbif.taxonomy.norm;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class NameDictionaryTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testIds() throws IOException {
+    NameDictionary dictionary = new NameDictionary(new File(folder.getRoot(), "names"), 64, 4096);
+    int animalia = dictionary.id("Animalia");
+    int chordata = dictionary.id("Chordata");
+    assertEquals(animalia, dictionary.id("Animalia"));
+    assertEquals(chordata, dictionary.lookup("Chordata"));
+    assertEquals(-1, dictionary.lookup("Plantae"));
+    assertEquals("Animalia", dictionary.name(animalia));
+    assertEquals("Rüppell", dictionary.name(dictionary.id("Rüppell")));
+    assertEquals(3, dictionary.size());
+  }
+
+  @Test
+  public void testCanonical() throws IOException {
+    NameDictionary dictionary = new NameDictionary(new File(folder.getRoot(), "names"), 64, 4096);
+    String a = new String("Puma concolor");
+    String b = new String("Puma concolor");
+    assertNotSame(a, b);
+    assertSame(a, dictionary.canonical(a));
+    assertSame(a, dictionary.canonical(b));
+
+    DenormClassification d = new DenormClassification("Animalia", null, null, null, null, "Puma",
+      new String("Puma concolor"), null, null);
+    dictionary.canonicalize(d);
+    assertSame(a, d.getSpecies());
+    assertEquals(null, d.getPhylum());
+  }
+
+  /**
+   * A second run, or another process, sees the names appended by the first.
+   */
+  @Test
+  public void testSharedAcrossRuns() throws IOException {
+    File file = new File(folder.getRoot(), "names");
+    NameDictionary first = new NameDictionary(file, 64, 4096);
+    int id = first.id("Animalia");
+
+    // the capacity of an existing file is kept
+    NameDictionary second = new NameDictionary(file, 1024, 1 << 20);
+    assertEquals(id, second.lookup("Animalia"));
+    assertEquals(id, second.id("Animalia"));
+    int plantae = second.id("Plantae");
+    assertEquals(plantae, first.lookup("Plantae"));
+    assertEquals("Plantae", first.name(plantae));
+    assertEquals(2, first.size());
+  }
+
+  /**
+   * Once full, the names held are still found and new names are passed through as they are.
+   */
+  @Test
+  public void testFull() throws IOException {
+    NameDictionary dictionary = new NameDictionary(new File(folder.getRoot(), "names"), 8, 4096);
+    int[] ids = new int[6];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = dictionary.id("name" + i);
+    }
+    assertEquals(-1, dictionary.id("name6"));
+    assertEquals(-1, dictionary.lookup("name6"));
+    String name = new String("name7");
+    assertSame(name, dictionary.canonical(name));
+    assertEquals(6, dictionary.size());
+    for (int i = 0; i < ids.length; i++) {
+      assertEquals(ids[i], dictionary.id("name" + i));
+      assertEquals("name" + i, dictionary.name(ids[i]));
+    }
+
+    // the data region fills up as well as the table
+    dictionary = new NameDictionary(new File(folder.getRoot(), "long names"), 64, 64);
+    String[] names = {"Animalia Linnaeus 1758", "Chordata Haeckel 1874", "Aves Linnaeus 1758", "Passeriformes"};
+    for (String n : names) {
+      dictionary.canonical(n);
+    }
+    assertEquals(2, dictionary.size());
+    DenormClassification d = new DenormClassification(names[0], names[1], names[2], names[3], null, null, null,
+      null, null);
+    dictionary.canonicalize(d);
+    assertEquals(names[3], d.getOrder());
+    assertEquals(dictionary.lookup(names[1]), dictionary.id(new String(names[1])));
+  }
+
+  @Test
+  public void testConcurrent() throws Exception {
+    final NameDictionary dictionary = new NameDictionary(new File(folder.getRoot(), "names"), 4096, 1 << 16);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<int[]>> results = new ArrayList<Future<int[]>>();
+    for (int t = 0; t < 4; t++) {
+      results.add(executor.submit(new Callable<int[]>() {
+
+        @Override
+        public int[] call() {
+          int[] ids = new int[500];
+          for (int i = 0; i < ids.length; i++) {
+            ids[i] = dictionary.id("Genus" + i);
+          }
+          return ids;
+        }
+      }));
+    }
+    int[] expected = results.get(0).get();
+    for (Future<int[]> result : results) {
+      int[] ids = result.get();
+      for (int i = 0; i < ids.length; i++) {
+        assertEquals(expected[i], ids[i]);
+        assertEquals("Genus" + i, dictionary.name(ids[i]));
+      }
+    }
+    executor.shutdown();
+    assertEquals(500, dictionary.size());
+  }
+}
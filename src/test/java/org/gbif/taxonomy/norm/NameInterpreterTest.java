@@ -0,0 +1,116 @@
+package org.gbif.taxonomy.norm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NameInterpreterTest {
+
+  /**
+   * Batches are deliberately tiny so that the records are spread across all the workers.
+   */
+  @Test
+  public void testParallelMatchesSequential() {
+    NameInterpreter sequential = new NameInterpreter(1, NameInterpreter.DEFAULT_BATCH_SIZE);
+    NameInterpreter parallel = new NameInterpreter(4, 3);
+    try {
+      List<DenormClassification> expected = buildSparse(100);
+      List<DenormClassification> found = buildSparse(100);
+
+      sequential.inferSpecies(expected);
+      sequential.inferGenera(expected);
+      parallel.inferSpecies(found);
+      parallel.inferGenera(found);
+
+      assertEquals(expected.size(), found.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals(expected.get(i).toString(), found.get(i).toString());
+      }
+      assertEquals("Gus dus", found.get(3).getSpecies());
+      assertEquals("Gus", found.get(3).getGenus());
+    } finally {
+      sequential.shutdown();
+      parallel.shutdown();
+    }
+  }
+
+  @Test
+  public void testInterpretScientificNames() {
+    NameInterpreter parallel = new NameInterpreter(2, 1);
+    try {
+      List<DenormClassification> list = new ArrayList<DenormClassification>();
+      List<String> scientificNames = new ArrayList<String>();
+      list.add(new DenormClassification("a", "b", "c", "d", "e", "Puma", null, null, null));
+      scientificNames.add("Puma concolor Linneaus, 1771");
+      list.add(new DenormClassification("a", "b", "c", "d", "e", "Puma", null, null, "L."));
+      scientificNames.add(null);
+
+      parallel.interpretScientificNames(list, scientificNames);
+      assertEquals("Puma concolor Linneaus, 1771", list.get(0).getSpecies());
+      assertEquals("Linneaus, 1771", list.get(0).getAuthor());
+      assertNull(list.get(0).getSubspecies());
+      assertNull(list.get(1).getSpecies());
+      assertEquals("L.", list.get(1).getAuthor());
+    } finally {
+      parallel.shutdown();
+    }
+  }
+
+  /**
+   * The components from interpreting the scientific name must be reused by the later inference steps.
+   */
+  @Test
+  public void testParsedOnce() {
+    NameInterpreter interpreter = new NameInterpreter(1, NameInterpreter.DEFAULT_BATCH_SIZE);
+    List<DenormClassification> list = new ArrayList<DenormClassification>();
+    list.add(new DenormClassification("a", "b", "c", "d", "e", null, null, null, null));
+
+    List<String> scientificNames = new ArrayList<String>();
+    scientificNames.add("Aegithina tiphia subsp. cambodiana");
+    interpreter.interpretScientificNames(list, scientificNames);
+    DenormClassification d = list.get(0);
+    NameComponents parsed = d.getParsedName();
+    assertEquals("Aegithina tiphia subsp. cambodiana", d.getSubspecies());
+    assertTrue(parsed.describes(d.getSubspecies()));
+
+    interpreter.inferSpecies(list);
+    assertEquals("Aegithina tiphia", d.getSpecies());
+    assertSame(parsed, d.getParsedName());
+
+    interpreter.inferGenera(list);
+    assertEquals("Aegithina", d.getGenus());
+    assertSame(parsed, d.getParsedName());
+
+    // components that no longer describe the value are not trusted
+    d.setGenus(null);
+    d.setSpecies("Puma concolor");
+    interpreter.inferGenera(list);
+    assertEquals("Puma", d.getGenus());
+    assertFalse(parsed.describes(d.getSpecies()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInterpretScientificNamesSizeMismatch() {
+    List<DenormClassification> list = new ArrayList<DenormClassification>();
+    list.add(new DenormClassification());
+    NameInterpreter.getDefault().interpretScientificNames(list, new ArrayList<String>());
+  }
+
+  private List<DenormClassification> buildSparse(int size) {
+    List<DenormClassification> list = new ArrayList<DenormClassification>();
+    for (int i = 0; i < size; i++) {
+      list.add(new DenormClassification("a", "b", "c", "d", "e", null, null, "Gus " + epithet(i) + " eus", "i"));
+    }
+    return list;
+  }
+
+  private String epithet(int i) {
+    return i % 2 == 0 ? "aus" : "dus";
+  }
+}
@@ -0,0 +1,104 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class NormalizerEventLogTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * The phases of each pass and the groups large enough are recorded, with those too small left out.
+   */
+  @Test
+  public void testEvents() throws IOException {
+    List<DenormClassification> denorm = new ArrayList<DenormClassification>();
+    for (int i = 0; i < Normalizer.GROUP_EVENT_SIZE; i++) {
+      // one large genus, half of it without a family, and a small one
+      denorm.add(new DenormClassification("Animalia", null, null, null, i % 2 == 0 ? "Corvidae" : null, "Corvus",
+        "Corvus s" + i, null, null));
+    }
+    denorm.add(new DenormClassification("Animalia", null, null, null, "Paridae", "Parus", "Parus major", null, null));
+    denorm.add(new DenormClassification("Animalia", null, null, null, null, "Parus", "Parus minor", null, null));
+
+    File file = folder.newFile("events.txt");
+    NormalizerEventLog log = new NormalizerEventLog(file);
+    Normalizer normalizer = new Normalizer();
+    normalizer.setMergeStrategy(MergeStrategy.SORT);
+    normalizer.setNameInterpreter(new NameInterpreter(1, NameInterpreter.DEFAULT_BATCH_SIZE));
+    normalizer.setListener(log);
+    normalizer.normalize(denorm);
+    log.close();
+
+    List<String[]> rows = new ArrayList<String[]>();
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    try {
+      assertEquals("startMillis\tmicros\tevent\tname\tclassifications\tsparse\tcandidates", reader.readLine());
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        String[] row = line.split("\t", -1);
+        assertEquals(7, row.length);
+        rows.add(row);
+      }
+    } finally {
+      reader.close();
+    }
+
+    List<String> phases = new ArrayList<String>();
+    Map<String, Long> starts = new HashMap<String, Long>();
+    List<String[]> groups = new ArrayList<String[]>();
+    for (String[] row : rows) {
+      assertTrue(Long.parseLong(row[0]) >= 0);
+      assertTrue(Long.parseLong(row[1]) >= 0);
+      if ("phase".equals(row[2])) {
+        phases.add(row[3]);
+        starts.put(row[3], Long.parseLong(row[0]));
+      } else {
+        assertEquals("group", row[2]);
+        groups.add(row);
+      }
+    }
+    assertEquals("infer", phases.get(0));
+    assertTrue(phases.contains("merge-G-sort"));
+    assertTrue(phases.contains("merge-G-infer"));
+    assertTrue(phases.contains("merge-G-duplicates"));
+    assertTrue(phases.indexOf("merge-G-duplicates") < phases.indexOf("merge-G"));
+    assertTrue(phases.contains("merge-K"));
+    assertEquals("build", phases.get(phases.size() - 1));
+    // a pass starts before its sort, and its parts follow each other
+    assertTrue(starts.get("merge-G") <= starts.get("merge-G-sort"));
+    assertTrue(starts.get("merge-G-sort") <= starts.get("merge-G-infer"));
+    assertTrue(starts.get("merge-G-infer") <= starts.get("merge-G-duplicates"));
+    assertTrue(starts.get("merge-G-duplicates") <= starts.get("merge-F"));
+
+    // the large genus is reported with the missing families and the single family to infer them from, but the small
+    // genus is not
+    String[] corvus = null;
+    for (String[] group : groups) {
+      assertTrue(Integer.parseInt(group[4]) >= Normalizer.GROUP_EVENT_SIZE);
+      if ((LINNEAN_RANK.G + ":Corvus").equals(group[3])) {
+        corvus = group;
+      }
+    }
+    assertNotNull(corvus);
+    assertEquals(String.valueOf(Normalizer.GROUP_EVENT_SIZE), corvus[4]);
+    assertTrue(Integer.parseInt(corvus[5]) >= Normalizer.GROUP_EVENT_SIZE / 2);
+    assertTrue(Integer.parseInt(corvus[6]) >= 1);
+  }
+}
@@ -0,0 +1,87 @@
+package org.gbif.taxonomy.norm;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NormalizerProgressTest {
+
+  /**
+   * The counts follow the normalization: a family inferred, a homonym found and every group of each pass processed.
+   */
+  @Test
+  public void testProgress() {
+    List<DenormClassification> denorm = new ArrayList<DenormClassification>();
+    denorm.add(new DenormClassification("Animalia", null, null, null, "Corvidae", "Corvus", "Corvus corax", null,
+      null));
+    denorm.add(new DenormClassification("Animalia", null, null, null, null, "Corvus", "Corvus corone", null, null));
+    // a genus in two families cannot give either to a classification without one
+    denorm.add(new DenormClassification("Plantae", null, null, null, "Rosaceae", "Aus", "Aus alba", null, null));
+    denorm.add(new DenormClassification("Plantae", null, null, null, "Paridae", "Aus", "Aus nigra", null, null));
+    denorm.add(new DenormClassification("Plantae", null, null, null, null, "Aus", "Aus minor", null, null));
+
+    NormalizerProgress progress = new NormalizerProgress();
+    Normalizer normalizer = new Normalizer();
+    normalizer.setNameInterpreter(new NameInterpreter(1, NameInterpreter.DEFAULT_BATCH_SIZE));
+    normalizer.setProgress(progress);
+    normalizer.normalize(denorm);
+
+    assertEquals("build", progress.getPhase());
+    assertNull(progress.getRank());
+    assertEquals(LinneanRank.LINNEAN_RANK.values().length, progress.getPassesCompleted());
+    assertEquals(1, progress.getInferences());
+    assertEquals(1, progress.getHomonyms());
+    // the last pass is at the kingdom
+    assertEquals(2, progress.getGroupsTotal());
+    assertEquals(2, progress.getGroupsProcessed());
+    assertEquals(-1, progress.getPhaseSecondsRemaining());
+  }
+
+  /**
+   * Reading reports each record, from which a rate and an estimate are given while the total is known.
+   */
+  @Test
+  public void testRate() throws InterruptedException {
+    NormalizerProgress progress = new NormalizerProgress();
+    progress.phaseStarted("merge-G-infer", 100, 100);
+    progress.groupProcessed(25);
+    Thread.sleep(50);
+    assertEquals(1, progress.getGroupsProcessed());
+    assertTrue(progress.getRecordsPerSecond() > 0);
+    assertTrue(progress.getPhaseSecondsRemaining() >= 0);
+
+    progress.phaseStarted("read", 0, 0);
+    progress.recordRead();
+    progress.recordRead();
+    assertEquals(2, progress.getRecordsRead());
+    assertEquals(-1, progress.getPhaseSecondsRemaining());
+    assertEquals(0, progress.getSecondsSinceProgress());
+  }
+
+  @Test
+  public void testRegister() throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("org.gbif.taxonomy.norm:type=NormalizerProgress,name=" + ObjectName.quote("test"));
+    NormalizerProgress progress = new NormalizerProgress();
+    progress.register("test");
+    try {
+      progress.phaseStarted("read", 0, 0);
+      progress.recordRead();
+      assertEquals("read", server.getAttribute(name, "Phase"));
+      assertEquals(1L, server.getAttribute(name, "RecordsRead"));
+    } finally {
+      progress.unregister();
+    }
+    assertFalse(server.isRegistered(name));
+  }
+}
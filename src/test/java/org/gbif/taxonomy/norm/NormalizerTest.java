@@ -11,8 +11,10 @@ import org.gbif.taxonomy.norm.util.TestDataFactory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Test;
@@ -243,6 +245,102 @@ public class NormalizerTest {
     assertEquals(3, results.get(3).getPayloads().get(0));
   }
 
+  /**
+   * Taxa streamed to a sink must arrive in id order, parents first, and already hold the author and payloads set by
+   * later classifications.
+   */
+  @Test
+  public void testStreamed() {
+    List<DenormClassification> input = new ArrayList<DenormClassification>();
+    input.add(new DenormClassification("Chromista", null, null, null, null, null, "Achnanthes austriaca", null, "Tim"));
+    input.add(new DenormClassification("Chromista", null, null, null, null, null, null,
+      "Achnanthes austriaca var. parallela Krasske", null));
+    input.add(new DenormClassification("Chromista", null, null, null, null, "Puma", "Puma concolor", null, null));
+    input.get(0).getPayloads().add(new Integer(1));
+
+    final List<NormClassification> streamed = new ArrayList<NormClassification>();
+    final List<String> asReceived = new ArrayList<String>();
+    new Normalizer().normalize(input, new NormClassificationSink() {
+
+      @Override
+      public void accept(NormClassification taxon) {
+        streamed.add(taxon);
+        asReceived.add(taxon.toString() + taxon.getPayloads());
+      }
+    });
+
+    assertEquals(6, streamed.size());
+    Set<Integer> received = new HashSet<Integer>();
+    for (int i = 0; i < streamed.size(); i++) {
+      NormClassification taxon = streamed.get(i);
+      assertEquals(i + 1, taxon.getId().intValue());
+      assertTrue(taxon.getParentId() == null || received.contains(taxon.getParentId()));
+      received.add(taxon.getId());
+      assertEquals(taxon.toString() + taxon.getPayloads(), asReceived.get(i));
+    }
+    assertEquals("Achnanthes austriaca", streamed.get(2).getScientificName());
+    assertEquals("Tim", streamed.get(2).getAuthor());
+    assertEquals(1, streamed.get(2).getPayloads().size());
+
+    // the same tree as returned whole
+    List<DenormClassification> again = new ArrayList<DenormClassification>();
+    for (DenormClassification d : input) {
+      again.add(new DenormClassification(d.getKingdom(), d.getPhylum(), d.getKlass(), d.getOrder(), d.getFamily(),
+        d.getGenus(), d.getSpecies(), d.getSubspecies(), d.getAuthor()));
+    }
+    assertEquivalent(new Normalizer().normalize(again), streamed);
+  }
+
+
+  /**
+   * Passes that hash must make the same merges as those that sort, on the merge examples and on random
+   * classifications with many holes and homonyms.
+   */
+  @Test
+  public void testHashAndMerge() throws IOException {
+    int test = 1;
+    while (getClass().getResourceAsStream("/data/taxonomy/merge/" + test + "_denorm.txt") != null) {
+      String file = "/data/taxonomy/merge/" + test + "_denorm.txt";
+      assertSameMerges(TestDataFactory.build(file, false), TestDataFactory.build(file, false));
+      test++;
+    }
+
+    Random random = new Random(42);
+    List<DenormClassification> sorted = new ArrayList<DenormClassification>();
+    List<DenormClassification> hashed = new ArrayList<DenormClassification>();
+    for (int i = 0; i < 2000; i++) {
+      String[] values = new String[9];
+      for (int r = 0; r < 6; r++) {
+        values[r] = random.nextInt(3) == 0 ? null : "r" + r + "v" + random.nextInt(3);
+      }
+      values[6] = random.nextInt(4) == 0 ? null : "s" + random.nextInt(8);
+      values[7] = random.nextBoolean() ? null : "ss" + random.nextInt(4);
+      values[8] = random.nextBoolean() ? null : "a" + random.nextInt(2);
+      sorted.add(new DenormClassification(values[0], values[1], values[2], values[3], values[4], values[5], values[6],
+        values[7], values[8]));
+      hashed.add(new DenormClassification(values[0], values[1], values[2], values[3], values[4], values[5], values[6],
+        values[7], values[8]));
+      sorted.get(i).getPayloads().add(i);
+      hashed.get(i).getPayloads().add(i);
+    }
+    assertSameMerges(sorted, hashed);
+  }
+
+  /**
+   * A tree built in partitions across threads must have the ids and parent links of one built on a single thread.
+   */
+  @Test
+  public void testParallelBuild() {
+    Normalizer sequential = new Normalizer();
+    Normalizer parallel = new Normalizer();
+    parallel.setBuildThreads(4);
+    List<NormClassification> expected = sequential.normalize(parallelBuildInput());
+    List<NormClassification> found = parallel.normalize(parallelBuildInput());
+    assertEquivalent(expected, found);
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getPayloads(), found.get(i).getPayloads());
+    }
+  }
 
   // Tests all the taxonomy merges using the file based inputs and outputs
   @Test
@@ -284,6 +382,49 @@ public class NormalizerTest {
   }
 
 
+  // classifications over many kingdoms and phyla, some missing and some differing only in the author below them
+  private List<DenormClassification> parallelBuildInput() {
+    Random random = new Random(7);
+    List<DenormClassification> denorm = new ArrayList<DenormClassification>();
+    for (int i = 0; i < 20000; i++) {
+      String kingdom = random.nextInt(8) == 0 ? null : "k" + random.nextInt(3);
+      String phylum = random.nextInt(4) == 0 ? null : "p" + random.nextInt(30);
+      String genus = random.nextInt(5) == 0 ? null : "G" + random.nextInt(200);
+      String species = random.nextInt(3) == 0 ? null : "S" + random.nextInt(40) + " s";
+      String subspecies = species == null || random.nextBoolean() ? null : species + random.nextInt(3);
+      String author = random.nextInt(3) == 0 ? null : "a" + random.nextInt(2);
+      if (random.nextInt(200) == 0) {
+        genus = null;
+        species = null;
+        subspecies = null;
+        phylum = random.nextBoolean() ? null : phylum;
+      }
+      denorm.add(new DenormClassification(kingdom, phylum, null, null, random.nextBoolean() ? null : "f" + genus,
+        genus, species, subspecies, author));
+      denorm.get(i).getPayloads().add(i);
+    }
+    return denorm;
+  }
+
+  // runs all the passes sorting over one copy and hashing over another, and checks they agree
+  private void assertSameMerges(List<DenormClassification> sorted, List<DenormClassification> hashed) {
+    Normalizer n = new Normalizer();
+    Map<LINNEAN_RANK, Set<String>> sortedHomonyms = n.createHomonymCache();
+    Map<LINNEAN_RANK, Set<String>> hashedHomonyms = n.createHomonymCache();
+    LINNEAN_RANK[] ranks = LINNEAN_RANK.values();
+    for (int i = ranks.length - 1; i >= 0; i--) {
+      n.sortAndMerge(ranks[i], sorted, sortedHomonyms);
+      n.hashAndMerge(ranks[i], hashed, hashedHomonyms);
+      assertEquals(sortedHomonyms, hashedHomonyms);
+    }
+    Collections.sort(sorted, DenormClassificationUtils.FULL_COMPARATOR);
+    Collections.sort(hashed, DenormClassificationUtils.FULL_COMPARATOR);
+    assertEquivalent(sorted, hashed);
+    for (int i = 0; i < sorted.size(); i++) {
+      assertEquals(new HashSet<Object>(sorted.get(i).getPayloads()), new HashSet<Object>(hashed.get(i).getPayloads()));
+    }
+  }
+
   // utility to check line by line the classifications
   private void assertEquivalent(List<? extends Object> expected, List<? extends Object> found) {
     assertTrue(expected.size() <= found.size());
@@ -0,0 +1,308 @@
+package org.gbif.taxonomy.norm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelGzipInputStreamTest {
+
+  private static final int SEGMENT_SIZE = 4096;
+
+  /**
+   * Block gzip is cut at the block boundaries given in the headers, including the empty block ending the file.
+   */
+  @Test
+  public void testBlocks() throws IOException {
+    byte[] text = text(200000, 1);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int i = 0; i < text.length; i += 10000) {
+      out.write(block(Arrays.copyOfRange(text, i, Math.min(text.length, i + 10000))));
+    }
+    out.write(block(new byte[0]));
+    assertArrayEquals(text, inflate(out.toByteArray(), 4));
+  }
+
+  /**
+   * Members stored without compression hold the text as it is, so bytes that read as a gzip header within them are
+   * wrongly guessed to start members, and a member that runs past them must still be read whole.
+   */
+  @Test
+  public void testFalseHeaders() throws IOException {
+    byte[] text = text(100000, 2);
+    byte[] header = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 0};
+    for (int i = 100; i + header.length < text.length; i += 1500) {
+      System.arraycopy(header, 0, text, i, header.length);
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int[] sizes = {30000, 7, 2000, 50000, 17993};
+    int offset = 0;
+    for (int size : sizes) {
+      out.write(gzip(Arrays.copyOfRange(text, offset, offset + size), Deflater.NO_COMPRESSION));
+      offset += size;
+    }
+    assertArrayEquals(text, inflate(out.toByteArray(), 3));
+  }
+
+  /**
+   * Concatenated members of every size, from empty to many segments, are read in order on any number of threads.
+   */
+  @Test
+  public void testMembers() throws IOException {
+    byte[] text = text(300000, 3);
+    Random random = new Random(3);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int offset = 0;
+    while (offset < text.length) {
+      int size = Math.min(text.length - offset, random.nextBoolean() ? random.nextInt(100) : random.nextInt(60000));
+      out.write(gzip(Arrays.copyOfRange(text, offset, offset + size), Deflater.DEFAULT_COMPRESSION));
+      offset += size;
+    }
+    byte[] compressed = out.toByteArray();
+    for (int threads = 1; threads <= 8; threads *= 2) {
+      assertArrayEquals(text, inflate(compressed, threads));
+    }
+  }
+
+  /**
+   * A file in one member is read through all of the segments it is cut into.
+   */
+  @Test
+  public void testSingleMember() throws IOException {
+    byte[] text = text(500000, 4);
+    assertArrayEquals(text, inflate(gzip(text, Deflater.BEST_SPEED), 4));
+    assertArrayEquals(new byte[0], inflate(gzip(new byte[0], Deflater.BEST_SPEED), 4));
+  }
+
+  /**
+   * Zero padding after the last member, shorter or longer than a segment, ends the stream as in GZIPInputStream.
+   */
+  @Test
+  public void testTrailingData() throws IOException {
+    byte[] text = text(100000, 7);
+    for (int padding : new int[] {1, 10, 5000, 20000}) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      out.write(gzip(Arrays.copyOfRange(text, 0, 60000), Deflater.DEFAULT_COMPRESSION));
+      out.write(gzip(Arrays.copyOfRange(text, 60000, text.length), Deflater.DEFAULT_COMPRESSION));
+      out.write(new byte[padding]);
+      for (int threads = 1; threads <= 4; threads *= 4) {
+        assertArrayEquals("Padding " + padding, text, inflate(out.toByteArray(), threads));
+      }
+
+      out = new ByteArrayOutputStream();
+      for (int i = 0; i < text.length; i += 1000) {
+        out.write(block(Arrays.copyOfRange(text, i, Math.min(text.length, i + 1000))));
+      }
+      out.write(new byte[padding]);
+      assertArrayEquals("Padding " + padding, text, inflate(out.toByteArray(), 4));
+    }
+
+    try {
+      inflate(new byte[5000], 2);
+      fail("Padding alone isn't gzip");
+    } catch (ZipException e) {
+      assertEquals("Not in GZIP format", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testCorrupt() throws IOException {
+    byte[] text = text(50000, 5);
+    byte[] member = gzip(text, Deflater.DEFAULT_COMPRESSION);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(member);
+    out.write(member);
+    byte[] compressed = out.toByteArray();
+    // the checksum of the first member
+    compressed[member.length - 6]++;
+    try {
+      inflate(compressed, 2);
+      fail("The wrong checksum should be found");
+    } catch (ZipException e) {
+      assertEquals("Corrupt GZIP trailer", e.getMessage());
+    }
+
+    try {
+      inflate(Arrays.copyOf(member, member.length - 100), 2);
+      fail("The truncated member should be found");
+    } catch (IOException e) {
+      // expected
+    }
+
+    try {
+      inflate(text, 2);
+      fail("Text isn't gzip");
+    } catch (ZipException e) {
+      assertEquals("Not in GZIP format", e.getMessage());
+    }
+  }
+
+  /**
+   * A second member that is corrupt or cut short fails the read, rather than being taken for data after the last
+   * member.
+   */
+  @Test
+  public void testCorruptSecondMember() throws IOException {
+    byte[] text = text(50000, 8);
+    byte[] first = gzip(Arrays.copyOfRange(text, 0, 20000), Deflater.DEFAULT_COMPRESSION);
+    byte[] second = gzip(Arrays.copyOfRange(text, 20000, text.length), Deflater.DEFAULT_COMPRESSION);
+    for (int threads = 1; threads <= 4; threads *= 4) {
+      byte[] compressed = Arrays.copyOf(first, first.length + second.length);
+      System.arraycopy(second, 0, compressed, first.length, second.length);
+      for (int i = first.length + 100; i < first.length + 200; i++) {
+        compressed[i] = (byte) 0xff;
+      }
+      try {
+        inflate(compressed, threads);
+        fail("The corrupt second member should be found");
+      } catch (ZipException e) {
+        // expected
+      }
+
+      try {
+        inflate(Arrays.copyOf(compressed, first.length + 50), threads);
+        fail("The truncated second member should be found");
+      } catch (EOFException e) {
+        assertEquals("Unexpected end of GZIP input", e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * A failure reading the input after a member is thrown, rather than being taken for the end of the stream.
+   */
+  @Test
+  public void testInputFailure() throws IOException {
+    byte[] text = text(50000, 9);
+    final byte[] member = gzip(text, Deflater.DEFAULT_COMPRESSION);
+    // ends in the start of a header, so the header is being read when the input fails
+    final byte[] compressed = Arrays.copyOf(member, member.length + 2);
+    compressed[member.length] = 0x1f;
+    compressed[member.length + 1] = (byte) 0x8b;
+    for (int threads = 1; threads <= 4; threads *= 4) {
+      InputStream failing = new InputStream() {
+
+        private int position;
+
+        @Override
+        public int read() throws IOException {
+          if (position == compressed.length) {
+            throw new IOException("Connection reset");
+          }
+          return compressed[position++] & 0xff;
+        }
+      };
+      InputStream in = new ParallelGzipInputStream(failing, threads, SEGMENT_SIZE);
+      try {
+        byte[] buffer = new byte[777];
+        while (in.read(buffer) >= 0) {
+          // reading to the failure
+        }
+        fail("The failure reading the input should be thrown");
+      } catch (IOException e) {
+        assertEquals("Connection reset", e.getMessage());
+      } finally {
+        in.close();
+      }
+    }
+  }
+
+  @Test
+  public void testIsGzip() throws IOException {
+    PushbackInputStream in = new PushbackInputStream(new ByteArrayInputStream(gzip(text(10, 6), 1)), 2);
+    assertTrue(ParallelGzipInputStream.isGzip(in));
+    assertEquals(0x1f, in.read());
+    in = new PushbackInputStream(new ByteArrayInputStream(new byte[] {0x1f}), 2);
+    assertFalse(ParallelGzipInputStream.isGzip(in));
+    assertEquals(0x1f, in.read());
+    assertFalse(ParallelGzipInputStream.isGzip(new PushbackInputStream(new ByteArrayInputStream(new byte[0]), 2)));
+  }
+
+  /**
+   * @return A block gzip block of the data, with its size in the extra field of the header
+   */
+  private static byte[] block(byte[] data) {
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    deflater.setInput(data);
+    deflater.finish();
+    byte[] deflated = new byte[data.length + 1024];
+    int length = 0;
+    while (!deflater.finished()) {
+      length += deflater.deflate(deflated, length, deflated.length - length);
+    }
+    deflater.end();
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    int size = 18 + length + 8;
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] header = {0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0};
+    out.write(header, 0, header.length);
+    writeInt(out, size - 1, 2);
+    out.write(deflated, 0, length);
+    writeInt(out, crc.getValue(), 4);
+    writeInt(out, data.length, 4);
+    return out.toByteArray();
+  }
+
+  private static byte[] gzip(byte[] data, final int level) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    GZIPOutputStream gzip = new GZIPOutputStream(out) {
+
+      {
+        def.setLevel(level);
+      }
+    };
+    gzip.write(data);
+    gzip.close();
+    return out.toByteArray();
+  }
+
+  private static byte[] inflate(byte[] compressed, int threads) throws IOException {
+    InputStream in = new ParallelGzipInputStream(new ByteArrayInputStream(compressed), threads, SEGMENT_SIZE);
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[777];
+      for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+        out.write(buffer, 0, n);
+      }
+      return out.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * @return Lines of tab separated names, random enough to compress to several segments
+   */
+  private static byte[] text(int length, long seed) {
+    Random random = new Random(seed);
+    byte[] text = new byte[length];
+    for (int i = 0; i < length; i++) {
+      int r = random.nextInt(30);
+      text[i] = (byte) (r < 26 ? 'a' + r : r < 28 ? '\t' : r < 29 ? ' ' : '\n');
+    }
+    return text;
+  }
+
+  private static void writeInt(ByteArrayOutputStream out, long value, int bytes) {
+    for (int i = 0; i < bytes; i++) {
+      out.write((int) (value >>> (i * 8)) & 0xff);
+    }
+  }
+}
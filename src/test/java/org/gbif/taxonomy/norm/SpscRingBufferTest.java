@@ -0,0 +1,105 @@
+package org.gbif.taxonomy.norm;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SpscRingBufferTest {
+
+  @Test
+  public void testCapacity() {
+    try {
+      new SpscRingBuffer<Integer>(12);
+      fail("Capacity must be a power of two");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    new SpscRingBuffer<Integer>(1);
+  }
+
+  /**
+   * Items are taken in the order put, and null is taken once the buffer is closed and drained.
+   */
+  @Test
+  public void testOrder() throws InterruptedException {
+    SpscRingBuffer<Integer> buffer = new SpscRingBuffer<Integer>(4);
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < 4; i++) {
+        buffer.put(round * 4 + i);
+      }
+      assertEquals(4, buffer.size());
+      for (int i = 0; i < 4; i++) {
+        assertEquals(round * 4 + i, buffer.take().intValue());
+      }
+    }
+    buffer.put(12);
+    buffer.close();
+    assertEquals(12, buffer.take().intValue());
+    assertNull(buffer.take());
+  }
+
+  /**
+   * A producer far ahead of its consumer is held back, and every item arrives once in order.
+   */
+  @Test
+  public void testConcurrent() throws InterruptedException {
+    final SpscRingBuffer<Integer> buffer = new SpscRingBuffer<Integer>(8);
+    final int items = 200000;
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    final int[] maxSize = new int[1];
+    Thread producer = new Thread(new Runnable() {
+
+      @Override
+      public void run() {
+        try {
+          for (int i = 0; i < items; i++) {
+            buffer.put(i);
+            maxSize[0] = Math.max(maxSize[0], buffer.size());
+          }
+          buffer.close();
+        } catch (Throwable e) {
+          failure.set(e);
+        }
+      }
+    });
+    producer.start();
+    int expected = 0;
+    for (Integer item = buffer.take(); item != null; item = buffer.take()) {
+      assertEquals(expected++, item.intValue());
+    }
+    producer.join();
+    assertNull(failure.get());
+    assertEquals(items, expected);
+    assertTrue(maxSize[0] <= 8);
+  }
+
+  /**
+   * A consumer waiting on an empty buffer is stopped by an interrupt.
+   */
+  @Test
+  public void testInterrupt() throws InterruptedException {
+    final SpscRingBuffer<Integer> buffer = new SpscRingBuffer<Integer>(2);
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread consumer = new Thread(new Runnable() {
+
+      @Override
+      public void run() {
+        try {
+          buffer.take();
+        } catch (Throwable e) {
+          failure.set(e);
+        }
+      }
+    });
+    consumer.start();
+    Thread.sleep(20);
+    consumer.interrupt();
+    consumer.join(5000);
+    assertTrue(failure.get() instanceof InterruptedException);
+  }
+}
@@ -0,0 +1,116 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+import org.gbif.taxonomy.norm.util.TestDataFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SuccinctTreeTest {
+
+  /**
+   * Every taxon must be navigable and come back as the normalizer output it.
+   */
+  @Test
+  public void testNormalized() throws IOException {
+    List<NormClassification> norm =
+      new Normalizer().normalize(TestDataFactory.build("/data/taxonomy/norm/2_denorm.txt", false));
+    assertMatches(norm);
+  }
+
+  /**
+   * See /data/taxonomy/norm/1_readme.txt for the tree.
+   */
+  @Test
+  public void testFind() throws IOException {
+    List<NormClassification> norm =
+      new Normalizer().normalize(TestDataFactory.build("/data/taxonomy/norm/1_denorm.txt", false));
+    SuccinctTree tree = SuccinctTree.build(norm);
+    assertEquals(8, tree.size());
+    assertEquals(1, tree.childCount(tree.root()));
+
+    int s = tree.find("k", "p", "f", "g", "s");
+    assertEquals(LINNEAN_RANK.S, tree.rank(s));
+    assertEquals("g", tree.name(tree.parent(s)));
+    assertEquals("ss", tree.name(tree.child(s, "ss")));
+    assertEquals(SuccinctTree.NO_NODE, tree.find("k", "p", "g"));
+    assertEquals(SuccinctTree.NO_NODE, tree.find("k", "x"));
+    assertEquals(tree.root(), tree.find());
+    assertEquals(SuccinctTree.NO_NODE, tree.parent(tree.root()));
+  }
+
+  /**
+   * Wide and deep enough to use the sampled select directories and many name buckets.
+   */
+  @Test
+  public void testLarge() {
+    List<NormClassification> taxa = new ArrayList<NormClassification>();
+    int id = 1;
+    for (int k = 0; k < 3; k++) {
+      int kingdom = id;
+      taxa.add(new NormClassification(id++, null, "Kingdom" + k, null, "K"));
+      for (int g = 0; g < 40; g++) {
+        int genus = id;
+        taxa.add(new NormClassification(id++, kingdom, "Genus" + k + "x" + g, null, "G"));
+        // leaves in long runs, and a species differing only by author
+        for (int s = 0; s < 3 * g; s++) {
+          taxa.add(new NormClassification(id++, genus, "Genus" + k + "x" + g + " species" + s, "Author " + s, "S"));
+        }
+        if (g % 7 == 0) {
+          taxa.add(new NormClassification(id++, genus, "Genus" + k + "x" + g + " species0", null, "S"));
+        }
+      }
+    }
+    assertMatches(taxa);
+
+    SuccinctTree tree = SuccinctTree.build(taxa);
+    int species = tree.find("Kingdom2", "Genus2x14", "Genus2x14 species0");
+    assertEquals(null, tree.author(species));
+    assertEquals("Author 0", tree.author(species + 1));
+  }
+
+  @Test
+  public void testMissingParent() {
+    List<NormClassification> taxa = new ArrayList<NormClassification>();
+    taxa.add(new NormClassification(1, null, "Animalia", null, "K"));
+    taxa.add(new NormClassification(3, 2, "Puma", null, "G"));
+    try {
+      SuccinctTree.build(taxa);
+      fail("Taxa without a parent must be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private static void assertMatches(List<NormClassification> taxa) {
+    SuccinctTree tree = SuccinctTree.build(taxa);
+    assertEquals(taxa.size(), tree.size());
+    for (NormClassification taxon : taxa) {
+      int node = tree.node(taxon.getId());
+      assertEquals(taxon, tree.get(node));
+      assertEquals(taxon.getId().intValue(), tree.id(node));
+
+      // the path from the root leads back to the node
+      List<String> path = new ArrayList<String>();
+      for (int n = node; n != tree.root(); n = tree.parent(n)) {
+        path.add(0, tree.name(n));
+      }
+      int found = tree.find(path.toArray(new String[path.size()]));
+      assertEquals(taxon.getScientificName(), tree.name(found));
+      assertEquals(tree.parent(node), tree.parent(found));
+
+      int parent = tree.parent(node);
+      boolean child = false;
+      for (int i = 0; i < tree.childCount(parent); i++) {
+        child |= tree.child(parent, i) == node;
+      }
+      assertEquals(true, child);
+    }
+    assertEquals(SuccinctTree.NO_NODE, tree.node(-5));
+  }
+}
@@ -0,0 +1,71 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+import org.gbif.taxonomy.norm.util.TestDataFactory;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TaxonLookupTest {
+
+  /**
+   * See /data/taxonomy/norm/1_readme.txt for the tree.
+   */
+  @Test
+  public void testLookup() throws IOException {
+    List<NormClassification> norm =
+      new Normalizer().normalize(TestDataFactory.build("/data/taxonomy/norm/1_denorm.txt", false));
+    TaxonLookup lookup = TaxonLookup.build(norm);
+    assertEquals(8, lookup.size());
+
+    // exact
+    assertEquals(5, lookup.lookup(new DenormClassification("k", "p", null, null, "f", "g", "s", null, "L. 1771")));
+    assertEquals(8, lookup.lookup(new DenormClassification("k", "p1", null, null, null, null, "s", null, "T. 2010")));
+    assertEquals(4, lookup.lookup(new DenormClassification("k", "p", "", null, "f", "g", " ", null, null)));
+    // the author is ignored where no taxon has it
+    assertEquals(4, lookup.lookup(new DenormClassification("k", "p", null, null, "f", "g", null, null, "X. 1900")));
+    // holes filled as the normalizer did
+    assertEquals(5, lookup.lookup(new DenormClassification("k", "p", null, null, null, "g", "s", null, "L. 1771")));
+    assertEquals(6, lookup.lookup(new DenormClassification("k", "p", null, null, null, null, "s", "ss", null)));
+    assertEquals(4, lookup.lookup(new DenormClassification(null, null, null, null, null, "g", null, null, null)));
+    // the species s is a homonym, so cannot be matched without higher taxa
+    assertEquals(TaxonLookup.NO_MATCH,
+      lookup.lookup(new DenormClassification(null, null, null, null, null, null, "s", null, null)));
+    assertEquals(TaxonLookup.NO_MATCH,
+      lookup.lookup(new DenormClassification("k", "p2", null, null, null, null, "s", null, null)));
+    assertEquals(TaxonLookup.NO_MATCH,
+      lookup.lookup(new DenormClassification(null, null, null, null, null, null, null, null, "L. 1771")));
+  }
+
+  /**
+   * Every classification normalized must be matched to a taxon named as its lowest rank.
+   */
+  @Test
+  public void testEveryInputMatches() throws IOException {
+    String source = "/data/taxonomy/norm/2_denorm.txt";
+    List<NormClassification> norm = new Normalizer().normalize(TestDataFactory.build(source, false));
+    TaxonLookup lookup = TaxonLookup.build(norm);
+    Map<Integer, NormClassification> byId = new HashMap<Integer, NormClassification>();
+    for (NormClassification taxon : norm) {
+      byId.put(taxon.getId(), taxon);
+    }
+
+    List<DenormClassification> input = TestDataFactory.build(source, false);
+    for (DenormClassification d : input) {
+      int id = lookup.lookup(d);
+      assertTrue("No match for " + d, id != TaxonLookup.NO_MATCH);
+      LINNEAN_RANK lowest = null;
+      for (LINNEAN_RANK r : LINNEAN_RANK.values()) {
+        lowest = d.get(r) == null ? lowest : r;
+      }
+      assertEquals(d.get(lowest), byId.get(id).getScientificName());
+      assertEquals(lowest.toString(), byId.get(id).getRank());
+    }
+  }
+}
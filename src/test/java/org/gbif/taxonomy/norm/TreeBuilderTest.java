@@ -0,0 +1,90 @@
+package org.gbif.taxonomy.norm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TreeBuilderTest {
+
+  /**
+   * A run started where the phylum changes builds the taxa of the whole build, once its ids are offset and the
+   * kingdom it inherits is filled in.
+   */
+  @Test
+  public void testInherited() {
+    List<DenormClassification> denorm = new ArrayList<DenormClassification>();
+    denorm.add(new DenormClassification("Animalia", "Chordata", null, null, null, "Corvus", "Corvus corax", null,
+      "L."));
+    denorm.add(new DenormClassification("Animalia", "Arthropoda", null, null, null, "Apis", "Apis mellifera", null,
+      null));
+    denorm.add(new DenormClassification("Animalia", null, null, null, null, "Puma", null, null, null));
+    Collections.sort(denorm, DenormClassificationUtils.FULL_COMPARATOR);
+
+    List<NormClassification> whole = build(denorm, 0, denorm.size(), 1, null);
+    assertEquals(8, whole.size());
+
+    // split at each phylum change after the first classification
+    for (int split = 1; split < denorm.size(); split++) {
+      List<NormClassification> first = build(denorm, 0, split, 1, null);
+      List<NormClassification> second = build(denorm, split, denorm.size(), 1, TreeBuilder.INHERITED);
+      List<NormClassification> joined = new ArrayList<NormClassification>(first);
+      for (NormClassification taxon : second) {
+        Integer parentId = taxon.getParentId();
+        joined.add(new NormClassification(taxon.getId() + first.size(), parentId == null ? null
+          : parentId == TreeBuilder.INHERITED ? Integer.valueOf(1) : Integer.valueOf(parentId + first.size()),
+          taxon.getScientificName(), taxon.getAuthor(), taxon.getRank()));
+      }
+      assertEquals(whole.toString(), joined.toString());
+    }
+  }
+
+  /**
+   * The kingdom in effect is inherited until a classification deviates at the kingdom.
+   */
+  @Test
+  public void testKingdomId() {
+    DenormClassification corvus = new DenormClassification("Animalia", "Chordata", null, null, null, "Corvus", null,
+      null, null);
+    DenormClassification apis = new DenormClassification("Animalia", "Arthropoda", null, null, null, "Apis", null,
+      null, null);
+    DenormClassification rosa = new DenormClassification("Plantae", "Tracheophyta", null, null, null, "Rosa", null,
+      null, null);
+
+    List<NormClassification> taxa = new ArrayList<NormClassification>();
+    TreeBuilder builder = new TreeBuilder(sink(taxa), 1, TreeBuilder.INHERITED);
+    builder.add(apis, corvus);
+    assertEquals(Integer.valueOf(TreeBuilder.INHERITED), builder.getKingdomId());
+    assertEquals(Integer.valueOf(TreeBuilder.INHERITED), taxa.get(0).getParentId());
+    builder.add(rosa, apis);
+    builder.flush();
+    assertEquals(Integer.valueOf(3), builder.getKingdomId());
+    assertNull(taxa.get(2).getParentId());
+    assertEquals(6, builder.getNextId());
+  }
+
+  private static List<NormClassification> build(List<DenormClassification> denorm, int from, int to, int firstId,
+    Integer kingdomId) {
+    List<NormClassification> taxa = new ArrayList<NormClassification>();
+    TreeBuilder builder = new TreeBuilder(sink(taxa), firstId, kingdomId);
+    for (int i = from; i < to; i++) {
+      builder.add(denorm.get(i), i == 0 ? null : denorm.get(i - 1));
+    }
+    builder.flush();
+    return taxa;
+  }
+
+  private static NormClassificationSink sink(final List<NormClassification> taxa) {
+    return new NormClassificationSink() {
+
+      @Override
+      public void accept(NormClassification taxon) {
+        taxa.add(taxon);
+      }
+    };
+  }
+}
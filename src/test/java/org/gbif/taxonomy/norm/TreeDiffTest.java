@@ -0,0 +1,101 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.util.TestDataFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class TreeDiffTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testHashes() {
+    // the same content under other ids and in another order
+    List<NormClassification> renumbered = new ArrayList<NormClassification>();
+    renumbered.add(new NormClassification(10, null, "Animalia", null, "K"));
+    renumbered.add(new NormClassification(13, 12, "Felis", null, "G"));
+    renumbered.add(new NormClassification(12, 10, "Felidae", null, "F"));
+    renumbered.add(new NormClassification(11, 12, "Puma", null, "G"));
+    renumbered.add(new NormClassification(14, 11, "Puma concolor", "L. 1771", "S"));
+    renumbered.add(new NormClassification(15, 13, "Felis catus", null, "S"));
+    Map<Integer, Long> hashes = TreeDiff.hashes(tree());
+    Map<Integer, Long> renumberedHashes = TreeDiff.hashes(renumbered);
+    assertEquals(hashes.get(1), renumberedHashes.get(10));
+    assertEquals(hashes.get(3), renumberedHashes.get(11));
+    assertFalse(hashes.get(3).equals(hashes.get(4)));
+
+    assertEquals(0, TreeDiff.diff(tree(), renumbered).size());
+  }
+
+  @Test
+  public void testChanges() {
+    List<NormClassification> changed = new ArrayList<NormClassification>();
+    changed.add(new NormClassification(1, null, "Animalia", null, "K"));
+    changed.add(new NormClassification(2, 1, "Felidae", null, "F"));
+    changed.add(new NormClassification(3, 1, "Canidae", null, "F"));
+    // Puma moved with its species, and Felis removed
+    changed.add(new NormClassification(4, 3, "Puma", null, "G"));
+    changed.add(new NormClassification(5, 4, "Puma concolor", "L. 1771", "S"));
+    changed.add(new NormClassification(6, 4, "Puma yagouaroundi", null, "S"));
+
+    List<TreeChange> changes = TreeDiff.diff(tree(), changed);
+    assertEquals(5, changes.size());
+    assertChange(changes.get(0), TreeChange.Type.ADD, null, 3);
+    assertEquals("Canidae", changes.get(0).getNewTaxon().getScientificName());
+    assertChange(changes.get(1), TreeChange.Type.MOVE, 3, 4);
+    assertEquals(Integer.valueOf(3), changes.get(1).getNewTaxon().getParentId());
+    assertChange(changes.get(2), TreeChange.Type.ADD, null, 6);
+    assertChange(changes.get(3), TreeChange.Type.REMOVE, 5, null);
+    assertChange(changes.get(4), TreeChange.Type.REMOVE, 6, null);
+    assertNull(changes.get(4).getNewTaxon());
+  }
+
+  @Test
+  public void testAuthorChange() {
+    List<NormClassification> changed = tree();
+    changed.get(3).setAuthor("Linnaeus, 1771");
+    List<TreeChange> changes = TreeDiff.diff(tree(), changed);
+    assertEquals(2, changes.size());
+    assertChange(changes.get(0), TreeChange.Type.ADD, null, 4);
+    assertChange(changes.get(1), TreeChange.Type.REMOVE, 4, null);
+  }
+
+  @Test
+  public void testReadWritten() throws IOException {
+    List<NormClassification> norm =
+      new Normalizer().normalize(TestDataFactory.build("/data/taxonomy/norm/1_denorm.txt", false));
+    File file = folder.newFile();
+    DwcaNormalizer.write(norm, file);
+    assertEquals(norm, DwcaNormalizer.readNormalized(file));
+    assertEquals(0, TreeDiff.diff(norm, DwcaNormalizer.readNormalized(file)).size());
+  }
+
+  private static void assertChange(TreeChange change, TreeChange.Type type, Integer oldId, Integer newId) {
+    assertEquals(type, change.getType());
+    assertEquals(oldId, change.getOldTaxon() == null ? null : change.getOldTaxon().getId());
+    assertEquals(newId, change.getNewTaxon() == null ? null : change.getNewTaxon().getId());
+  }
+
+  private static List<NormClassification> tree() {
+    List<NormClassification> taxa = new ArrayList<NormClassification>();
+    taxa.add(new NormClassification(1, null, "Animalia", null, "K"));
+    taxa.add(new NormClassification(2, 1, "Felidae", null, "F"));
+    taxa.add(new NormClassification(3, 2, "Puma", null, "G"));
+    taxa.add(new NormClassification(4, 3, "Puma concolor", "L. 1771", "S"));
+    taxa.add(new NormClassification(5, 2, "Felis", null, "G"));
+    taxa.add(new NormClassification(6, 5, "Felis catus", null, "S"));
+    return taxa;
+  }
+}
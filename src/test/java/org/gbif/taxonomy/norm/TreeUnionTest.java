@@ -0,0 +1,120 @@
+package org.gbif.taxonomy.norm;
+
+import org.gbif.taxonomy.norm.util.TestDataFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+public class TreeUnionTest {
+
+  private static final String[] SOURCES = {
+    "/data/taxonomy/norm/1_denorm.txt", "/data/taxonomy/norm/2_denorm.txt", "/data/taxonomy/merge/1_denorm.txt",
+    "/data/taxonomy/merge/2_denorm.txt", "/data/taxonomy/merge/3_denorm.txt", "/data/taxonomy/merge/4_denorm.txt",
+    "/data/taxonomy/merge/5_denorm.txt", "/data/taxonomy/merge/6_denorm.txt", "/data/taxonomy/merge/7_denorm.txt",
+    "/data/taxonomy/merge/8_denorm.txt"};
+
+  /**
+   * Normalizing the halves of a source separately and combining them must give the tree of a single run.
+   */
+  @Test
+  public void testSameAsSingleRun() throws IOException {
+    for (String source : SOURCES) {
+      List<DenormClassification> all = TestDataFactory.build(source, false);
+      List<DenormClassification> odd = new ArrayList<DenormClassification>();
+      List<DenormClassification> even = new ArrayList<DenormClassification>();
+      for (int i = 0; i < all.size(); i++) {
+        (i % 2 == 0 ? even : odd).add(all.get(i));
+      }
+      List<List<NormClassification>> trees = new ArrayList<List<NormClassification>>();
+      trees.add(new Normalizer().normalize(even));
+      trees.add(new Normalizer().normalize(odd));
+
+      TreeUnion union = TreeUnion.of(trees);
+      assertEquals(source, paths(new Normalizer().normalize(all)), paths(union.getTaxa()));
+      assertRemapped(trees, union);
+    }
+  }
+
+  @Test
+  public void testPayloads() {
+    List<NormClassification> first = new ArrayList<NormClassification>();
+    first.add(new NormClassification(1, null, "Animalia", null, "K"));
+    first.add(new NormClassification(2, 1, "Puma", null, "G"));
+    first.add(new NormClassification(3, 2, "Puma concolor", "L. 1771", "S"));
+    first.get(2).getPayloads().add("occurrence 1");
+    List<NormClassification> second = new ArrayList<NormClassification>();
+    second.add(new NormClassification(1, null, "Puma", null, "G"));
+    second.add(new NormClassification(2, 1, "Puma concolor", "L. 1771", "S"));
+    second.add(new NormClassification(3, 2, "Puma concolor coryi", null, "SS"));
+    second.get(1).getPayloads().add("occurrence 2");
+
+    List<List<NormClassification>> trees = new ArrayList<List<NormClassification>>();
+    trees.add(first);
+    trees.add(second);
+    TreeUnion union = TreeUnion.of(trees);
+    Set<String> expected = new TreeSet<String>();
+    expected.add("K:Animalia");
+    expected.add("K:Animalia/G:Puma");
+    expected.add("K:Animalia/G:Puma/S:Puma concolor L. 1771");
+    expected.add("K:Animalia/G:Puma/S:Puma concolor L. 1771/SS:Puma concolor coryi");
+    assertEquals(expected, paths(union.getTaxa()));
+    assertRemapped(trees, union);
+
+    NormClassification species = null;
+    for (NormClassification taxon : union.getTaxa()) {
+      species = "S".equals(taxon.getRank()) ? taxon : species;
+    }
+    assertEquals(species.getId(), union.getIdRemap(0).get(3));
+    assertEquals(species.getId(), union.getIdRemap(1).get(2));
+    assertEquals(2, species.getPayloads().size());
+  }
+
+  /**
+   * Every input taxon must map to a combined taxon of the same rank and name, and author where it has one.
+   */
+  private static void assertRemapped(List<List<NormClassification>> trees, TreeUnion union) {
+    Map<Integer, NormClassification> byId = new HashMap<Integer, NormClassification>();
+    for (NormClassification taxon : union.getTaxa()) {
+      byId.put(taxon.getId(), taxon);
+    }
+    for (int i = 0; i < trees.size(); i++) {
+      assertEquals(trees.get(i).size(), union.getIdRemap(i).size());
+      for (NormClassification taxon : trees.get(i)) {
+        NormClassification combined = byId.get(union.getIdRemap(i).get(taxon.getId()));
+        assertEquals(taxon.getRank(), combined.getRank());
+        assertEquals(taxon.getScientificName(), combined.getScientificName());
+        if (taxon.getAuthor() != null) {
+          assertEquals(taxon.getAuthor(), combined.getAuthor());
+        }
+      }
+    }
+  }
+
+  /**
+   * @return The path of each taxon, which does not depend on ids
+   */
+  private static Set<String> paths(List<NormClassification> taxa) {
+    Map<Integer, NormClassification> byId = new HashMap<Integer, NormClassification>();
+    for (NormClassification taxon : taxa) {
+      byId.put(taxon.getId(), taxon);
+    }
+    Set<String> paths = new TreeSet<String>();
+    for (NormClassification taxon : taxa) {
+      String path = "";
+      for (NormClassification t = taxon; t != null; t = t.getParentId() == null ? null : byId.get(t.getParentId())) {
+        path = t.getRank() + ":" + t.getScientificName() + (t.getAuthor() == null ? "" : " " + t.getAuthor())
+          + (path.length() == 0 ? "" : "/" + path);
+      }
+      paths.add(path);
+    }
+    return paths;
+  }
+}
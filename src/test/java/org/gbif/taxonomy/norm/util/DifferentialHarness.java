@@ -0,0 +1,226 @@
+package org.gbif.taxonomy.norm.util;
+
+import org.gbif.taxonomy.norm.DenormClassification;
+import org.gbif.taxonomy.norm.LinneanRank.LINNEAN_RANK;
+import org.gbif.taxonomy.norm.NormClassification;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Runs a reference and a candidate engine over randomly generated classifications and reports any input for which
+ * their trees differ, shrunk to as few classifications and values as still show the difference.
+ * <p/>
+ * The inputs stress what the merge examples in data/taxonomy/merge cover: missing higher ranks, genera and species
+ * shared across families and kingdoms, species and subspecies given only within the scientific name, authors that
+ * differ for the same name, and blank values. Trees are compared as the path of each taxon from its root, with its
+ * author and payloads, so ids and the order taxa are listed in do not matter.
+ */
+public class DifferentialHarness {
+
+  /**
+   * Something that normalizes, such as the normalizer in some mode.
+   */
+  public interface Engine {
+
+    /**
+     * @param denorm To normalize, which is the engine's own copy
+     */
+    List<NormClassification> normalize(List<DenormClassification> denorm);
+  }
+
+  private static final String[] KINGDOMS = {"Animalia", "Plantae"};
+  private static final String[] PHYLA = {"Chordata", "Arthropoda", "Tracheophyta"};
+  private static final String[] CLASSES = {"Aves", "Insecta", "Magnoliopsida"};
+  private static final String[] ORDERS = {"Passeriformes", "Coleoptera", "Rosales"};
+  private static final String[] FAMILIES = {"Corvidae", "Carabidae", "Rosaceae", "Paridae"};
+  private static final String[] GENERA = {"Aus", "Bus", "Cus", "Dus"};
+  private static final String[] EPITHETS = {"alba", "nigra", "minor"};
+  private static final String[] AUTHORS = {null, "L.", "L. 1758", "(L.)"};
+
+  private final Engine reference;
+  private final Engine candidate;
+  private final Random random;
+
+  /**
+   * @param seed Of the generated inputs, so a failure can be repeated
+   */
+  public DifferentialHarness(Engine reference, Engine candidate, long seed) {
+    this.reference = reference;
+    this.candidate = candidate;
+    random = new Random(seed);
+  }
+
+  /**
+   * @return The tree as one line per taxon, in a canonical order
+   */
+  public static List<String> canonical(List<NormClassification> norm) {
+    Map<Integer, NormClassification> byId = new HashMap<Integer, NormClassification>();
+    for (NormClassification taxon : norm) {
+      byId.put(taxon.getId(), taxon);
+    }
+    List<String> lines = new ArrayList<String>();
+    for (NormClassification taxon : norm) {
+      StringBuilder path = new StringBuilder();
+      for (NormClassification t = taxon; t != null; t = byId.get(t.getParentId())) {
+        path.insert(0, "/" + t.getRank() + ':' + t.getScientificName());
+      }
+      List<String> payloads = new ArrayList<String>();
+      for (Object payload : taxon.getPayloads()) {
+        payloads.add(String.valueOf(payload));
+      }
+      Collections.sort(payloads);
+      lines.add(path + " " + taxon.getAuthor() + " " + payloads);
+    }
+    Collections.sort(lines);
+    return lines;
+  }
+
+  /**
+   * @return The classifications as tab separated rows with a header, as the files in data/taxonomy/merge are
+   */
+  public static String format(List<DenormClassification> denorm) {
+    StringBuilder sb = new StringBuilder("kingdom\tphylum\tclass\torder\tfamily\tgenus\tspecies\tsubspecies\tauthor\n");
+    for (DenormClassification d : denorm) {
+      for (LINNEAN_RANK r : LINNEAN_RANK.values()) {
+        sb.append(d.get(r) == null ? "" : d.get(r)).append('\t');
+      }
+      sb.append(d.getAuthor() == null ? "" : d.getAuthor()).append('\n');
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @param size The number of classifications to generate
+   *
+   * @return Random classifications, each with its index as payload
+   */
+  public List<DenormClassification> generate(int size) {
+    List<DenormClassification> denorm = new ArrayList<DenormClassification>();
+    for (int i = 0; i < size; i++) {
+      String genus = pick(GENERA);
+      String species = genus + ' ' + pick(EPITHETS);
+      String subspecies = random.nextInt(4) == 0 ? species + ' ' + pick(EPITHETS) : null;
+      DenormClassification<Object> d = new DenormClassification<Object>(sparse(KINGDOMS), sparse(PHYLA),
+        sparse(CLASSES), sparse(ORDERS), sparse(FAMILIES), random.nextInt(3) == 0 ? null : genus,
+        // the species may be left to be inferred from the subspecies
+        subspecies != null && random.nextBoolean() ? null : species, subspecies, pick(AUTHORS));
+      if (random.nextInt(20) == 0) {
+        d.set(LINNEAN_RANK.values()[random.nextInt(5)], "");
+      }
+      d.getPayloads().add(i);
+      denorm.add(d);
+    }
+    return denorm;
+  }
+
+  /**
+   * Runs both engines over inputs of the sizes given, one after another.
+   *
+   * @param runs The number of inputs to try
+   * @param size The number of classifications in each
+   *
+   * @return A report of the first difference found, shrunk, or null if there is none
+   */
+  public String run(int runs, int size) {
+    for (int run = 0; run < runs; run++) {
+      List<DenormClassification> input = generate(size);
+      if (differ(input)) {
+        List<DenormClassification> shrunk = shrink(input);
+        return "Engines differ after " + (run + 1) + " run(s) for input of " + shrunk.size() + " (from " + size
+          + ") classification(s):\n" + format(shrunk) + "Reference:\n" + lines(reference, shrunk) + "Candidate:\n"
+          + lines(candidate, shrunk);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Removes classifications, then values, for as long as the engines still differ.
+   *
+   * @param input For which the engines differ
+   *
+   * @return The smallest input found for which the engines differ
+   */
+  public List<DenormClassification> shrink(List<DenormClassification> input) {
+    List<DenormClassification> current = new ArrayList<DenormClassification>(input);
+    // remove chunks of classifications, halving the chunk while nothing can be removed
+    for (int chunk = Math.max(1, current.size() / 2); chunk >= 1; chunk /= 2) {
+      boolean removed = true;
+      while (removed) {
+        removed = false;
+        for (int start = 0; start < current.size() && current.size() > 1; start += chunk) {
+          List<DenormClassification> smaller = new ArrayList<DenormClassification>(current);
+          smaller.subList(start, Math.min(current.size(), start + chunk)).clear();
+          if (!smaller.isEmpty() && differ(smaller)) {
+            current = smaller;
+            removed = true;
+          }
+        }
+      }
+    }
+    // then clear each value that is not needed
+    for (int i = 0; i < current.size(); i++) {
+      for (int field = 0; field <= LINNEAN_RANK.values().length; field++) {
+        List<DenormClassification> simpler = new ArrayList<DenormClassification>(current);
+        DenormClassification d = copy(current.get(i));
+        if (field < LINNEAN_RANK.values().length) {
+          if (d.get(LINNEAN_RANK.values()[field]) == null) {
+            continue;
+          }
+          d.set(LINNEAN_RANK.values()[field], null);
+        } else {
+          if (d.getAuthor() == null) {
+            continue;
+          }
+          d.setAuthor(null);
+        }
+        simpler.set(i, d);
+        if (differ(simpler)) {
+          current = simpler;
+        }
+      }
+    }
+    return current;
+  }
+
+  private static List<DenormClassification> copies(List<DenormClassification> denorm) {
+    List<DenormClassification> copies = new ArrayList<DenormClassification>();
+    for (DenormClassification d : denorm) {
+      copies.add(copy(d));
+    }
+    return copies;
+  }
+
+  private static DenormClassification copy(DenormClassification d) {
+    DenormClassification<Object> copy = new DenormClassification<Object>(d.getKingdom(), d.getPhylum(),
+      d.getKlass(), d.getOrder(), d.getFamily(), d.getGenus(), d.getSpecies(), d.getSubspecies(), d.getAuthor());
+    copy.getPayloads().addAll(d.getPayloads());
+    return copy;
+  }
+
+  private boolean differ(List<DenormClassification> input) {
+    return !canonical(reference.normalize(copies(input))).equals(canonical(candidate.normalize(copies(input))));
+  }
+
+  private static String lines(Engine engine, List<DenormClassification> input) {
+    StringBuilder sb = new StringBuilder();
+    for (String line : canonical(engine.normalize(copies(input)))) {
+      sb.append("  ").append(line).append('\n');
+    }
+    return sb.toString();
+  }
+
+  private String pick(String[] values) {
+    return values[random.nextInt(values.length)];
+  }
+
+  // a value that is missing half of the time
+  private String sparse(String[] values) {
+    return random.nextBoolean() ? null : pick(values);
+  }
+}
@@ -0,0 +1,96 @@
+package org.gbif.taxonomy.norm.util;
+
+import org.gbif.taxonomy.norm.DenormClassification;
+import org.gbif.taxonomy.norm.MergeStrategy;
+import org.gbif.taxonomy.norm.NameInterpreter;
+import org.gbif.taxonomy.norm.NormClassification;
+import org.gbif.taxonomy.norm.NormClassificationSink;
+import org.gbif.taxonomy.norm.Normalizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DifferentialHarnessTest {
+
+  /**
+   * The normalizer as it is checked against, sorting for each pass and interpreting names on the calling thread.
+   */
+  private static final DifferentialHarness.Engine REFERENCE = engine(MergeStrategy.SORT,
+    new NameInterpreter(1, NameInterpreter.DEFAULT_BATCH_SIZE));
+
+  /**
+   * Each mode of the normalizer must build the same tree as the reference.
+   */
+  @Test
+  public void testEquivalence() {
+    assertNull(new DifferentialHarness(REFERENCE,
+      engine(MergeStrategy.HASH, new NameInterpreter(1, NameInterpreter.DEFAULT_BATCH_SIZE)), 1).run(20, 300));
+    assertNull(new DifferentialHarness(REFERENCE,
+      engine(MergeStrategy.CHOSEN, new NameInterpreter(1, NameInterpreter.DEFAULT_BATCH_SIZE)), 2).run(20, 300));
+    assertNull(new DifferentialHarness(REFERENCE, engine(MergeStrategy.CHOSEN, new NameInterpreter(4, 7)), 3)
+      .run(20, 300));
+    assertNull(new DifferentialHarness(REFERENCE, new DifferentialHarness.Engine() {
+
+      @Override
+      public List<NormClassification> normalize(List<DenormClassification> denorm) {
+        final List<NormClassification> streamed = new ArrayList<NormClassification>();
+        new Normalizer().normalize(denorm, new NormClassificationSink() {
+
+          @Override
+          public void accept(NormClassification taxon) {
+            streamed.add(taxon);
+          }
+        });
+        return streamed;
+      }
+    }, 4).run(20, 300));
+  }
+
+  /**
+   * An engine that drops the author of one species must be caught, and shrunk to the classification that shows it.
+   */
+  @Test
+  public void testShrink() {
+    DifferentialHarness harness = new DifferentialHarness(REFERENCE, new DifferentialHarness.Engine() {
+
+      @Override
+      public List<NormClassification> normalize(List<DenormClassification> denorm) {
+        List<NormClassification> norm = REFERENCE.normalize(denorm);
+        for (NormClassification taxon : norm) {
+          if ("Bus alba".equals(taxon.getScientificName())) {
+            taxon.setAuthor(null);
+          }
+        }
+        return norm;
+      }
+    }, 5);
+    String report = harness.run(5, 200);
+    assertNotNull(report);
+
+    List<DenormClassification> shrunk = harness.shrink(harness.generate(200));
+    assertEquals(1, shrunk.size());
+    assertNotNull(shrunk.get(0).getAuthor());
+    assertTrue(shrunk.get(0).getSpecies() != null || shrunk.get(0).getSubspecies() != null);
+    assertTrue(report.contains("Bus alba"));
+  }
+
+  private static DifferentialHarness.Engine engine(final MergeStrategy strategy, final NameInterpreter interpreter) {
+    return new DifferentialHarness.Engine() {
+
+      @Override
+      public List<NormClassification> normalize(List<DenormClassification> denorm) {
+        Normalizer normalizer = new Normalizer();
+        normalizer.setMergeStrategy(strategy);
+        normalizer.setNameInterpreter(interpreter);
+        return normalizer.normalize(denorm);
+      }
+    };
+  }
+}